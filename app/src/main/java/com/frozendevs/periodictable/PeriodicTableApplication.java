@@ -3,10 +3,24 @@ package com.frozendevs.periodictable;
 import android.app.Application;
 import android.support.v4.app.SharedElementCallback;
 import android.view.View;
+import com.frozendevs.periodictable.content.ElementRepository;
 
 public class PeriodicTableApplication extends Application {
     private SharedElementCallback mSharedElementCallback;
     private View.OnAttachStateChangeListener mOnAttachStateChangeListener;
+    private ElementRepository mElementRepository;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        mElementRepository = new ElementRepository(this);
+        mElementRepository.warmUp();
+    }
+
+    public ElementRepository getElementRepository() {
+        return mElementRepository;
+    }
 
     public SharedElementCallback getSharedElementCallback() {
         return mSharedElementCallback;
@@ -15,7 +15,6 @@ import android.view.*;
 import android.widget.ImageView;
 import android.widget.TextView;
 import com.frozendevs.periodictable.PeriodicTableApplication;
-import com.frozendevs.periodictable.content.Database;
 import com.frozendevs.periodictable.fragment.PropertiesFragment;
 import com.frozendevs.periodictable.model.ElementProperties;
 import com.frozendevs.periodictable.model.adapter.PropertiesAdapter;
@@ -67,7 +66,7 @@ public class PropertiesActivity extends AppCompatActivity {
 
         if (savedInstanceState == null || (mElementProperties = savedInstanceState.getParcelable(
                 STATE_ELEMENT_PROPERTIES)) == null) {
-            mElementProperties = Database.getElement(this, ElementProperties.class,
+            mElementProperties = application.getElementRepository().getProperties(
                     getIntent().getIntExtra(EXTRA_ATOMIC_NUMBER, 1));
         }
 
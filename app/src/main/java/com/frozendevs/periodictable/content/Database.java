@@ -1,6 +1,9 @@
 package com.frozendevs.periodictable.content;
 
 import android.content.Context;
+import com.frozendevs.periodictable.model.ElementProperties;
+import com.frozendevs.periodictable.model.Isotope;
+import com.frozendevs.periodictable.model.TableElementItem;
 import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
 import org.tensorflow.lite.examples.detection.R;
@@ -11,11 +14,59 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Database {
+    private static final Gson GSON = new Gson();
+
+    private static ElementDatabase sElementDatabase;
+    private static boolean sElementDatabaseUnavailable;
+
     private static InputStreamReader getInputStreamReader(Context context) {
         return new InputStreamReader(context.getResources().openRawResource(R.raw.database));
     }
 
+    /**
+     * Returns the memory-mapped binary database, or null if the asset is missing or unreadable,
+     * in which case callers fall back to parsing the JSON resource.
+     */
+    private static synchronized ElementDatabase getElementDatabase(Context context) {
+        if (sElementDatabase == null && !sElementDatabaseUnavailable) {
+            try {
+                sElementDatabase = ElementDatabase.open(context.getAssets());
+            } catch (IOException e) {
+                e.printStackTrace();
+
+                sElementDatabaseUnavailable = true;
+            }
+        }
+
+        return sElementDatabase;
+    }
+
+    private static boolean isBinaryReadable(Class<?> classOfT) {
+        return classOfT == ElementProperties.class ||
+                classOfT.isAssignableFrom(TableElementItem.class);
+    }
+
+    private static Object readElement(ElementDatabase database, Class<?> classOfT, int number) {
+        if (classOfT == ElementProperties.class) {
+            return database.getProperties(number);
+        }
+
+        return database.getTableElement(number);
+    }
+
     public static <T> List<T> getAllElements(Context context, Class<T> classOfT) {
+        final ElementDatabase database = getElementDatabase(context);
+
+        if (database != null && isBinaryReadable(classOfT)) {
+            final List<T> elements = new ArrayList<>(database.getElementCount());
+
+            for (int i = 1; i <= database.getElementCount(); i++) {
+                elements.add(classOfT.cast(readElement(database, classOfT, i)));
+            }
+
+            return elements;
+        }
+
         final List<T> elements = new ArrayList<>();
 
         final JsonReader reader = new JsonReader(getInputStreamReader(context));
@@ -23,10 +74,8 @@ public class Database {
         try {
             reader.beginArray();
 
-            final Gson gson = new Gson();
-
             while (reader.hasNext()) {
-                elements.add(classOfT.cast(gson.fromJson(reader, classOfT)));
+                elements.add(classOfT.cast(GSON.fromJson(reader, classOfT)));
             }
 
             reader.endArray();
@@ -44,6 +93,13 @@ public class Database {
     }
 
     public static <T> T getElement(Context context, Class<T> classOfT, int number) {
+        final ElementDatabase database = getElementDatabase(context);
+
+        if (database != null && isBinaryReadable(classOfT) && number >= 1 &&
+                number <= database.getElementCount()) {
+            return classOfT.cast(readElement(database, classOfT, number));
+        }
+
         T element = null;
 
         final JsonReader reader = new JsonReader(getInputStreamReader(context));
@@ -51,11 +107,9 @@ public class Database {
         try {
             reader.beginArray();
 
-            final Gson gson = new Gson();
-
             for (int i = 1; reader.hasNext(); i++) {
                 if (i == number) {
-                    element = classOfT.cast(gson.fromJson(reader, classOfT));
+                    element = classOfT.cast(GSON.fromJson(reader, classOfT));
 
                     break;
                 } else {
@@ -74,4 +128,23 @@ public class Database {
 
         return element;
     }
+
+    public static Isotope[] getIsotopes(Context context, int number) {
+        final ElementDatabase database = getElementDatabase(context);
+
+        if (database != null && number >= 1 && number <= database.getElementCount()) {
+            return database.getIsotopes(number);
+        }
+
+        final IsotopeList isotopeList = getElement(context, IsotopeList.class, number);
+
+        return isotopeList != null ? isotopeList.isotopes : null;
+    }
+
+    /**
+     * Isotopes section of an element in the JSON resource; every other property is skipped.
+     */
+    private static class IsotopeList {
+        private Isotope[] isotopes;
+    }
 }
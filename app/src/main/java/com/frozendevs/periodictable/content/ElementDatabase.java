@@ -0,0 +1,171 @@
+package com.frozendevs.periodictable.content;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import com.frozendevs.periodictable.model.ElementProperties;
+import com.frozendevs.periodictable.model.Isotope;
+import com.frozendevs.periodictable.model.TableElementItem;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only view of the binary element database produced by the compileDatabase build task.
+ * Records have a fixed size, so an element is located by its atomic number without scanning.
+ * Isotopes live in their own section and are only decoded when asked for. Decoded strings are
+ * kept in a pool shared by every element and isotope read from this database.
+ */
+public class ElementDatabase {
+    public static final String ASSET_NAME = "elements.db";
+
+    private static final int MAGIC = 0x454C4442;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 11 * 4;
+    private static final int RECORD_FIXED_SIZE = 9 * 4;
+    private static final int ISOTOPE_SIZE = 5 * 4;
+
+    private final ByteBuffer mBuffer;
+    private final int mElementCount;
+    private final int mPropertyCount;
+    private final int mStringCount;
+    private final int mRecordsOffset;
+    private final int mRecordSize;
+    private final int mIsotopesOffset;
+    private final int mStringsOffset;
+    private final int mStringDataOffset;
+    private final String[] mPropertyKeys;
+    private final String[] mStrings;
+
+    public ElementDatabase(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an element database");
+        }
+
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported element database version " + buffer.getInt(4));
+        }
+
+        mElementCount = buffer.getInt(8);
+        mPropertyCount = buffer.getInt(16);
+        mStringCount = buffer.getInt(20);
+        mRecordsOffset = buffer.getInt(28);
+        mIsotopesOffset = buffer.getInt(32);
+        mStringsOffset = buffer.getInt(36);
+        mStringDataOffset = buffer.getInt(40);
+        mRecordSize = RECORD_FIXED_SIZE + mPropertyCount * 4;
+
+        mStrings = new String[mStringCount];
+
+        final int keysOffset = buffer.getInt(24);
+
+        mPropertyKeys = new String[mPropertyCount];
+        for (int i = 0; i < mPropertyCount; i++) {
+            mPropertyKeys[i] = getString(buffer.getInt(keysOffset + i * 4));
+        }
+    }
+
+    public static ElementDatabase open(AssetManager assets) throws IOException {
+        final AssetFileDescriptor fileDescriptor = assets.openFd(ASSET_NAME);
+
+        try (FileInputStream inputStream = new FileInputStream(
+                fileDescriptor.getFileDescriptor())) {
+            final FileChannel fileChannel = inputStream.getChannel();
+
+            return new ElementDatabase(fileChannel.map(FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength()));
+        } finally {
+            fileDescriptor.close();
+        }
+    }
+
+    public int getElementCount() {
+        return mElementCount;
+    }
+
+    public TableElementItem getTableElement(int number) {
+        final int record = getRecordOffset(number);
+
+        return new TableElementItem(getString(mBuffer.getInt(record + 16)),
+                getString(mBuffer.getInt(record + 20)), mBuffer.getInt(record),
+                mBuffer.getInt(record + 4), mBuffer.getInt(record + 8),
+                mBuffer.getInt(record + 12), getString(mBuffer.getInt(record + 24)));
+    }
+
+    public ElementProperties getProperties(int number) {
+        final int record = getRecordOffset(number);
+
+        final Map<String, String> properties = new HashMap<>(mPropertyCount * 2);
+        for (int i = 0; i < mPropertyCount; i++) {
+            properties.put(mPropertyKeys[i],
+                    getString(mBuffer.getInt(record + RECORD_FIXED_SIZE + i * 4)));
+        }
+
+        return new ElementProperties(getTableElement(number), properties);
+    }
+
+    public Isotope[] getIsotopes(int number) {
+        final int record = getRecordOffset(number);
+
+        final int start = mBuffer.getInt(record + 28);
+        final int count = mBuffer.getInt(record + 32);
+
+        final Isotope[] isotopes = new Isotope[count];
+
+        for (int i = 0; i < count; i++) {
+            final int isotope = mIsotopesOffset + (start + i) * ISOTOPE_SIZE;
+
+            isotopes[i] = new Isotope(getString(mBuffer.getInt(isotope)),
+                    getString(mBuffer.getInt(isotope + 4)), getString(mBuffer.getInt(isotope + 8)),
+                    getString(mBuffer.getInt(isotope + 12)),
+                    getString(mBuffer.getInt(isotope + 16)));
+        }
+
+        return isotopes;
+    }
+
+    private int getRecordOffset(int number) {
+        if (number < 1 || number > mElementCount) {
+            throw new IllegalArgumentException("No element with atomic number " + number);
+        }
+
+        return mRecordsOffset + (number - 1) * mRecordSize;
+    }
+
+    private String getString(int index) {
+        if (index < 0 || index >= mStringCount) {
+            throw new IllegalArgumentException("String index out of range: " + index);
+        }
+
+        String string = mStrings[index];
+
+        if (string == null) {
+            string = decodeString(index);
+
+            // Strings are immutable, so a racing thread can at worst decode the same value twice.
+            mStrings[index] = string;
+        }
+
+        return string;
+    }
+
+    private String decodeString(int index) {
+        final int start = mBuffer.getInt(mStringsOffset + index * 4);
+        final int end = mBuffer.getInt(mStringsOffset + (index + 1) * 4);
+
+        final byte[] bytes = new byte[end - start];
+
+        final ByteBuffer data = mBuffer.duplicate();
+        data.position(mStringDataOffset + start);
+        data.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,215 @@
+package com.frozendevs.periodictable.content;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import com.frozendevs.periodictable.model.ElementProperties;
+import com.frozendevs.periodictable.model.Isotope;
+import com.frozendevs.periodictable.model.TableElementItem;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide cache of the element database. The table projection of every element is loaded
+ * once, full properties and isotopes are loaded separately per element on first use, and the same
+ * instances are handed out afterwards.
+ */
+public class ElementRepository {
+    private static final String OBJECT_ELEMENTS_FILE = "object_elements.json";
+
+    private final Context mContext;
+
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private final AtomicInteger mLoadCount = new AtomicInteger();
+
+    private volatile TableElementItem[] mTableElements;
+    private volatile List<TableElementItem> mTableElementList;
+    private ElementProperties[] mProperties;
+    private Isotope[][] mIsotopes;
+    private long mLoadTimeMs;
+    private Map<String, int[]> mObjectElements;
+
+    public ElementRepository(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Starts loading the table projection on a background thread so that the first caller on
+     * the main thread does not pay for it.
+     */
+    public void warmUp() {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    private TableElementItem[] load() {
+        TableElementItem[] tableElements = mTableElements;
+
+        if (tableElements != null) {
+            return tableElements;
+        }
+
+        synchronized (this) {
+            if (mTableElements == null) {
+                final long startTime = SystemClock.uptimeMillis();
+
+                final List<TableElementItem> items = Database.getAllElements(mContext,
+                        TableElementItem.class);
+
+                tableElements = new TableElementItem[items.size() + 1];
+                for (TableElementItem item : items) {
+                    tableElements[item.getNumber()] = item;
+                }
+
+                mProperties = new ElementProperties[tableElements.length];
+                mIsotopes = new Isotope[tableElements.length][];
+                mTableElementList = Collections.unmodifiableList(items);
+                mLoadTimeMs = SystemClock.uptimeMillis() - startTime;
+                mLoadCount.incrementAndGet();
+
+                mTableElements = tableElements;
+            }
+
+            return mTableElements;
+        }
+    }
+
+    public int getElementCount() {
+        return load().length - 1;
+    }
+
+    public List<TableElementItem> getTableElements() {
+        load();
+
+        mHitCount.incrementAndGet();
+
+        return mTableElementList;
+    }
+
+    public TableElementItem getTableElement(int number) {
+        final TableElementItem[] tableElements = load();
+
+        if (number < 1 || number >= tableElements.length) {
+            return null;
+        }
+
+        mHitCount.incrementAndGet();
+
+        return tableElements[number];
+    }
+
+    public ElementProperties getProperties(int number) {
+        final TableElementItem[] tableElements = load();
+
+        if (number < 1 || number >= tableElements.length) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (mProperties[number] != null) {
+                mHitCount.incrementAndGet();
+
+                return mProperties[number];
+            }
+        }
+
+        mMissCount.incrementAndGet();
+
+        // Queried outside the lock so that it does not wait on, or hold up, other lookups.
+        final ElementProperties properties = Database.getElement(mContext,
+                ElementProperties.class, number);
+
+        synchronized (this) {
+            // Another thread may have loaded it in the meantime; keep handing out one instance.
+            if (mProperties[number] == null) {
+                mProperties[number] = properties;
+            }
+
+            return mProperties[number];
+        }
+    }
+
+    public Isotope[] getIsotopes(int number) {
+        final TableElementItem[] tableElements = load();
+
+        if (number < 1 || number >= tableElements.length) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (mIsotopes[number] != null) {
+                mHitCount.incrementAndGet();
+
+                return mIsotopes[number];
+            }
+        }
+
+        mMissCount.incrementAndGet();
+
+        final Isotope[] isotopes = Database.getIsotopes(mContext, number);
+
+        synchronized (this) {
+            if (mIsotopes[number] == null) {
+                mIsotopes[number] = isotopes;
+            }
+
+            return mIsotopes[number];
+        }
+    }
+
+    /**
+     * Returns the elements of the objects a detector recognizes, indexed by the detector's class
+     * ids. The object list is read from the assets once and shared by every index.
+     *
+     * @param classLabels Label of each class id of the detector.
+     */
+    public ObjectElementIndex getObjectElementIndex(List<String> classLabels) throws IOException {
+        final Map<String, int[]> objectElements;
+
+        synchronized (this) {
+            if (mObjectElements == null) {
+                mObjectElements = ObjectElementIndex.read(mContext.getAssets(),
+                        OBJECT_ELEMENTS_FILE);
+            }
+
+            objectElements = mObjectElements;
+        }
+
+        return new ObjectElementIndex(objectElements, classLabels);
+    }
+
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Returns how many times the table projection was loaded, which should never exceed one per
+     * process.
+     */
+    public int getLoadCount() {
+        return mLoadCount.get();
+    }
+
+    public synchronized long getLoadTimeMs() {
+        return mLoadTimeMs;
+    }
+
+    public String getStatString() {
+        return String.format(Locale.US, "loads=%d (%d ms) hits=%d misses=%d", getLoadCount(),
+                getLoadTimeMs(), getHitCount(), getMissCount());
+    }
+}
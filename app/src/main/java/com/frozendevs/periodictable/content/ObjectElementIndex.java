@@ -0,0 +1,107 @@
+package com.frozendevs.periodictable.content;
+
+import android.content.res.AssetManager;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index from the class ids of an object detector to the atomic numbers of the elements
+ * each object is made of, most notable first. The numbers of all classes are packed into one
+ * array and class i owns the range from mOffsets[i] to mOffsets[i + 1], so a lookup is a pair of
+ * array reads with no hashing or boxing.
+ */
+public final class ObjectElementIndex {
+    private static final Gson GSON = new Gson();
+    private static final Type OBJECT_ELEMENTS_TYPE =
+            new TypeToken<LinkedHashMap<String, int[]>>() {}.getType();
+
+    private final int[] mOffsets;
+    private final int[] mNumbers;
+    private final Set<String> mObjects;
+
+    /**
+     * @param objectElements Atomic numbers of the elements of each object, by label.
+     * @param classLabels Label of each class id of the detector.
+     */
+    ObjectElementIndex(Map<String, int[]> objectElements, List<String> classLabels) {
+        final Set<String> objects = new HashSet<>();
+        int total = 0;
+        for (String label : classLabels) {
+            final int[] numbers = objectElements.get(label);
+            if (numbers != null && numbers.length > 0) {
+                objects.add(label);
+                total += numbers.length;
+            }
+        }
+
+        mOffsets = new int[classLabels.size() + 1];
+        mNumbers = new int[total];
+        int offset = 0;
+        for (int i = 0; i < classLabels.size(); i++) {
+            mOffsets[i] = offset;
+            final int[] numbers = objectElements.get(classLabels.get(i));
+            if (numbers != null) {
+                System.arraycopy(numbers, 0, mNumbers, offset, numbers.length);
+                offset += numbers.length;
+            }
+        }
+        mOffsets[classLabels.size()] = offset;
+        mObjects = Collections.unmodifiableSet(objects);
+    }
+
+    /** Reads the elements of each object, by label, from a JSON asset. */
+    static Map<String, int[]> read(AssetManager assets, String fileName) throws IOException {
+        final Map<String, int[]> objectElements;
+        try (Reader reader = new InputStreamReader(assets.open(fileName), "UTF-8")) {
+            objectElements = GSON.fromJson(reader, OBJECT_ELEMENTS_TYPE);
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed object elements " + fileName, e);
+        }
+
+        if (objectElements == null) {
+            throw new IOException("Empty object elements " + fileName);
+        }
+
+        return Collections.unmodifiableMap(objectElements);
+    }
+
+    /** Returns the number of elements of a class, which is 0 for unknown classes. */
+    public int getElementCount(int classIndex) {
+        if (classIndex < 0 || classIndex >= mOffsets.length - 1) {
+            return 0;
+        }
+
+        return mOffsets[classIndex + 1] - mOffsets[classIndex];
+    }
+
+    /** Returns the atomic number of the i-th element of a class. */
+    public int getElement(int classIndex, int i) {
+        if (i < 0 || i >= getElementCount(classIndex)) {
+            throw new IndexOutOfBoundsException("Element " + i + " of class " + classIndex);
+        }
+
+        return mNumbers[mOffsets[classIndex] + i];
+    }
+
+    /** Returns the atomic number of the main element of a class, or 0 if it has none. */
+    public int getFirstElement(int classIndex) {
+        return getElementCount(classIndex) > 0 ? mNumbers[mOffsets[classIndex]] : 0;
+    }
+
+    /** Returns the labels of the classes that have elements. */
+    public Set<String> getObjects() {
+        return mObjects;
+    }
+}
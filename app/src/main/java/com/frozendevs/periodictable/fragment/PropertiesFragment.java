@@ -6,6 +6,7 @@ import android.support.v7.widget.LinearLayoutManager;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import com.frozendevs.periodictable.PeriodicTableApplication;
 import com.frozendevs.periodictable.activity.PropertiesActivity;
 import com.frozendevs.periodictable.model.ElementProperties;
 import com.frozendevs.periodictable.model.adapter.PropertiesAdapter;
@@ -24,7 +25,9 @@ public class PropertiesFragment extends Fragment {
         final RecyclerView recyclerView = layout.findViewById(R.id.properties_list);
 
         PropertiesAdapter adapter = new PropertiesAdapter(getActivity(),
-                (ElementProperties) getArguments().get(PropertiesActivity.ARGUMENT_PROPERTIES));
+                (ElementProperties) getArguments().get(PropertiesActivity.ARGUMENT_PROPERTIES),
+                ((PeriodicTableApplication) getActivity().getApplication())
+                        .getElementRepository());
         recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
         recyclerView.setAdapter(adapter);
         recyclerView.addItemDecoration(new DividerDecoration(getActivity()));
@@ -18,7 +18,7 @@ import android.view.ViewGroup;
 import com.frozendevs.periodictable.PeriodicTableApplication;
 import com.frozendevs.periodictable.activity.PropertiesActivity;
 import com.frozendevs.periodictable.content.AsyncTaskLoader;
-import com.frozendevs.periodictable.content.Database;
+import com.frozendevs.periodictable.content.ElementRepository;
 import com.frozendevs.periodictable.model.TableElementItem;
 import com.frozendevs.periodictable.model.TableItem;
 import com.frozendevs.periodictable.model.adapter.TableAdapter;
@@ -110,10 +110,13 @@ public class TableFragment extends Fragment implements PeriodicTableView.OnItemC
     @NotNull
     @Override
     public Loader<List<TableElementItem>> onCreateLoader(int id, Bundle args) {
+        final ElementRepository repository = ((PeriodicTableApplication)
+                getActivity().getApplication()).getElementRepository();
+
         return new AsyncTaskLoader<List<TableElementItem>>(getActivity()) {
             @Override
             public List<TableElementItem> loadInBackground() {
-                return Database.getAllElements(getContext(), TableElementItem.class);
+                return repository.getTableElements();
             }
         };
     }
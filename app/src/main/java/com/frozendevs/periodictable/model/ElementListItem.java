@@ -18,6 +18,12 @@ public class ElementListItem implements Parcelable {
     private String name, symbol;
     private int number;
 
+    public ElementListItem(String name, String symbol, int number) {
+        this.name = name;
+        this.symbol = symbol;
+        this.number = number;
+    }
+
     protected ElementListItem(Parcel in) {
         name = in.readString();
         symbol = in.readString();
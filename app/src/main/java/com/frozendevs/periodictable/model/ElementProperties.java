@@ -3,6 +3,8 @@ package com.frozendevs.periodictable.model;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import java.util.Map;
+
 public class ElementProperties extends TableElementItem {
 
     public static final Parcelable.Creator<ElementProperties> CREATOR = new Parcelable.Creator<ElementProperties>() {
@@ -25,7 +27,53 @@ public class ElementProperties extends TableElementItem {
             speedOfSound, youngsModulus, shearModulus, bulkModulus, mohsHardness, brinellHardness,
             electronsPerShell, thermalDiffusivity, electricalResistivity, bandGap, curiePoint,
             tensileStrength, poissonRatio, vickersHardness, casNumber, imageUrl;
-    private Isotope[] isotopes;
+
+    public ElementProperties(TableElementItem item, Map<String, String> properties) {
+        super(item);
+
+        block = properties.get("block");
+        electronConfiguration = properties.get("electronConfiguration");
+        wikipediaLink = properties.get("wikipediaLink");
+        appearance = properties.get("appearance");
+        phase = properties.get("phase");
+        density = properties.get("density");
+        liquidDensityAtMeltingPoint = properties.get("liquidDensityAtMeltingPoint");
+        liquidDensityAtBoilingPoint = properties.get("liquidDensityAtBoilingPoint");
+        meltingPoint = properties.get("meltingPoint");
+        sublimationPoint = properties.get("sublimationPoint");
+        boilingPoint = properties.get("boilingPoint");
+        triplePoint = properties.get("triplePoint");
+        criticalPoint = properties.get("criticalPoint");
+        heatOfFusion = properties.get("heatOfFusion");
+        heatOfVaporization = properties.get("heatOfVaporization");
+        molarHeatCapacity = properties.get("molarHeatCapacity");
+        oxidationStates = properties.get("oxidationStates");
+        electronegativity = properties.get("electronegativity");
+        molarIonizationEnergies = properties.get("molarIonizationEnergies");
+        atomicRadius = properties.get("atomicRadius");
+        covalentRadius = properties.get("covalentRadius");
+        vanDerWaalsRadius = properties.get("vanDerWaalsRadius");
+        crystalStructure = properties.get("crystalStructure");
+        magneticOrdering = properties.get("magneticOrdering");
+        thermalConductivity = properties.get("thermalConductivity");
+        thermalExpansion = properties.get("thermalExpansion");
+        speedOfSound = properties.get("speedOfSound");
+        youngsModulus = properties.get("youngsModulus");
+        shearModulus = properties.get("shearModulus");
+        bulkModulus = properties.get("bulkModulus");
+        mohsHardness = properties.get("mohsHardness");
+        brinellHardness = properties.get("brinellHardness");
+        electronsPerShell = properties.get("electronsPerShell");
+        thermalDiffusivity = properties.get("thermalDiffusivity");
+        electricalResistivity = properties.get("electricalResistivity");
+        bandGap = properties.get("bandGap");
+        curiePoint = properties.get("curiePoint");
+        tensileStrength = properties.get("tensileStrength");
+        poissonRatio = properties.get("poissonRatio");
+        vickersHardness = properties.get("vickersHardness");
+        casNumber = properties.get("casNumber");
+        imageUrl = properties.get("imageUrl");
+    }
 
     protected ElementProperties(Parcel in) {
         super(in);
@@ -72,7 +120,6 @@ public class ElementProperties extends TableElementItem {
         vickersHardness = in.readString();
         casNumber = in.readString();
         imageUrl = in.readString();
-        isotopes = (Isotope[]) in.readParcelableArray(Isotope.class.getClassLoader());
     }
 
     @Override
@@ -121,7 +168,6 @@ public class ElementProperties extends TableElementItem {
         dest.writeString(vickersHardness);
         dest.writeString(casNumber);
         dest.writeString(imageUrl);
-        dest.writeParcelableArray(isotopes, 0);
     }
 
     public String getBlock() {
@@ -196,10 +242,6 @@ public class ElementProperties extends TableElementItem {
         return electronegativity;
     }
 
-    public Isotope[] getIsotopes() {
-        return isotopes;
-    }
-
     public String getMolarIonizationEnergies() {
         return molarIonizationEnergies;
     }
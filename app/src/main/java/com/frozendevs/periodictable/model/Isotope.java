@@ -17,6 +17,15 @@ public class Isotope implements Parcelable {
     };
     private String symbol, halfLife, spin, abundance, decayModes;
 
+    public Isotope(String symbol, String halfLife, String spin, String abundance,
+                   String decayModes) {
+        this.symbol = symbol;
+        this.halfLife = halfLife;
+        this.spin = spin;
+        this.abundance = abundance;
+        this.decayModes = decayModes;
+    }
+
     protected Isotope(Parcel in) {
         symbol = in.readString();
         halfLife = in.readString();
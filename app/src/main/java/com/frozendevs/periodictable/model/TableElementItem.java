@@ -18,6 +18,21 @@ public class TableElementItem extends ElementListItem implements TableItem {
     private String weight;
     private int group, period, category;
 
+    public TableElementItem(String name, String symbol, int number, int group, int period,
+                            int category, String weight) {
+        super(name, symbol, number);
+
+        this.group = group;
+        this.period = period;
+        this.category = category;
+        this.weight = weight;
+    }
+
+    protected TableElementItem(TableElementItem item) {
+        this(item.getName(), item.getSymbol(), item.getNumber(), item.group, item.period,
+                item.category, item.weight);
+    }
+
     protected TableElementItem(Parcel in) {
         super(in);
 
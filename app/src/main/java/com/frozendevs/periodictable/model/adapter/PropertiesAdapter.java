@@ -2,16 +2,23 @@ package com.frozendevs.periodictable.model.adapter;
 
 import android.content.Context;
 import android.graphics.Typeface;
+import android.os.AsyncTask;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import com.frozendevs.periodictable.content.ElementRepository;
 import com.frozendevs.periodictable.model.ElementProperties;
+import com.frozendevs.periodictable.model.Isotope;
 import com.frozendevs.periodictable.view.RecyclerView;
 import org.jetbrains.annotations.NotNull;
 import org.tensorflow.lite.examples.detection.R;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class PropertiesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     public static final int VIEW_TYPE_HEADER = 0;
@@ -33,14 +40,21 @@ public class PropertiesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
 
     private Context mContext;
     private Typeface mTypeface;
-    private Property[] mProperties;
-
-    public PropertiesAdapter(Context context, ElementProperties properties) {
+    private List<Property> mProperties;
+    private ElementRepository mRepository;
+    private int mNumber;
+    private int mIsotopesHeaderPosition;
+    private boolean mIsotopesRequested;
+
+    public PropertiesAdapter(Context context, ElementProperties properties,
+                             ElementRepository repository) {
         mContext = context;
+        mRepository = repository;
+        mNumber = properties.getNumber();
 
         mTypeface = Typeface.createFromAsset(context.getAssets(), "fonts/NotoSans-Regular.ttf");
 
-        mProperties = new Property[]{
+        mProperties = new ArrayList<>(Arrays.asList(
                 new Property(R.string.properties_header_general),
                 new Property(R.string.property_symbol, properties.getSymbol()),
                 new Property(R.string.property_atomic_number, properties.getNumber()),
@@ -90,8 +104,11 @@ public class PropertiesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
                 new Property(R.string.property_mohs_hardness, properties.getMohsHardness()),
                 new Property(R.string.property_vickers_hardness, properties.getVickersHardness()),
                 new Property(R.string.property_brinell_hardness, properties.getBrinellHardness()),
-                new Property(R.string.property_cas_number, properties.getCasNumber())
-        };
+                new Property(R.string.property_cas_number, properties.getCasNumber()),
+                new Property(R.string.properties_header_isotopes)
+        ));
+
+        mIsotopesHeaderPosition = mProperties.size() - 1;
     }
 
     public static String formatProperty(Context context, String property) {
@@ -115,23 +132,70 @@ public class PropertiesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
 
     @Override
     public void onBindViewHolder(@NotNull RecyclerView.ViewHolder holder, int position) {
-        Property property = mProperties[position];
+        Property property = mProperties.get(position);
 
         ((ViewHolder) holder).setName(property.getName());
 
         if (getItemViewType(position) == VIEW_TYPE_ITEM) {
             ((ViewHolder) holder).setValue(property.getValue());
         }
+
+        /*
+         * Isotopes are only read once their section scrolls into view. They are read from the
+         * database on a background thread, and the rows are inserted once binding is over.
+         */
+        if (position == mIsotopesHeaderPosition && !mIsotopesRequested) {
+            mIsotopesRequested = true;
+
+            new LoadIsotopesTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
+
+    private void addIsotopes(Isotope[] isotopes) {
+        if (isotopes == null || isotopes.length == 0) {
+            return;
+        }
+
+        final int start = mProperties.size();
+
+        for (Isotope isotope : isotopes) {
+            mProperties.add(new Property(isotope.getSymbol(), formatIsotope(isotope)));
+        }
+
+        notifyItemRangeInserted(start, isotopes.length);
+    }
+
+    private String formatIsotope(Isotope isotope) {
+        return mContext.getString(R.string.property_half_life) + ": " +
+                formatProperty(mContext, isotope.getHalfLife()) + "\n" +
+                mContext.getString(R.string.property_decay_modes) + ": " +
+                formatProperty(mContext, isotope.getDecayModes()) + "\n" +
+                mContext.getString(R.string.property_spin) + ": " +
+                formatProperty(mContext, isotope.getSpin()) + "\n" +
+                mContext.getString(R.string.property_abundance) + ": " +
+                formatProperty(mContext, isotope.getAbundance());
     }
 
     @Override
     public int getItemCount() {
-        return mProperties.length;
+        return mProperties.size();
     }
 
     @Override
     public int getItemViewType(int position) {
-        return mProperties[position].getValue() == null ? VIEW_TYPE_HEADER : VIEW_TYPE_ITEM;
+        return mProperties.get(position).getValue() == null ? VIEW_TYPE_HEADER : VIEW_TYPE_ITEM;
+    }
+
+    private class LoadIsotopesTask extends AsyncTask<Void, Void, Isotope[]> {
+        @Override
+        protected Isotope[] doInBackground(Void... params) {
+            return mRepository.getIsotopes(mNumber);
+        }
+
+        @Override
+        protected void onPostExecute(Isotope[] isotopes) {
+            addIsotopes(isotopes);
+        }
     }
 
     private class Property {
@@ -147,6 +211,11 @@ public class PropertiesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             mValue = formatProperty(mContext, value);
         }
 
+        Property(String name, String value) {
+            mName = name;
+            mValue = value;
+        }
+
         Property(int name, int value) {
             this(name, String.valueOf(value));
         }
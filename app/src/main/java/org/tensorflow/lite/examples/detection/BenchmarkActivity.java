@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.widget.TextView;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.BackendBenchmark;
+import org.tensorflow.lite.examples.detection.tflite.DetectorBackends;
+import org.tensorflow.lite.examples.detection.tflite.ModelBenchmark;
+import org.tensorflow.lite.examples.detection.tflite.ModelManifest;
+import org.tensorflow.lite.examples.detection.tflite.OfflineDetectionRunner;
+
+/**
+ * Runs the benchmark an intent extra asks for, without the camera, so that nothing else competes
+ * for the CPU while it is measured. The result is logged and shown once the run is done.
+ *
+ * <p>A run is started only when the activity is first created, not when it is recreated, and
+ * never while another one is in progress. Debug builds export the activity, so that it can be
+ * started with {@code adb shell am start}.
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+  private static final Logger LOGGER = new Logger();
+
+  /** Intent extra: number of runs per model of the {@link ModelBenchmark}. */
+  public static final String EXTRA_BENCHMARK_MODEL = "benchmark_model";
+  /**
+   * Intent extra: directory of images to run the model over, see {@link OfflineDetectionRunner}.
+   * Results are written to an {@code offline_detection} directory inside it.
+   */
+  public static final String EXTRA_DETECT_OFFLINE = "detect_offline";
+  /**
+   * Intent extra: directory of images to run every detector backend over, see {@link
+   * BackendBenchmark}. Results are written to a {@code backend_benchmark} directory inside it.
+   */
+  public static final String EXTRA_BENCHMARK_BACKENDS = "benchmark_backends";
+  // The model manifest the benchmarks load their models from.
+  private static final String MODEL_MANIFEST_FILE = "detect_elements.json";
+  // The detector backends the backend benchmark runs, see DetectorBackends.
+  private static final String DETECTOR_BACKENDS_FILE = "detector_backends.json";
+  // Images recognized together by the offline runner and the backend benchmark.
+  private static final int OFFLINE_BATCH_SIZE = 4;
+
+  // Whether a run is in progress, in this or a previous instance of the activity.
+  private static final AtomicBoolean running = new AtomicBoolean();
+
+  private TextView resultTextView;
+
+  @Override
+  protected void onCreate(final Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    resultTextView = new TextView(this);
+    resultTextView.setTextIsSelectable(true);
+    setContentView(resultTextView);
+
+    if (savedInstanceState != null) {
+      resultTextView.setText("Restored, see the log for the result of the earlier run.");
+      return;
+    }
+    if (!running.compareAndSet(false, true)) {
+      resultTextView.setText("A benchmark is already running.");
+      return;
+    }
+    resultTextView.setText("Running...");
+    new Thread(
+            () -> {
+              final String result;
+              try {
+                result = runBenchmark();
+              } finally {
+                running.set(false);
+              }
+              runOnUiThread(
+                  () -> {
+                    if (!isDestroyed()) {
+                      resultTextView.setText(result);
+                    }
+                  });
+            },
+            "benchmark")
+        .start();
+  }
+
+  /** Runs the benchmark the intent asks for and returns its summary. */
+  private String runBenchmark() {
+    try {
+      final int modelRuns = getIntent().getIntExtra(EXTRA_BENCHMARK_MODEL, 0);
+      if (modelRuns > 0) {
+        final String summary =
+            ModelBenchmark.run(
+                getAssets(), ModelManifest.load(getAssets(), MODEL_MANIFEST_FILE), modelRuns);
+        LOGGER.i("Model benchmark:\n%s", summary);
+        return summary;
+      }
+      final String offlinePath = getIntent().getStringExtra(EXTRA_DETECT_OFFLINE);
+      if (offlinePath != null) {
+        final File imageDirectory = new File(offlinePath);
+        return OfflineDetectionRunner.run(
+            getAssets(),
+            ModelManifest.load(getAssets(), MODEL_MANIFEST_FILE),
+            imageDirectory,
+            new File(imageDirectory, "offline_detection"),
+            OFFLINE_BATCH_SIZE);
+      }
+      final String backendsPath = getIntent().getStringExtra(EXTRA_BENCHMARK_BACKENDS);
+      if (backendsPath != null) {
+        final File imageDirectory = new File(backendsPath);
+        final String summary =
+            BackendBenchmark.run(
+                getAssets(),
+                DetectorBackends.load(getAssets(), DETECTOR_BACKENDS_FILE),
+                imageDirectory,
+                new File(imageDirectory, "backend_benchmark"),
+                OFFLINE_BATCH_SIZE);
+        LOGGER.i("Backend benchmark:\n%s", summary);
+        return summary;
+      }
+      return "No benchmark requested.";
+    } catch (final IOException | RuntimeException e) {
+      LOGGER.e(e, "Benchmark failed");
+      return "Benchmark failed: " + e;
+    }
+  }
+}
@@ -42,21 +42,45 @@ import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.*;
 import org.jetbrains.annotations.NotNull;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
-
+import org.tensorflow.lite.examples.detection.env.StripedYuvConverter;
+import org.tensorflow.lite.examples.detection.env.YuvInputConverter;
+import org.tensorflow.lite.examples.detection.pipeline.AnalysisResolution;
+import org.tensorflow.lite.examples.detection.pipeline.FrameRecorder;
+import org.tensorflow.lite.examples.detection.pipeline.FrameReplaySource;
+
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 public abstract class CameraActivity extends AppCompatActivity
     implements OnImageAvailableListener,
         Camera.PreviewCallback,
+        FrameReplaySource.Listener,
         CompoundButton.OnCheckedChangeListener,
         View.OnClickListener {
   private static final Logger LOGGER = new Logger();
 
   private static final int PERMISSIONS_REQUEST = 1;
 
+  /** Intent extra: path of a file to record camera frames to, see {@link FrameRecorder}. */
+  public static final String EXTRA_RECORD_FRAMES = "record_frames";
+  /** Intent extra: path of a recording to process instead of the camera. */
+  public static final String EXTRA_REPLAY_FRAMES = "replay_frames";
+  /** Intent extra: replay rate in frames per second; 0, the default, replays at maximum rate. */
+  public static final String EXTRA_REPLAY_FPS = "replay_fps";
+  /**
+   * Intent extra: whether to replay deterministically, see {@link #isDeterministicReplay()}. The
+   * replay then runs at maximum rate, whatever {@link #EXTRA_REPLAY_FPS} says.
+   */
+  public static final String EXTRA_REPLAY_DETERMINISTIC = "replay_deterministic";
+  // Largest recording. The file is mapped at this size up front and cut to its frames on close;
+  // if the app dies first, replay still stops at the last whole frame.
+  private static final int MAX_RECORDING_BYTES = 512 * 1024 * 1024;
+
   private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
+  // Upper bound of the thread count control.
+  protected static final int MAX_THREADS = 9;
   protected int previewWidth = 0;
   protected int previewHeight = 0;
   private Handler handler;
@@ -64,15 +88,39 @@ public abstract class CameraActivity extends AppCompatActivity
   private boolean useCamera2API;
   private boolean isProcessingFrame = false;
   private byte[][] yuvBytes = new byte[3][];
+  // Planes of the current frame. Camera2 planes are read in place while the image is held, until
+  // readyForNextImage(); the planes of other frames wrap yuvBytes.
+  private final ByteBuffer[] yuvPlanes = new ByteBuffer[3];
+  private boolean isDirect;
   private int[] rgbBytes = null;
   private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  // Whether yuvBytes[0] holds a whole NV21 frame from the legacy camera API.
+  private boolean isSemiPlanar;
   private Runnable postInferenceCallback;
   private Runnable imageConverter;
+  private int previewRotation;
+  // Capture time of the current frame, from the recording when replaying.
+  private long frameTimeMs;
+  // Added to recorded frame times to move them to the replay, or unset before the first frame.
+  private long replayTimeOffsetMs;
+  private boolean replayTimeOffsetSet;
+  private File recordFile;
+  private FrameRecorder recorder;
+  private File replayFile;
+  private boolean deterministicReplay;
+  // The replayed frame held until releaseReplayedFrame() in a deterministic replay.
+  private volatile FrameReplaySource.Frame heldReplayFrame;
+  // Set while the camera2 API delivers the frames; only it can change their size.
+  private CameraConnectionFragment cameraFragment;
+  // Only used when a full ARGB frame is requested through getRgbBytes().
+  private StripedYuvConverter rgbConverter;
 
   private LinearLayout gestureLayout;
   private BottomSheetBehavior sheetBehavior;
 
-  protected TextView frameValueTextView, cropValueTextView, inferenceTimeTextView;
+  protected TextView frameValueTextView, cropValueTextView, inferenceTimeTextView, statsTextView;
   protected ImageView bottomSheetArrowImageView;
   private SwitchCompat apiSwitchCompat;
   private TextView threadsTextView;
@@ -88,11 +136,22 @@ public abstract class CameraActivity extends AppCompatActivity
     getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
     setContentView(R.layout.activity_camera);
+
+    rgbConverter = new StripedYuvConverter(StripedYuvConverter.getDefaultStripeCount());
 //    Toolbar toolbar = findViewById(R.id.toolbar);
 //    setSupportActionBar(toolbar);
 //    getSupportActionBar().setDisplayShowTitleEnabled(false);
 
-    if (hasPermission()) {
+    final String recordPath = getIntent().getStringExtra(EXTRA_RECORD_FRAMES);
+    final String replayPath = getIntent().getStringExtra(EXTRA_REPLAY_FRAMES);
+    recordFile = recordPath != null ? new File(recordPath) : null;
+    replayFile = replayPath != null ? new File(replayPath) : null;
+    deterministicReplay =
+        replayFile != null && getIntent().getBooleanExtra(EXTRA_REPLAY_DETERMINISTIC, false);
+
+    if (replayFile != null) {
+      setReplayFragment();
+    } else if (hasPermission()) {
       setFragment();
     } else {
       requestPermission();
@@ -154,6 +213,7 @@ public abstract class CameraActivity extends AppCompatActivity
     frameValueTextView = findViewById(R.id.frame_info);
     cropValueTextView = findViewById(R.id.crop_info);
     inferenceTimeTextView = findViewById(R.id.inference_info);
+    statsTextView = findViewById(R.id.stats_info);
 
     apiSwitchCompat.setOnCheckedChangeListener(this);
 
@@ -166,12 +226,108 @@ public abstract class CameraActivity extends AppCompatActivity
     return rgbBytes;
   }
 
+  /**
+   * Writes the current frame into a model input buffer without producing an ARGB frame. Must be
+   * called before {@link #readyForNextImage()} releases the frame.
+   */
+  protected void fillInputBuffer(final YuvInputConverter converter, final ByteBuffer buffer) {
+    if (isSemiPlanar) {
+      converter.convertSemiPlanar(yuvBytes[0], buffer);
+    } else if (isDirect) {
+      converter.convert(
+          yuvPlanes[0], yuvPlanes[1], yuvPlanes[2], yRowStride, uvRowStride, uvPixelStride, buffer);
+    } else {
+      converter.convert(
+          yuvBytes[0], yuvBytes[1], yuvBytes[2], yRowStride, uvRowStride, uvPixelStride, buffer);
+    }
+  }
+
   protected int getLuminanceStride() {
     return yRowStride;
   }
 
-  protected byte[] getLuminance() {
-    return yuvBytes[0];
+  /** Returns the luminance plane of the current frame, valid until {@link #readyForNextImage()}. */
+  protected ByteBuffer getLuminance() {
+    return yuvPlanes[0];
+  }
+
+  /** Wraps an array as a plane, reusing the current wrapper if it already wraps the array. */
+  private static ByteBuffer wrapPlane(final ByteBuffer current, final byte[] bytes) {
+    return current != null && current.hasArray() && current.array() == bytes
+        ? current
+        : ByteBuffer.wrap(bytes);
+  }
+
+  /**
+   * Returns when the current frame was captured, in {@link SystemClock#uptimeMillis()} time. For
+   * a replayed frame, this is when it was recorded, shifted so that the first replayed frame was
+   * captured when it was delivered.
+   */
+  protected long getFrameTimeMs() {
+    return frameTimeMs;
+  }
+
+  /**
+   * Asks for frames of another size from now on, leaving the displayed preview as it is. The
+   * switch happens after the current frame, and {@link #onAnalysisSizeChanged} is called before
+   * the first frame of the new size.
+   *
+   * @return Whether the size can be changed. It stays fixed with the legacy camera API, while
+   *     replaying and while recording, since a recording has a single frame size.
+   */
+  protected boolean requestAnalysisSize(final Size size) {
+    final CameraConnectionFragment fragment = cameraFragment;
+    if (fragment == null || recordFile != null) {
+      return false;
+    }
+    fragment.setAnalysisSize(size);
+    return true;
+  }
+
+  /** Called on the frame thread when the camera switches to frames of another size. */
+  private void onAnalysisSizeSwitched(final Size size) {
+    previewWidth = size.getWidth();
+    previewHeight = size.getHeight();
+    // Reallocated at the new size by the next frame.
+    rgbBytes = null;
+    for (int i = 0; i < yuvBytes.length; ++i) {
+      yuvBytes[i] = null;
+    }
+    onAnalysisSizeChanged(size, previewRotation);
+  }
+
+  /** Appends the current frame to the recording, if one was requested. */
+  private void recordFrame(final int planeCount) {
+    if (recordFile == null) {
+      return;
+    }
+    if (recorder == null) {
+      try {
+        recorder =
+            new FrameRecorder(
+                recordFile, previewWidth, previewHeight, previewRotation, MAX_RECORDING_BYTES);
+      } catch (final IOException e) {
+        LOGGER.e(e, "Cannot record to %s", recordFile);
+        recordFile = null;
+        return;
+      }
+    }
+    recorder.record(
+        frameTimeMs * 1000000L, yuvPlanes, planeCount, yRowStride, uvRowStride, uvPixelStride);
+  }
+
+  private void stopRecording() {
+    if (recorder != null) {
+      LOGGER.i("Recording stopped: %s", recorder.getStatString());
+      try {
+        recorder.close();
+      } catch (final IOException e) {
+        LOGGER.e(e, "Cannot finish recording %s", recordFile);
+      }
+      recorder = null;
+      // Resuming would overwrite the recording.
+      recordFile = null;
+    }
   }
 
   /** Callback for android.hardware.Camera API */
@@ -189,7 +345,8 @@ public abstract class CameraActivity extends AppCompatActivity
         previewHeight = previewSize.height;
         previewWidth = previewSize.width;
         rgbBytes = new int[previewWidth * previewHeight];
-        onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), 90);
+        previewRotation = 90;
+        onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), previewRotation);
       }
     } catch (final Exception e) {
       LOGGER.e(e, "Exception!");
@@ -198,10 +355,15 @@ public abstract class CameraActivity extends AppCompatActivity
 
     isProcessingFrame = true;
     yuvBytes[0] = bytes;
+    yuvPlanes[0] = wrapPlane(yuvPlanes[0], bytes);
+    isDirect = false;
     yRowStride = previewWidth;
+    isSemiPlanar = true;
+    frameTimeMs = SystemClock.uptimeMillis();
+    recordFrame(1);
 
     imageConverter =
-            () -> ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
+            () -> rgbConverter.convertSemiPlanar(bytes, previewWidth, previewHeight, rgbBytes);
 
     postInferenceCallback =
             () -> {
@@ -249,22 +411,32 @@ public abstract class CameraActivity extends AppCompatActivity
       isProcessingFrame = true;
       Trace.beginSection("imageAvailable");
       final Plane[] planes = image.getPlanes();
-      fillBytes(planes, yuvBytes);
+      for (int i = 0; i < planes.length; ++i) {
+        yuvPlanes[i] = planes[i].getBuffer();
+      }
+      isDirect = true;
       yRowStride = planes[0].getRowStride();
-      final int uvRowStride = planes[1].getRowStride();
-      final int uvPixelStride = planes[1].getPixelStride();
+      uvRowStride = planes[1].getRowStride();
+      uvPixelStride = planes[1].getPixelStride();
+      isSemiPlanar = false;
+      frameTimeMs = SystemClock.uptimeMillis();
+      recordFrame(planes.length);
 
       imageConverter =
-              () -> ImageUtils.convertYUV420ToARGB8888(
-                  yuvBytes[0],
-                  yuvBytes[1],
-                  yuvBytes[2],
-                  previewWidth,
-                  previewHeight,
-                  yRowStride,
-                  uvRowStride,
-                  uvPixelStride,
-                  rgbBytes);
+              () -> {
+                // Only used for debugging, so only here are the planes copied out.
+                fillBytes(planes, yuvBytes);
+                rgbConverter.convert(
+                    yuvBytes[0],
+                    yuvBytes[1],
+                    yuvBytes[2],
+                    previewWidth,
+                    previewHeight,
+                    yRowStride,
+                    uvRowStride,
+                    uvPixelStride,
+                    rgbBytes);
+              };
 
       postInferenceCallback =
               () -> {
@@ -281,11 +453,83 @@ public abstract class CameraActivity extends AppCompatActivity
     Trace.endSection();
   }
 
+  /** Callback for replayed frames, which stand in for the camera ones. */
+  @Override
+  public void onFrame(final FrameReplaySource.Frame frame) {
+    if (rgbBytes == null) {
+      rgbBytes = new int[previewWidth * previewHeight];
+    }
+    isProcessingFrame = true;
+    for (int i = 0; i < frame.planeCount; ++i) {
+      yuvBytes[i] = frame.planes[i];
+      yuvPlanes[i] = wrapPlane(yuvPlanes[i], frame.planes[i]);
+    }
+    isDirect = false;
+    yRowStride = frame.yRowStride;
+    uvRowStride = frame.uvRowStride;
+    uvPixelStride = frame.uvPixelStride;
+    isSemiPlanar = frame.isSemiPlanar();
+    // The recording was made in the uptime of another session; the tracks are drawn in this one.
+    final long recordedTimeMs = frame.timestampNs / 1000000L;
+    if (!replayTimeOffsetSet) {
+      replayTimeOffsetMs = SystemClock.uptimeMillis() - recordedTimeMs;
+      replayTimeOffsetSet = true;
+    }
+    frameTimeMs = recordedTimeMs + replayTimeOffsetMs;
+
+    imageConverter =
+        isSemiPlanar
+            ? () ->
+                rgbConverter.convertSemiPlanar(yuvBytes[0], previewWidth, previewHeight, rgbBytes)
+            : () ->
+                rgbConverter.convert(
+                    yuvBytes[0],
+                    yuvBytes[1],
+                    yuvBytes[2],
+                    previewWidth,
+                    previewHeight,
+                    yRowStride,
+                    uvRowStride,
+                    uvPixelStride,
+                    rgbBytes);
+
+    if (deterministicReplay) {
+      // The planes are no longer read, but the next frame waits for this one's results.
+      heldReplayFrame = frame;
+      postInferenceCallback = () -> isProcessingFrame = false;
+    } else {
+      postInferenceCallback =
+          () -> {
+            isProcessingFrame = false;
+            frame.release();
+          };
+    }
+    processImage();
+  }
+
+  /**
+   * Whether frames are replayed one at a time and each is processed all the way through, so that
+   * two replays of a recording give the same results however long each step takes. Subclasses
+   * must then process every frame without skipping any on account of latency, and call {@link
+   * #releaseReplayedFrame()} once its results are processed.
+   */
+  protected boolean isDeterministicReplay() {
+    return deterministicReplay;
+  }
+
+  /** Lets the next frame of a deterministic replay be delivered. Does nothing otherwise. */
+  protected void releaseReplayedFrame() {
+    final FrameReplaySource.Frame frame = heldReplayFrame;
+    if (frame != null) {
+      heldReplayFrame = null;
+      frame.release();
+    }
+  }
+
   @Override
   public synchronized void onStart() {
     LOGGER.d("onStart " + this);
     super.onStart();
-    setNumThreads(7);
   }
 
   @Override
@@ -302,6 +546,7 @@ public abstract class CameraActivity extends AppCompatActivity
   @Override
   public synchronized void onPause() {
     LOGGER.d("onPause " + this);
+    stopRecording();
 
     handlerThread.quitSafely();
     try {
@@ -324,6 +569,7 @@ public abstract class CameraActivity extends AppCompatActivity
   @Override
   public synchronized void onDestroy() {
     LOGGER.d("onDestroy " + this);
+    rgbConverter.close();
     super.onDestroy();
   }
 
@@ -413,6 +659,23 @@ public abstract class CameraActivity extends AppCompatActivity
     return null;
   }
 
+  private void setReplayFragment() {
+    final Fragment fragment =
+        new ReplayFragment(
+            this,
+            (size, rotation) -> {
+              previewHeight = size.getHeight();
+              previewWidth = size.getWidth();
+              // Called as each replay starts, before its first frame.
+              replayTimeOffsetSet = false;
+              CameraActivity.this.onPreviewSizeChosen(size, rotation);
+            },
+            getLayoutId(),
+            replayFile,
+            deterministicReplay ? 0.0f : getIntent().getFloatExtra(EXTRA_REPLAY_FPS, 0.0f));
+    getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
+  }
+
   protected void setFragment() {
     String cameraId = chooseCamera();
 
@@ -423,6 +686,7 @@ public abstract class CameraActivity extends AppCompatActivity
                   (size, rotation) -> {
                     previewHeight = size.getHeight();
                     previewWidth = size.getWidth();
+                    previewRotation = rotation;
                     CameraActivity.this.onPreviewSizeChosen(size, rotation);
                   },
               this,
@@ -430,8 +694,14 @@ public abstract class CameraActivity extends AppCompatActivity
               getDesiredPreviewFrameSize());
 
       camera2Fragment.setCamera(cameraId);
+      final AnalysisResolution analysisResolution = getAnalysisResolution();
+      if (analysisResolution != null) {
+        camera2Fragment.setAnalysisResolution(analysisResolution, this::onAnalysisSizeSwitched);
+      }
+      cameraFragment = camera2Fragment;
       fragment = camera2Fragment;
     } else {
+      cameraFragment = null;
       fragment =
           new LegacyCameraConnectionFragment(this, getLayoutId(), getDesiredPreviewFrameSize());
     }
@@ -488,9 +758,10 @@ public abstract class CameraActivity extends AppCompatActivity
     if (v.getId() == R.id.plus) {
       String threads = threadsTextView.getText().toString().trim();
       int numThreads = Integer.parseInt(threads);
-      if (numThreads >= 9) return;
+      if (numThreads >= MAX_THREADS) return;
       numThreads++;
       threadsTextView.setText(String.valueOf(numThreads));
+      setNumThreads(numThreads);
     } else if (v.getId() == R.id.minus) {
       String threads = threadsTextView.getText().toString().trim();
       int numThreads = Integer.parseInt(threads);
@@ -499,9 +770,14 @@ public abstract class CameraActivity extends AppCompatActivity
       }
       numThreads--;
       threadsTextView.setText(String.valueOf(numThreads));
+      setNumThreads(numThreads);
     }
   }
 
+  protected void showNumThreads(int numThreads) {
+    threadsTextView.setText(String.valueOf(numThreads));
+  }
+
   protected void showFrameInfo(String frameInfo) {
     frameValueTextView.setText(frameInfo);
   }
@@ -514,6 +790,10 @@ public abstract class CameraActivity extends AppCompatActivity
     inferenceTimeTextView.setText(inferenceTime);
   }
 
+  protected void showStats(String stats) {
+    statsTextView.setText(stats);
+  }
+
   protected abstract void processImage();
 
   protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
@@ -522,6 +802,20 @@ public abstract class CameraActivity extends AppCompatActivity
 
   protected abstract Size getDesiredPreviewFrameSize();
 
+  /**
+   * Returns what chooses the size of the analysed frames apart from the displayed preview, or null
+   * to analyse frames of the preview size. Only used with the camera2 API.
+   */
+  protected AnalysisResolution getAnalysisResolution() {
+    return null;
+  }
+
+  /**
+   * Called on the frame thread when the analysed frames change size after {@link
+   * #onPreviewSizeChosen}, with {@link #previewWidth} and {@link #previewHeight} already updated.
+   */
+  protected void onAnalysisSizeChanged(final Size size, final int rotation) {}
+
   protected abstract void setNumThreads(int numThreads);
 
   protected abstract void setUseNNAPI(boolean isChecked);
@@ -62,6 +62,7 @@ import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 import org.tensorflow.lite.examples.detection.customview.AutoFitTextureView;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.pipeline.AnalysisResolution;
 
 @SuppressLint("ValidFragment")
 public class CameraConnectionFragment extends Fragment {
@@ -121,6 +122,12 @@ public class CameraConnectionFragment extends Fragment {
   private Integer sensorOrientation;
   /** The {@link Size} of camera preview. */
   private Size previewSize;
+  /** The {@link Size} of the frames handed to {@link #imageListener}. */
+  private Size analysisSize;
+  /** Chooses {@link #analysisSize}, or null to analyse frames of the preview size. */
+  private AnalysisResolution analysisResolution;
+
+  private AnalysisSizeCallback analysisSizeCallback;
   /** An additional thread for running tasks that shouldn't block the UI. */
   private HandlerThread backgroundThread;
   /** A {@link Handler} for running tasks in the background. */
@@ -312,6 +319,63 @@ public class CameraConnectionFragment extends Fragment {
     this.cameraId = cameraId;
   }
 
+  /**
+   * Sizes the frames handed to the image listener apart from the displayed preview.
+   *
+   * @param resolution Chooses the frame size once the camera is known.
+   * @param callback Called on the image listener's thread when {@link #setAnalysisSize} changes
+   *     the frame size, before frames of the new size arrive.
+   */
+  public void setAnalysisResolution(
+      final AnalysisResolution resolution, final AnalysisSizeCallback callback) {
+    this.analysisResolution = resolution;
+    this.analysisSizeCallback = callback;
+  }
+
+  /**
+   * Switches the frames handed to the image listener to another size, leaving the displayed
+   * preview size as it is. The capture session is recreated on the image listener's thread, so no
+   * frame is being processed while it happens; the preview stalls for a moment meanwhile.
+   */
+  public void setAnalysisSize(final Size size) {
+    final Handler handler = backgroundHandler;
+    if (handler != null) {
+      handler.post(() -> reconfigureAnalysis(size));
+    }
+  }
+
+  private void reconfigureAnalysis(final Size size) {
+    try {
+      cameraOpenCloseLock.acquire();
+      try {
+        if (null == cameraDevice || size.equals(analysisSize)) {
+          return;
+        }
+        LOGGER.i("Switching analysis frames from " + analysisSize + " to " + size);
+        if (null != captureSession) {
+          captureSession.close();
+          captureSession = null;
+        }
+        if (null != previewReader) {
+          previewReader.close();
+          previewReader = null;
+        }
+        analysisSize = size;
+        if (analysisResolution != null) {
+          analysisResolution.setSize(size);
+        }
+        if (analysisSizeCallback != null) {
+          analysisSizeCallback.onAnalysisSizeChanged(size);
+        }
+        createCameraPreviewSession();
+      } finally {
+        cameraOpenCloseLock.release();
+      }
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Interrupted while switching the analysis size.");
+    }
+  }
+
   /** Sets up member variables related to camera. */
   private void setUpCameraOutputs() {
     final Activity activity = getActivity();
@@ -340,6 +404,11 @@ public class CameraConnectionFragment extends Fragment {
       } else {
         textureView.setAspectRatio(previewSize.getHeight(), previewSize.getWidth());
       }
+
+      analysisSize =
+          analysisResolution != null
+              ? analysisResolution.select(map.getOutputSizes(ImageFormat.YUV_420_888), previewSize)
+              : previewSize;
     } catch (final CameraAccessException e) {
       LOGGER.e(e, "Exception!");
     } catch (final NullPointerException e) {
@@ -352,7 +421,7 @@ public class CameraConnectionFragment extends Fragment {
       throw new RuntimeException(getString(R.string.camera_error));
     }
 
-    cameraConnectionCallback.onPreviewSizeChosen(previewSize, sensorOrientation);
+    cameraConnectionCallback.onPreviewSizeChosen(analysisSize, sensorOrientation);
   }
 
   /** Opens the camera specified by {@link CameraConnectionFragment#cameraId}. */
@@ -432,11 +501,12 @@ public class CameraConnectionFragment extends Fragment {
       previewRequestBuilder.addTarget(surface);
 
       LOGGER.i("Opening camera preview: " + previewSize.getWidth() + "x" + previewSize.getHeight());
+      LOGGER.i("Analysing frames of " + analysisSize.getWidth() + "x" + analysisSize.getHeight());
 
-      // Create the reader for the preview frames.
+      // Create the reader for the analysed frames, which need not be as large as the preview.
       previewReader =
           ImageReader.newInstance(
-              previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, 2);
+              analysisSize.getWidth(), analysisSize.getHeight(), ImageFormat.YUV_420_888, 2);
 
       previewReader.setOnImageAvailableListener(imageListener, backgroundHandler);
       previewRequestBuilder.addTarget(previewReader.getSurface());
@@ -519,13 +589,18 @@ public class CameraConnectionFragment extends Fragment {
   }
 
   /**
-   * Callback for Activities to use to initialize their data once the selected preview size is
-   * known.
+   * Callback for Activities to use to initialize their data once the size of the frames handed to
+   * the image listener is known.
    */
   public interface ConnectionCallback {
     void onPreviewSizeChosen(Size size, int cameraRotation);
   }
 
+  /** Callback for Activities to use to follow a change of the analysed frame size. */
+  public interface AnalysisSizeCallback {
+    void onAnalysisSizeChanged(Size size);
+  }
+
   /** Compares two {@code Size}s based on their areas. */
   static class CompareSizesByArea implements Comparator<Size> {
     @Override
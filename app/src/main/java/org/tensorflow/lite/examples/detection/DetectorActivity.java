@@ -20,21 +20,42 @@ import android.graphics.*;
 import android.graphics.Bitmap.Config;
 import android.graphics.Paint.Style;
 import android.media.ImageReader.OnImageAvailableListener;
+import android.os.Bundle;
 import android.os.SystemClock;
 import android.util.Size;
 import android.util.TypedValue;
 import android.view.View;
 import android.widget.Toast;
-import org.tensorflow.lite.examples.detection.customview.OverlayView;
+import com.frozendevs.periodictable.PeriodicTableApplication;
+import com.frozendevs.periodictable.content.ElementRepository;
+import com.frozendevs.periodictable.content.ObjectElementIndex;
+import com.frozendevs.periodictable.model.TableElementItem;
+import org.tensorflow.lite.examples.detection.customview.Overlay;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvInputConverter;
+import org.tensorflow.lite.examples.detection.pipeline.AnalysisResolution;
+import org.tensorflow.lite.examples.detection.pipeline.DetectionScheduler;
+import org.tensorflow.lite.examples.detection.pipeline.PipelineMetrics;
+import org.tensorflow.lite.examples.detection.pipeline.PipelineStage;
+import org.tensorflow.lite.examples.detection.pipeline.SceneChangeGate;
+import org.tensorflow.lite.examples.detection.pipeline.StageStats;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
-import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tflite.DetectorBackend;
+import org.tensorflow.lite.examples.detection.tflite.DetectorBackends;
+import org.tensorflow.lite.examples.detection.tflite.PostprocessConfig;
+import org.tensorflow.lite.examples.detection.tflite.TiledInference;
+import org.tensorflow.lite.examples.detection.tracking.LabelThrottle;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An activity that uses a TensorFlowMultiBoxDetector and ObjectTracker to detect and then track
@@ -43,36 +64,164 @@ import java.util.*;
 public class DetectorActivity extends CameraActivity implements OnImageAvailableListener {
   private static final Logger LOGGER = new Logger();
 
-  // Configuration values for the prepackaged SSD model.
-  private static final int TF_OD_API_INPUT_SIZE = 300;
-  private static final boolean TF_OD_API_IS_QUANTIZED = true;
-  private static final String TF_OD_API_MODEL_FILE = "detect.tflite";
-  private static final String TF_OD_API_LABELS_FILE = "file:///android_asset/labelmap.txt";
-  private static final DetectorMode MODE = DetectorMode.TF_OD_API;
+  /** Intent extra: name of the detector backend to use instead of the selected one. */
+  public static final String EXTRA_DETECTOR_BACKEND = "detector_backend";
+  // The detector backends to choose from, see DetectorBackends.
+  private static final String DETECTOR_BACKENDS_FILE = "detector_backends.json";
+  // Used if the backends cannot be read: the prepackaged SSD model, trimmed to the element classes
+  // by the manifest if it can be read.
+  private static final DetectorBackend DEFAULT_BACKEND =
+      new DetectorBackend(
+          "ssd_quantized",
+          DetectorBackend.TYPE_DETECTION,
+          "detect.tflite",
+          "labelmap.txt",
+          300,
+          true,
+          "detect_elements.json");
   // Minimum detection confidence to track a detection.
   private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
+  // Overlap above which the weaker of two detections of the same class is dropped.
+  private static final float NMS_IOU_THRESHOLD = 0.5f;
+  // Most detections passed on per frame.
+  private static final int MAX_DETECTIONS = 5;
+  // Whether small objects are also looked for in overlapping tiles of the frame, detected in one
+  // batch with the whole frame. Only the classes listed are taken from tiles. Every tile costs
+  // about as much conversion and inference as the whole frame; the cost is shown with the pipeline
+  // metrics.
+  private static final boolean TILED_INFERENCE = false;
+  private static final int TILE_COLUMNS = 2;
+  private static final int TILE_ROWS = 2;
+  private static final float TILE_OVERLAP = 0.25f;
+  private static final Set<String> TILE_CLASSES =
+      new HashSet<>(Arrays.asList("spoon", "fork", "wine glass", "apple", "orange", "carrot"));
+  // A detection mostly inside a stronger one of its class, as when a tile border cuts an object
+  // off, is dropped when the tiles are merged.
+  private static final float TILE_CONTAINMENT_THRESHOLD = 0.8f;
   private static final boolean MAINTAIN_ASPECT = false;
   private static final Size DESIRED_PREVIEW_SIZE = new Size(1280, 960);
+  // Analysed frames start at the smallest camera size that covers the model input. When adaptive,
+  // they step down while the work on each frame takes more than the first fraction of the frame
+  // interval, and up while the next size is expected to take less than the second.
+  private static final boolean ADAPT_ANALYSIS_SIZE = true;
+  private static final float ANALYSIS_MAX_LOAD = 0.5f;
+  private static final float ANALYSIS_STEP_UP_LOAD = 0.3f;
+  private static final int ANALYSIS_WINDOW_FRAMES = 30;
   private static final boolean SAVE_PREVIEW_BITMAP = false;
+  // Preprocessed inputs in flight: one being recognized while the next frame is converted.
+  private static final int NUM_INPUT_BUFFERS = 2;
+  // A frame whose luminance signature is within this many levels of the last detected frame
+  // reuses its detections instead of running the detector, for at most this many frames in a row.
+  private static final int SCENE_GRID_WIDTH = 16;
+  private static final int SCENE_GRID_HEIGHT = 12;
+  private static final int SCENE_SAMPLES_PER_AXIS = 4;
+  private static final float SCENE_CHANGE_THRESHOLD = 4.0f;
+  private static final int SCENE_MAX_SKIPPED_FRAMES = 15;
+  // Whether frames between detections are tracked on the luminance plane instead of detected. The
+  // detector then runs every few frames, as often as keeps it busy about this fraction of the time.
+  private static final boolean TRACK_BETWEEN_DETECTIONS = true;
+  private static final float DETECTION_DUTY_CYCLE = 0.5f;
+  private static final int MAX_DETECTION_INTERVAL = 10;
+  // How often the metrics in the bottom sheet are refreshed.
+  private static final long METRICS_UPDATE_INTERVAL_MS = 1000;
   private static final float TEXT_SIZE_DIP = 10;
-  OverlayView trackingOverlay;
+  // How the object label follows the most confident track. A new class must be on top for a few
+  // detections in a row and can replace the label at most this often; a shown class stays until
+  // it drops below the tracking threshold.
+  private static final long LABEL_MIN_INTERVAL_MS = 500;
+  private static final int LABEL_CONFIRM_FRAMES = 2;
+  private static final float LABEL_SHOW_CONFIDENCE = 0.6f;
+  private static final float LABEL_HIDE_CONFIDENCE = MINIMUM_CONFIDENCE_TF_OD_API;
+  Overlay trackingOverlay;
+
+  // Elements of each class of the current detector.
+  private volatile ObjectElementIndex elementIndex;
 
-    public Map<String, List<Element>> elementsList = new HashMap<>();
-
-  private long lastProcessingTimeMs;
   private Bitmap rgbFrameBitmap = null;
   private Bitmap croppedBitmap = null;
   private Bitmap cropCopyBitmap = null;
 
-  private boolean computingDetection = false;
-
   private long timestamp = 0;
 
   private Matrix frameToCropTransform;
   private Matrix cropToFrameTransform;
+  private YuvInputConverter inputConverter;
+  private SceneChangeGate sceneGate;
+  private TiledInference tiledInference;
+  private DetectorBackend backend;
+  private AnalysisResolution analysisResolution;
+  private int sensorOrientation;
+  // Counts frame size changes; detections made before the last one are in other coordinates.
+  private volatile int frameConfiguration;
+  private final DetectionScheduler detectionScheduler =
+      new DetectionScheduler(DETECTION_DUTY_CYCLE, MAX_DETECTION_INTERVAL);
+  // Timestamp of the last frame handed to inference, and the newest detections that came back.
+  private long lastSubmittedTimestamp;
+  private volatile Detections lastDetections;
 
   private MultiBoxTracker tracker;
+  private final LabelThrottle labelThrottle =
+      new LabelThrottle(
+          LABEL_MIN_INTERVAL_MS,
+          LABEL_CONFIRM_FRAMES,
+          LABEL_SHOW_CONFIDENCE,
+          LABEL_HIDE_CONFIDENCE);
     private Classifier detector;
+  // Interpreter settings chosen in the bottom sheet, reapplied whenever the detector is recreated.
+  // No thread count is chosen until the detector has been tuned once.
+  private int numThreads;
+  // Set while paused, so that a thread count tuning in progress stops.
+  private final AtomicBoolean tuningCancelled = new AtomicBoolean();
+  private boolean useNNAPI;
+
+  // Frames are converted on the camera thread, recognized on the inference stage and tracked on
+  // the postprocess stage. Each hand-off keeps only the latest item, so the slowest stage sets
+  // the frame rate and nothing queues up behind it. Frames the detector skips are tracked on the
+  // camera thread.
+  // Stages and the steps timed within them, in pipeline order.
+  private final PipelineMetrics metrics = new PipelineMetrics();
+  private final StageStats gateStats = metrics.add("gate");
+  private final StageStats flowStats = metrics.add("flow");
+  private final StageStats convertStats = metrics.add("convert");
+  private final StageStats yuvStats = metrics.add("yuv");
+  private final StageStats cropStats = metrics.add("crop");
+  private final Queue<Frame> freeFrames = new ConcurrentLinkedQueue<>();
+  private final PipelineStage<Frame> inferenceStage =
+      metrics.add(new PipelineStage<>("inference", this::detect, this::recycleFrame));
+  private final StageStats mapStats = metrics.add("map");
+  private final PipelineStage<Detections> postprocessStage =
+      metrics.add(new PipelineStage<>("postprocess", this::postprocess, detections -> {}));
+  private final StageStats trackStats = metrics.add("track");
+  private final StageStats drawStats = metrics.add("draw");
+  private long lastMetricsUpdateMs;
+
+  @Override
+  protected void onCreate(final Bundle savedInstanceState) {
+    // The input size of the backend is needed to choose the camera stream.
+    selectBackend();
+    analysisResolution =
+        new AnalysisResolution(
+            backend.getInputSize(),
+            ADAPT_ANALYSIS_SIZE,
+            ANALYSIS_MAX_LOAD,
+            ANALYSIS_STEP_UP_LOAD,
+            ANALYSIS_WINDOW_FRAMES);
+    super.onCreate(savedInstanceState);
+  }
+
+  /** Picks the backend the intent asks for, or the selected one. */
+  private void selectBackend() {
+    try {
+      final DetectorBackends backends = DetectorBackends.load(getAssets(), DETECTOR_BACKENDS_FILE);
+      backend = backends.select(getAssets(), getIntent().getStringExtra(EXTRA_DETECTOR_BACKEND));
+    } catch (final IOException e) {
+      LOGGER.w("Detector backends unavailable: %s", e);
+    }
+    if (backend == null) {
+      backend = DEFAULT_BACKEND;
+    }
+    LOGGER.i("Detector backend: %s", backend);
+  }
 
   @Override
   public void onPreviewSizeChosen(final Size size, final int rotation) {
@@ -84,17 +233,24 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
     tracker = new MultiBoxTracker(this);
 
-    int cropSize = TF_OD_API_INPUT_SIZE;
+    final int cropSize = backend.getInputSize();
+
+    // The camera is reopened on every resume; the previous detector may still be mid-frame.
+    final Classifier previousDetector = detector;
+    if (previousDetector != null && !inferenceStage.post(previousDetector::close)) {
+      previousDetector.close();
+    }
 
     try {
-      detector =
-          TFLiteObjectDetectionAPIModel.create(
-              getAssets(),
-              TF_OD_API_MODEL_FILE,
-              TF_OD_API_LABELS_FILE,
-              TF_OD_API_INPUT_SIZE,
-              TF_OD_API_IS_QUANTIZED);
-      cropSize = TF_OD_API_INPUT_SIZE;
+      detector = createDetector();
+      detector.enableStatLogging(isDebug());
+      detector.setUseNNAPI(useNNAPI);
+      detector.setAllowFp16(backend.isAllowFp16());
+      if (numThreads > 0) {
+        detector.setNumThreads(numThreads);
+      } else {
+        inferenceStage.post(this::tuneNumThreads);
+      }
     } catch (final IOException e) {
       e.printStackTrace();
       LOGGER.e(e, "Exception initializing classifier!");
@@ -108,12 +264,55 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     previewWidth = size.getWidth();
     previewHeight = size.getHeight();
 
-      Integer sensorOrientation = rotation - getScreenOrientation();
+    sensorOrientation = rotation - getScreenOrientation();
     LOGGER.i("Camera orientation relative to screen canvas: %d", sensorOrientation);
 
+    croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
+    configureFrame();
+
+    freeFrames.clear();
+    for (int i = 0; i < NUM_INPUT_BUFFERS; ++i) {
+      freeFrames.add(
+          new Frame(
+              ByteBuffer.allocateDirect(inputConverter.getOutputByteSize())
+                  .order(ByteOrder.nativeOrder())));
+    }
+
+    trackingOverlay = (Overlay) findViewById(R.id.tracking_overlay);
+    trackingOverlay.addCallback(
+            canvas -> {
+              final long drawStartTime = System.nanoTime();
+              tracker.draw(canvas);
+              if (isDebug()) {
+                tracker.drawDebug(canvas);
+              }
+              drawStats.recordLatency(System.nanoTime() - drawStartTime);
+            });
+
+    elementIndex = null;
+    if (detector != null) {
+      try {
+        final ObjectElementIndex index =
+            getElementRepository().getObjectElementIndex(detector.getLabels());
+        // Objects without elements are of no use, so they are dropped before any results are made.
+        detector.setPostprocessConfig(
+            new PostprocessConfig(
+                MINIMUM_CONFIDENCE_TF_OD_API,
+                index.getObjects(),
+                NMS_IOU_THRESHOLD,
+                MAX_DETECTIONS));
+        elementIndex = index;
+      } catch (final IOException e) {
+        LOGGER.e(e, "Exception loading the elements of objects!");
+      }
+    }
+  }
+
+  /** Sets up everything that depends on the size of the analysed frames. */
+  private void configureFrame() {
+    final int cropSize = backend.getInputSize();
     LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
     rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
-    croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
 
     frameToCropTransform =
         ImageUtils.getTransformationMatrix(
@@ -121,187 +320,393 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
             cropSize, cropSize,
                 sensorOrientation, MAINTAIN_ASPECT);
 
-    cropToFrameTransform = new Matrix();
-    frameToCropTransform.invert(cropToFrameTransform);
-
-    trackingOverlay = findViewById(R.id.tracking_overlay);
-    trackingOverlay.addCallback(
-            canvas -> {
-//              tracker.draw(canvas);
-              if (isDebug()) {
-                tracker.drawDebug(canvas);
-              }
-            });
+    final Matrix cropToFrame = new Matrix();
+    frameToCropTransform.invert(cropToFrame);
+    // Replaced rather than changed, as frames in inference keep the one they were cropped with.
+    cropToFrameTransform = cropToFrame;
+
+    inputConverter =
+        new YuvInputConverter(
+            previewWidth,
+            previewHeight,
+            cropSize,
+            cropSize,
+            sensorOrientation,
+            MAINTAIN_ASPECT,
+            backend.isQuantized(),
+            YuvInputConverter.Sampling.NEAREST);
+    sceneGate =
+        new SceneChangeGate(
+            previewWidth,
+            previewHeight,
+            SCENE_GRID_WIDTH,
+            SCENE_GRID_HEIGHT,
+            SCENE_SAMPLES_PER_AXIS,
+            SCENE_CHANGE_THRESHOLD,
+            SCENE_MAX_SKIPPED_FRAMES);
+    tiledInference =
+        TILED_INFERENCE
+            ? new TiledInference(
+                previewWidth,
+                previewHeight,
+                cropSize,
+                sensorOrientation,
+                MAINTAIN_ASPECT,
+                backend.isQuantized(),
+                TILE_COLUMNS,
+                TILE_ROWS,
+                TILE_OVERLAP,
+                TILE_CLASSES,
+                NMS_IOU_THRESHOLD,
+                TILE_CONTAINMENT_THRESHOLD)
+            : null;
+    lastDetections = null;
+    ++frameConfiguration;
+    tracker.setFrameConfiguration(
+        previewWidth, previewHeight, sensorOrientation, frameConfiguration);
+  }
 
-    tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
-    initialiseDictionary();
+  @Override
+  protected AnalysisResolution getAnalysisResolution() {
+    return analysisResolution;
   }
 
-  private void initialiseDictionary(){
-      List<Element> spoonElements = new ArrayList<>();
-      spoonElements.add(new Element("Fe", 26, "55.845", "Iron", false));
-      spoonElements.add(new Element("Ni", 28, "58.693", "Nickel", false));
-      spoonElements.add(new Element("Cr", 24, "51.996", "Chromium", false));
-
-      List<Element> bananaElements = new ArrayList<>();
-      bananaElements.add(new Element("K", 19, "39.098", "Potassium", false));
-
-      List<Element> donutElements = new ArrayList<>();
-      donutElements.add(new Element("C", 6, "12.011", "Carbon", false));
-      donutElements.add(new Element("H", 1, "1", "Hydrogen", false));
-      donutElements.add(new Element("O", 8, "16", "Oxygen", false));
-
-      List<Element> wineGlassElements = new ArrayList<>();
-      wineGlassElements.add(new Element("Si", 14, "28.085", "Silicon", false));
-
-      List<Element> laptopElements = new ArrayList<>();
-      laptopElements.add(new Element("Al", 13, "26.982", "Aluminium", false));
-
-      List<Element> broccoliElements = new ArrayList<>();
-      broccoliElements.add(new Element("S", 16, "32.06", "Sulphur", false));
-      broccoliElements.add(new Element("C", 6, "12.011", "Carbon", false));
-      broccoliElements.add(new Element("H", 1, "1", "Hydrogen", false));
-      broccoliElements.add(new Element("O", 8, "16", "Oxygen", false));
-      broccoliElements.add(new Element("N", 7, "14", "Nitrogen", false));
-
-
-      List<Element> carrotElements = new ArrayList<>();
-      carrotElements.add(new Element("O", 8, "16", "Oxygen", false));
-      carrotElements.add(new Element("H", 1, "1", "Hydrogen", false));
-
-
-      List<Element> personElements = new ArrayList<>();
-      personElements.add(new Element("H", 1, "1", "Hydrogen", false));
-      personElements.add(new Element("O", 8, "16", "Oxygen", false));
-      personElements.add(new Element("C", 6, "12.011", "Carbon", false));
-
-      List<Element> cakeElements = new ArrayList<>();
-      cakeElements.add(new Element("Na", 11, "22.990", "Sodium", false));
-      cakeElements.add(new Element("P", 15, "30.974", "Phosphorus", false));
-      cakeElements.add(new Element("C", 6, "12.011", "Carbon", false));
-      cakeElements.add(new Element("H", 1, "1", "Hydrogen", false));
-      cakeElements.add(new Element("O", 8, "16", "Oxygen", false));
-
-      List<Element> forkElements = new ArrayList<>();
-      forkElements.add(new Element("Ag", 47, "107.87", "Silver", false));
-
-      List<Element> zebraElements = new ArrayList<>();
-      zebraElements.add(new Element("Ag", 47, "107.87", "Silver", false));
-
-      List<Element> appleElements = new ArrayList<>();
-      appleElements.add(new Element("Zn", 30, "65.380", "Zinc", false));
-
-      List<Element> orangeElements = new ArrayList<>();
-      orangeElements.add(new Element("Ca", 20, "40.078", "Calcium", false));
-
-      elementsList.put("spoon", spoonElements);
-      elementsList.put("banana", bananaElements);
-      elementsList.put("donut", donutElements);
-      elementsList.put("wine glass", wineGlassElements);
-      elementsList.put("laptop", laptopElements);
-      elementsList.put("broccoli", broccoliElements);
-      elementsList.put("carrot", carrotElements);
-      elementsList.put("person", personElements);
-      elementsList.put("cake", cakeElements);
-      elementsList.put("fork", forkElements);
-      elementsList.put("zebra", zebraElements);
-      elementsList.put("apple", appleElements);
-      elementsList.put("orange", orangeElements);
+  @Override
+  protected void onAnalysisSizeChanged(final Size size, final int rotation) {
+    configureFrame();
+    // The scene gate starts over, so the first frame of the new size is detected.
+    detectionScheduler.requestDetection();
+  }
 
+  private ElementRepository getElementRepository() {
+    return ((PeriodicTableApplication) getApplication()).getElementRepository();
   }
 
   @Override
   protected void processImage() {
+    final long startTime = System.nanoTime();
+    analyseFrame();
+    final double inputFps = metrics.getInputFps();
+    final Size size =
+        analysisResolution.update(
+            (System.nanoTime() - startTime) / 1e6, inputFps > 0 ? 1000.0 / inputFps : 0);
+    if (size != null) {
+      requestAnalysisSize(size);
+    }
+  }
+
+  private void analyseFrame() {
     ++timestamp;
     final long currTimestamp = timestamp;
-    trackingOverlay.postInvalidate();
+    final long currTimeMs = getFrameTimeMs();
+
+    final long startTime = System.nanoTime();
+    metrics.recordFrameIn(startTime);
+    // A deterministic replay detects every frame: which frames the gate and the scheduler skip
+    // depends on whether earlier detections are back yet and on how long they took.
+    final boolean deterministic = isDeterministicReplay();
+    final boolean sceneChanged =
+        deterministic || sceneGate.hasChanged(getLuminance(), getLuminanceStride());
+    gateStats.recordLatency(System.nanoTime() - startTime);
+    if (!sceneChanged) {
+      reuseDetections(currTimestamp, currTimeMs);
+      readyForNextImage();
+      return;
+    }
+    if (TRACK_BETWEEN_DETECTIONS && !deterministic && !shouldDetect()) {
+      trackFrame(currTimeMs);
+      readyForNextImage();
+      return;
+    }
 
-    // No mutex needed as this method is not reentrant.
-    if (computingDetection) {
+    // A frame still waiting for inference is stale now, so its buffer is reused for this one.
+    Frame frame = inferenceStage.reclaim();
+    if (frame == null) {
+      frame = freeFrames.poll();
+    }
+    if (frame == null) {
+      convertStats.recordDrop();
       readyForNextImage();
+      releaseReplayedFrame();
       return;
     }
-    computingDetection = true;
     LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
 
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+    sceneGate.setReference();
+    frame.timestamp = currTimestamp;
+    frame.timeMs = currTimeMs;
+    frame.cropToFrame = cropToFrameTransform;
+    frame.configuration = frameConfiguration;
+    fillInputBuffer(inputConverter, frame.input);
+    final long yuvEndTime = System.nanoTime();
+    yuvStats.recordLatency(yuvEndTime - startTime);
+
+    if (SAVE_PREVIEW_BITMAP || isDebug()) {
+      rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+
+      final Canvas canvas = new Canvas(croppedBitmap);
+      canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+      // For examining the actual TF input.
+      if (SAVE_PREVIEW_BITMAP) {
+        ImageUtils.saveBitmap(croppedBitmap);
+      }
+      if (isDebug()) {
+        frame.debugCrop = Bitmap.createBitmap(croppedBitmap);
+      }
+      cropStats.recordLatency(System.nanoTime() - yuvEndTime);
+    }
+
+    final TiledInference tiles = tiledInference;
+    frame.tiles = tiles;
+    if (tiles != null) {
+      final long tilesStartTime = System.nanoTime();
+      if (frame.tileInputs == null || frame.tileInputs.length != tiles.getTileCount()) {
+        frame.tileInputs = tiles.allocateInputs();
+      }
+      for (int i = 0; i < frame.tileInputs.length; ++i) {
+        fillInputBuffer(tiles.getConverter(i), frame.tileInputs[i]);
+      }
+      tiles.recordConvertLatency(System.nanoTime() - tilesStartTime);
+    }
 
     readyForNextImage();
+    convertStats.recordLatency(System.nanoTime() - startTime);
+
+    lastSubmittedTimestamp = currTimestamp;
+    inferenceStage.offer(frame);
+  }
+
+  private boolean shouldDetect() {
+    final double inputFps = metrics.getInputFps();
+    final double frameIntervalMs = inputFps > 0 ? 1000.0 / inputFps : 0;
+    final double inferenceMs =
+        inferenceStage.getStats().getLatency().getPercentileMicros(50) / 1000.0;
+    return detectionScheduler.shouldDetect(frameIntervalMs, inferenceMs);
+  }
 
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
-    // For examining the actual TF input.
-    if (SAVE_PREVIEW_BITMAP) {
-      ImageUtils.saveBitmap(croppedBitmap);
+  /** Moves the tracks along with the current frame, which the detector skips. */
+  private void trackFrame(final long timeMs) {
+    final long startTime = System.nanoTime();
+    final int lost = tracker.trackFrame(getLuminance(), getLuminanceStride(), timeMs);
+    trackingOverlay.requestRender();
+    if (lost > 0) {
+      detectionScheduler.requestDetection();
     }
+    final long endTime = System.nanoTime();
+    flowStats.recordLatency(endTime - startTime);
+    metrics.recordFrameOut(endTime);
+  }
 
-    runInBackground(
-            () -> {
-              LOGGER.i("Running detection on image " + currTimestamp);
-              final long startTime = SystemClock.uptimeMillis();
-              final List<Classifier.Recognition> results = detector.recognizeImage(croppedBitmap);
-              lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-
-              cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-              final Canvas canvas1 = new Canvas(cropCopyBitmap);
-              final Paint paint = new Paint();
-              paint.setColor(Color.RED);
-              paint.setStyle(Style.STROKE);
-              paint.setStrokeWidth(2.0f);
-
-              final List<Classifier.Recognition> mappedRecognitions = new LinkedList<>();
-
-              for (final Classifier.Recognition result : results) {
-                final RectF location = result.getLocation();
-                if (location != null && result.getConfidence() >= MINIMUM_CONFIDENCE_TF_OD_API) {
-                  canvas1.drawRect(location, paint);
-
-                  cropToFrameTransform.mapRect(location);
-
-                  result.setLocation(location);
-                  mappedRecognitions.add(result);
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                    }
-                }
-              }
+  /** Passes the detections of the last detected frame on for a frame the scene gate skipped. */
+  private void reuseDetections(final long timestamp, final long timeMs) {
+    final Detections last = lastDetections;
+    // While the last submitted frame is still being detected, its results will cover this one.
+    if (last != null && last.timestamp == lastSubmittedTimestamp) {
+      postprocessStage.offer(
+          new Detections(timestamp, timeMs, last.configuration, last.recognitions));
+    }
+  }
 
+  /** Inference stage: runs the detector and maps the results back into the preview frame. */
+  private void detect(final Frame frame) {
+    LOGGER.i("Running detection on image " + frame.timestamp);
+    // With tiles, the whole frame is detected in one batch with them.
+    final List<Classifier.Recognition> tileRecognitions = new LinkedList<>();
+    final List<Classifier.Recognition> results =
+        frame.tiles != null
+            ? frame.tiles.detect(detector, frame.input, frame.tileInputs, tileRecognitions)
+            : detector.recognizeInput(frame.input);
+
+    Canvas canvas = null;
+    Paint paint = null;
+    if (frame.debugCrop != null) {
+      cropCopyBitmap = frame.debugCrop;
+      canvas = new Canvas(cropCopyBitmap);
+      paint = new Paint();
+      paint.setColor(Color.RED);
+      paint.setStyle(Style.STROKE);
+      paint.setStrokeWidth(2.0f);
+    }
 
+    final long mapStartTime = System.nanoTime();
+    final List<Classifier.Recognition> mappedRecognitions = new LinkedList<>();
+
+    for (final Classifier.Recognition result : results) {
+      final RectF location = result.getLocation();
+      // The detector already dropped results below MINIMUM_CONFIDENCE_TF_OD_API.
+      if (location != null) {
+        if (canvas != null) {
+          canvas.drawRect(location, paint);
+        }
+
+        frame.cropToFrame.mapRect(location);
+
+        // The detector reuses its results on the next frame, so keep a copy.
+        mappedRecognitions.add(
+            new Classifier.Recognition(
+                result.getId(),
+                result.getTitle(),
+                result.getClassIndex(),
+                result.getConfidence(),
+                location));
+      }
+    }
+    mapStats.recordLatency(System.nanoTime() - mapStartTime);
 
-              tracker.trackResults(mappedRecognitions, currTimestamp);
-              trackingOverlay.postInvalidate();
-
-              computingDetection = false;
-
-              runOnUiThread(
-                      () -> {
-
-//                        showFrameInfo(previewWidth + "x" + previewHeight);
-//                        showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
-//                        showInference(lastProcessingTimeMs + "ms");
-                          float highestRecognition = 0.0f;
-                          for(Classifier.Recognition recognition: mappedRecognitions) {
-                              if(recognition.getConfidence() >= highestRecognition) {
-                                  highestRecognition = recognition.getConfidence();
-                              }
-                              if(highestRecognition > 0.6) {
-                                  objectType.setText(recognition.getTitle());
-                                  typeObject = recognition.getTitle();
-                                  collectElements.setEnabled(true);
-                                  try{
-                                      collectable = elementsList.get(recognition.getTitle()).get(0);
-                                  } catch(Exception e) {
-                                     // Go away, nothing to see here
-                                  }
-                              } else {
-                                  objectType.setText("Analysing Environment");
-                                  collectElements.setEnabled(false);
-                                  collectable = null;
-                              }
-                          }
-                      });
-            });
+    List<Classifier.Recognition> recognitions = mappedRecognitions;
+    if (frame.tiles != null) {
+      mappedRecognitions.addAll(tileRecognitions);
+      recognitions = frame.tiles.merge(mappedRecognitions, MAX_DETECTIONS);
+    }
+
+    final Detections detections =
+        new Detections(frame.timestamp, frame.timeMs, frame.configuration, recognitions);
+    recycleFrame(frame);
+
+    lastDetections = detections;
+    postprocessStage.offer(detections);
+  }
+
+  /** Postprocess stage: tracks the detections and updates the label. */
+  private void postprocess(final Detections detections) {
+    try {
+      trackAndLabel(detections);
+    } finally {
+      releaseReplayedFrame();
+    }
+  }
+
+  private void trackAndLabel(final Detections detections) {
+    final long trackStartTime = System.nanoTime();
+    // Detections made on frames of a size the tracks have since been moved from are dropped.
+    if (!tracker.trackResults(
+        detections.recognitions,
+        detections.timestamp,
+        detections.timeMs,
+        detections.configuration)) {
+      metrics.recordFrameOut(System.nanoTime());
+      return;
+    }
+    trackStats.recordLatency(System.nanoTime() - trackStartTime);
+    trackingOverlay.requestRender();
+
+    // Tracks only change class on a consistent change, so the label does not follow every wobble.
+    final Classifier.Recognition top = tracker.getBestTrack();
+    // The shown class keeps its label while it is confident enough, even once it is not the top.
+    final String shown = labelThrottle.getLabel();
+    final boolean labelChanged =
+        labelThrottle.update(
+            top != null ? top.getTitle() : null,
+            top != null ? top.getConfidence() : 0.0f,
+            shown != null ? tracker.getBestConfidence(shown) : 0.0f,
+            detections.timeMs);
+    metrics.recordFrameOut(System.nanoTime());
+    updateMetrics();
+    if (!labelChanged) {
+      return;
+    }
+
+    final String label = labelThrottle.getLabel();
+    // A label only changes to the best track's class, so that is the class it names.
+    final ObjectElementIndex index = elementIndex;
+    final int elementNumber =
+        label != null && index != null ? index.getFirstElement(top.getClassIndex()) : 0;
+    runOnUiThread(
+        () -> {
+          if (label != null) {
+            objectType.setText(label);
+            typeObject = label;
+            collectElements.setEnabled(true);
+            collectable = elementNumber > 0 ? getCollectable(elementNumber) : null;
+          } else {
+            objectType.setText("Analysing Environment");
+            collectElements.setEnabled(false);
+            collectable = null;
+          }
+        });
+  }
+
+  private Element getCollectable(final int number) {
+    final TableElementItem item = getElementRepository().getTableElement(number);
+    return item != null
+        ? new Element(
+            item.getSymbol(), number, item.getStandardAtomicWeight(), item.getName(), false)
+        : null;
+  }
+
+  private void recycleFrame(final Frame frame) {
+    frame.debugCrop = null;
+    freeFrames.add(frame);
+  }
+
+  /**
+   * Returns frame rates, per-stage latency histograms and drop counters of the pipeline, and how
+   * much inference the scene gate saved. The saving is estimated from the median inference time.
+   */
+  protected String getPipelineStatString() {
+    final StringBuilder builder = new StringBuilder(metrics.getStatString());
+    final SceneChangeGate gate = sceneGate;
+    if (gate != null) {
+      final long inferenceUs = inferenceStage.getStats().getLatency().getPercentileMicros(50);
+      builder.append(
+          String.format(
+              Locale.US,
+              "\n%s, ~%.1f s inference saved",
+              gate.getStatString(),
+              gate.getSkippedCount() * inferenceUs / 1e6));
+    }
+    if (TRACK_BETWEEN_DETECTIONS) {
+      builder.append('\n').append(detectionScheduler.getStatString());
+    }
+    builder.append('\n').append(analysisResolution.getStatString());
+    final TiledInference tiles = tiledInference;
+    if (tiles != null) {
+      builder.append('\n').append(tiles.getStatString());
+    }
+    builder.append('\n').append(trackingOverlay.getStatString());
+    return builder.append('\n').append(detector.getStatString()).toString();
+  }
+
+  /** Shows the pipeline metrics in the bottom sheet, and logs them in debug builds. */
+  private void updateMetrics() {
+    final long now = SystemClock.uptimeMillis();
+    if (now - lastMetricsUpdateMs < METRICS_UPDATE_INTERVAL_MS) {
+      return;
+    }
+    lastMetricsUpdateMs = now;
+
+    final String frameInfo =
+        previewWidth + "x" + previewHeight + ", " + metrics.getFrameRateString();
+    final String cropInfo = backend.getInputSize() + "x" + backend.getInputSize();
+    final String inferenceInfo = inferenceStage.getStats().getLatency().getStatString();
+    final String stats = getPipelineStatString();
+    if (isDebug()) {
+      LOGGER.i("Pipeline: %s\n%s", stats, labelThrottle.getStatString());
+    }
+    runOnUiThread(
+        () -> {
+          showFrameInfo(frameInfo);
+          showCropInfo(cropInfo);
+          showInference(inferenceInfo);
+          showStats(stats);
+        });
+  }
+
+  @Override
+  public synchronized void onResume() {
+    tuningCancelled.set(false);
+    inferenceStage.start();
+    postprocessStage.start();
+    super.onResume();
+  }
+
+  @Override
+  public synchronized void onPause() {
+    // Stopping waits for the inference stage, which may be tuning; only let it finish its run.
+    tuningCancelled.set(true);
+    inferenceStage.stop();
+    postprocessStage.stop();
+    super.onPause();
   }
 
   @Override
@@ -314,19 +719,89 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     return DESIRED_PREVIEW_SIZE;
   }
 
-  // Which detection model to use: by default uses Tensorflow Object Detection API frozen
-  // checkpoints.
-  private enum DetectorMode {
-      TF_OD_API
+  /** A preprocessed camera frame on its way through inference. */
+  private static class Frame {
+    private final ByteBuffer input;
+    private long timestamp;
+    // Capture time, in SystemClock.uptimeMillis() time.
+    private long timeMs;
+    // Copy of the model input as a bitmap, only made in debug mode.
+    private Bitmap debugCrop;
+    // Maps the model input back into the frame it was cropped from.
+    private Matrix cropToFrame;
+    // Tiles of the frame to detect as well, and their model inputs, when tiling is on.
+    private TiledInference tiles;
+    private ByteBuffer[] tileInputs;
+    private int configuration;
+
+    Frame(final ByteBuffer input) {
+      this.input = input;
+    }
   }
 
+  /** Detections of one frame, in preview frame coordinates. */
+  private static class Detections {
+    private final long timestamp;
+    private final long timeMs;
+    // Frame configuration the coordinates belong to.
+    private final int configuration;
+    private final List<Classifier.Recognition> recognitions;
+
+    Detections(
+        final long timestamp,
+        final long timeMs,
+        final int configuration,
+        final List<Classifier.Recognition> recognitions) {
+      this.timestamp = timestamp;
+      this.timeMs = timeMs;
+      this.configuration = configuration;
+      this.recognitions = recognitions;
+    }
+  }
+
+  /** Loads the model of the selected backend. */
+  private Classifier createDetector() throws IOException {
+    return backend.create(getAssets());
+  }
+
+  /** Runs on the inference stage, so the measurements do not compete with detection. */
+  private void tuneNumThreads() {
+    final int tunedThreads;
+    try {
+      tunedThreads = detector.tuneNumThreads(MAX_THREADS, tuningCancelled);
+    } catch (final CancellationException e) {
+      LOGGER.i("Thread count tuning cancelled, keeping the default.");
+      return;
+    } catch (final RuntimeException e) {
+      LOGGER.e(e, "Thread count tuning failed, keeping the default.");
+      return;
+    }
+    runOnUiThread(
+        () -> {
+          if (numThreads == 0) {
+            numThreads = tunedThreads;
+            showNumThreads(tunedThreads);
+          } else {
+            // A thread count was picked by hand while tuning was running; it wins.
+            detector.setNumThreads(numThreads);
+          }
+        });
+  }
+
+  // The detector rebuilds its interpreter in the background and swaps it in between frames.
   @Override
   protected void setUseNNAPI(final boolean isChecked) {
-    runInBackground(() -> detector.setUseNNAPI(isChecked));
+    useNNAPI = isChecked;
+    if (detector != null) {
+      detector.setUseNNAPI(isChecked);
+    }
   }
 
   @Override
   protected void setNumThreads(final int numThreads) {
-    runInBackground(() -> detector.setNumThreads(numThreads));
+    this.numThreads = numThreads;
+    if (detector != null) {
+      detector.setNumThreads(numThreads);
+    }
   }
 }
@@ -9,8 +9,7 @@ import android.support.v7.app.AppCompatActivity
 import android.view.View
 import android.widget.RelativeLayout
 import android.widget.TextView
-import com.frozendevs.periodictable.content.Database
-import com.frozendevs.periodictable.model.ElementProperties
+import com.frozendevs.periodictable.PeriodicTableApplication
 import com.frozendevs.periodictable.model.adapter.TableAdapter.COLORS
 
 class ElementsFoundActivity : AppCompatActivity() {
@@ -76,13 +75,11 @@ class ElementsFoundActivity : AppCompatActivity() {
             name.text = nameText
             weight.text = weightText
 
-            val mElementProperties = Database.getElement(
-                this, ElementProperties::class.java,
-                numberText
-            )
+            val element = (application as PeriodicTableApplication).elementRepository
+                .getTableElement(numberText)
 
 
-            elementContainer.setBackgroundColor(this.resources.getColor(COLORS[mElementProperties.category]))
+            elementContainer.setBackgroundColor(this.resources.getColor(COLORS[element.category]))
 
 
 
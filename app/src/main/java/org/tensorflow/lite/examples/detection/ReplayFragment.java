@@ -0,0 +1,92 @@
+package org.tensorflow.lite.examples.detection;
+
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.app.Fragment;
+import android.os.Bundle;
+import android.util.Size;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import java.io.File;
+import java.io.IOException;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.pipeline.FrameReplaySource;
+
+/**
+ * Stands in for the camera fragments when frames come from a {@link
+ * org.tensorflow.lite.examples.detection.pipeline.FrameRecorder} recording. It shows the same
+ * layout, without a preview, and replays the recording while it is resumed.
+ */
+public class ReplayFragment extends Fragment {
+  private static final Logger LOGGER = new Logger();
+
+  private final FrameReplaySource.Listener frameListener;
+  private final CameraConnectionFragment.ConnectionCallback cameraConnectionCallback;
+  /** The layout identifier to inflate for this Fragment. */
+  private final int layout;
+  private final File recording;
+  private final float framesPerSecond;
+
+  private FrameReplaySource source;
+
+  /**
+   * @param framesPerSecond Replay rate, or 0 to replay as fast as frames are processed.
+   */
+  public ReplayFragment(
+      final FrameReplaySource.Listener frameListener,
+      final CameraConnectionFragment.ConnectionCallback cameraConnectionCallback,
+      final int layout,
+      final File recording,
+      final float framesPerSecond) {
+    this.frameListener = frameListener;
+    this.cameraConnectionCallback = cameraConnectionCallback;
+    this.layout = layout;
+    this.recording = recording;
+    this.framesPerSecond = framesPerSecond;
+  }
+
+  @Override
+  public View onCreateView(
+      final LayoutInflater inflater, final ViewGroup container, final Bundle savedInstanceState) {
+    return inflater.inflate(layout, container, false);
+  }
+
+  @Override
+  public void onResume() {
+    super.onResume();
+    try {
+      source = new FrameReplaySource(recording);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Cannot replay %s", recording);
+      return;
+    }
+    cameraConnectionCallback.onPreviewSizeChosen(
+        new Size(source.getWidth(), source.getHeight()), source.getRotation());
+    source.start(frameListener, framesPerSecond, false);
+  }
+
+  @Override
+  public void onPause() {
+    if (source != null) {
+      source.close();
+      LOGGER.i("Replay stopped: %s", source.getStatString());
+      source = null;
+    }
+    super.onPause();
+  }
+}
@@ -0,0 +1,31 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.customview;
+
+/** A layer drawn over the camera preview by render callbacks of other classes. */
+public interface Overlay {
+  void addCallback(OverlayView.DrawCallback callback);
+
+  /**
+   * Asks for the layer to be drawn again. May be called from any thread, as often as the drawn
+   * state changes; requests made before the layer is next drawn are served by one draw.
+   */
+  void requestRender();
+
+  /** Returns how many draws were requested and made. */
+  String getStatString();
+}
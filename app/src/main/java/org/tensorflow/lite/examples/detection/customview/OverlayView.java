@@ -19,26 +19,47 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.view.View;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
-/** A simple View providing a render callback to other classes. */
-public class OverlayView extends View {
-  private final List<DrawCallback> callbacks = new LinkedList<>();
+/**
+ * A simple View providing a render callback to other classes. It is drawn with the rest of the
+ * view hierarchy on the UI thread; see {@link SurfaceOverlayView} for a layer drawn on its own.
+ */
+public class OverlayView extends View implements Overlay {
+  private final List<DrawCallback> callbacks = new CopyOnWriteArrayList<>();
+  private final AtomicLong requestedCount = new AtomicLong();
+  private volatile long renderedCount;
 
   public OverlayView(final Context context, final AttributeSet attrs) {
     super(context, attrs);
   }
 
+  @Override
   public void addCallback(final DrawCallback callback) {
     callbacks.add(callback);
   }
 
   @Override
-  public synchronized void draw(final Canvas canvas) {
+  public void requestRender() {
+    requestedCount.incrementAndGet();
+    postInvalidate();
+  }
+
+  @Override
+  public void draw(final Canvas canvas) {
     for (final DrawCallback callback : callbacks) {
       callback.drawCallback(canvas);
     }
+    ++renderedCount;
+  }
+
+  @Override
+  public String getStatString() {
+    return String.format(
+        Locale.US, "overlay: %d drawn, %d requested", renderedCount, requestedCount.get());
   }
 
   /** Interface defining the callback for client classes. */
@@ -0,0 +1,177 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.customview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * An overlay drawn into a transparent surface of its own, on a render thread, instead of with the
+ * view hierarchy on the UI thread. Requesting a render neither invalidates views nor waits for
+ * layout.
+ *
+ * <p>Draws are paced by the render thread's {@link Choreographer}: a request schedules a draw for
+ * the next display frame, and all requests made until then are served by that one draw, so the
+ * overlay is drawn at most once per display frame however often it is asked to be. A draw that
+ * cannot be made because the surface cannot be locked is counted as skipped; requests made while
+ * there is no surface are drawn once it is back.
+ */
+public class SurfaceOverlayView extends SurfaceView
+    implements Overlay, SurfaceHolder.Callback, Choreographer.FrameCallback {
+  private static final Logger LOGGER = new Logger();
+
+  private final List<OverlayView.DrawCallback> callbacks = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean renderRequested = new AtomicBoolean();
+  private final AtomicLong requestedCount = new AtomicLong();
+  private final Runnable scheduleFrame = this::scheduleFrame;
+
+  // Set while the surface exists.
+  private HandlerThread renderThread;
+  private volatile Handler renderHandler;
+
+  // Only used on the render thread.
+  private Choreographer choreographer;
+  private boolean frameScheduled;
+  private volatile long renderedCount;
+  private volatile long skippedCount;
+
+  public SurfaceOverlayView(final Context context, final AttributeSet attrs) {
+    super(context, attrs);
+    // Drawn over the camera preview, and cleared to transparent before every draw.
+    setZOrderMediaOverlay(true);
+    getHolder().setFormat(PixelFormat.TRANSPARENT);
+    getHolder().addCallback(this);
+  }
+
+  @Override
+  public void addCallback(final OverlayView.DrawCallback callback) {
+    callbacks.add(callback);
+  }
+
+  @Override
+  public void requestRender() {
+    requestedCount.incrementAndGet();
+    if (renderRequested.getAndSet(true)) {
+      // A draw is already on its way, and will show this state too.
+      return;
+    }
+    final Handler handler = renderHandler;
+    if (handler != null) {
+      handler.post(scheduleFrame);
+    }
+  }
+
+  @Override
+  public void surfaceCreated(final SurfaceHolder holder) {
+    renderThread = new HandlerThread("overlay");
+    renderThread.start();
+    final Handler handler = new Handler(renderThread.getLooper());
+    // The choreographer of a thread paces the callbacks posted on that thread.
+    handler.post(() -> choreographer = Choreographer.getInstance());
+    renderHandler = handler;
+    // Draw whatever was requested while there was no surface.
+    handler.post(scheduleFrame);
+  }
+
+  @Override
+  public void surfaceChanged(
+      final SurfaceHolder holder, final int format, final int width, final int height) {
+    requestRender();
+  }
+
+  @Override
+  public void surfaceDestroyed(final SurfaceHolder holder) {
+    final Handler handler = renderHandler;
+    renderHandler = null;
+    if (handler == null) {
+      return;
+    }
+    // The surface may not be drawn into after this returns, so wait for the render thread.
+    handler.post(
+        () -> {
+          choreographer.removeFrameCallback(this);
+          frameScheduled = false;
+        });
+    renderThread.quitSafely();
+    try {
+      renderThread.join();
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Interrupted while stopping the overlay thread");
+      Thread.currentThread().interrupt();
+    }
+    renderThread = null;
+  }
+
+  private void scheduleFrame() {
+    if (!frameScheduled && renderRequested.get()) {
+      frameScheduled = true;
+      choreographer.postFrameCallback(this);
+    }
+  }
+
+  @Override
+  public void doFrame(final long frameTimeNanos) {
+    frameScheduled = false;
+    if (!renderRequested.getAndSet(false)) {
+      return;
+    }
+    final SurfaceHolder holder = getHolder();
+    final Canvas canvas =
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+            ? holder.lockHardwareCanvas()
+            : holder.lockCanvas();
+    if (canvas == null) {
+      ++skippedCount;
+      return;
+    }
+    try {
+      canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+      for (final OverlayView.DrawCallback callback : callbacks) {
+        callback.drawCallback(canvas);
+      }
+    } finally {
+      holder.unlockCanvasAndPost(canvas);
+    }
+    ++renderedCount;
+  }
+
+  @Override
+  public String getStatString() {
+    return String.format(
+        Locale.US,
+        "overlay: %d drawn, %d skipped, %d requested",
+        renderedCount,
+        skippedCount,
+        requestedCount.get());
+  }
+}
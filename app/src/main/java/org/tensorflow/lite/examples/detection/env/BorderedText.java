@@ -28,6 +28,7 @@ import java.util.Vector;
 public class BorderedText {
   private final Paint interiorPaint;
   private final Paint exteriorPaint;
+  private final Paint backgroundPaint = new Paint();
 
   private final float textSize;
 
@@ -65,6 +66,8 @@ public class BorderedText {
     exteriorPaint.setAntiAlias(false);
     exteriorPaint.setAlpha(255);
 
+    backgroundPaint.setStyle(Paint.Style.FILL);
+
     this.textSize = textSize;
   }
 
@@ -91,6 +94,36 @@ public class BorderedText {
     canvas.drawText(text, posX, (posY + textSize), interiorPaint);
   }
 
+  /**
+   * Like {@link #drawText(Canvas, float, float, String)}, for the first {@code count} characters of
+   * {@code text}.
+   */
+  public void drawText(
+      final Canvas canvas, final float posX, final float posY, final char[] text, final int count) {
+    canvas.drawText(text, 0, count, posX, posY, exteriorPaint);
+    canvas.drawText(text, 0, count, posX, posY, interiorPaint);
+  }
+
+  /**
+   * Like {@link #drawText(Canvas, float, float, String, Paint)}, for the first {@code count}
+   * characters of {@code text}, and without allocating.
+   */
+  public void drawText(
+      final Canvas canvas,
+      final float posX,
+      final float posY,
+      final char[] text,
+      final int count,
+      final Paint bgPaint) {
+    final float width = exteriorPaint.measureText(text, 0, count);
+    final float textSize = exteriorPaint.getTextSize();
+    backgroundPaint.setColor(bgPaint.getColor());
+    backgroundPaint.setAlpha(160);
+    canvas.drawRect(posX, (posY + (int) (textSize)), (posX + (int) (width)), posY, backgroundPaint);
+
+    canvas.drawText(text, 0, count, posX, (posY + textSize), interiorPaint);
+  }
+
   public void drawLines(Canvas canvas, final float posX, final float posY, Vector<String> lines) {
     int lineNum = 0;
     for (final String line : lines) {
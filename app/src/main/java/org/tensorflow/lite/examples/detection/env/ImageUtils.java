@@ -30,6 +30,33 @@ public class ImageUtils {
   @SuppressWarnings("unused")
   private static final Logger LOGGER = new Logger();
 
+  // Lookup tables holding the coefficient multiplies of YUV2RGB for every 8 bit input, so the
+  // table-driven converters only add and shift per pixel.
+  private static final int[] Y_TABLE = new int[256];
+  private static final int[] RV_TABLE = new int[256];
+  private static final int[] GV_TABLE = new int[256];
+  private static final int[] GU_TABLE = new int[256];
+  private static final int[] BU_TABLE = new int[256];
+
+  // Maps a channel value shifted down by 10 bits to its clamped 8 bit value without branching.
+  // Channel values stay within [-264448, 547270], i.e. [-259, 534] after the shift.
+  private static final int CLAMP_OFFSET = 512;
+  private static final int[] CLAMP_TABLE = new int[CLAMP_OFFSET * 3];
+
+  static {
+    for (int i = 0; i < 256; ++i) {
+      Y_TABLE[i] = 1192 * (i - 16 < 0 ? 0 : i - 16);
+      RV_TABLE[i] = 1634 * (i - 128);
+      GV_TABLE[i] = -833 * (i - 128);
+      GU_TABLE[i] = -400 * (i - 128);
+      BU_TABLE[i] = 2066 * (i - 128);
+    }
+    for (int i = 0; i < CLAMP_TABLE.length; ++i) {
+      final int value = i - CLAMP_OFFSET;
+      CLAMP_TABLE[i] = value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+  }
+
   /**
    * Utility method to compute the allocated size in bytes of a YUV420SP image of the given
    * dimensions.
@@ -103,7 +130,7 @@ public class ImageUtils {
     }
   }
 
-  private static int YUV2RGB(int y, int u, int v) {
+  static int YUV2RGB(int y, int u, int v) {
     // Adjust and check YUV values
     y = (y - 16) < 0 ? 0 : (y - 16);
     u -= 128;
@@ -150,6 +177,96 @@ public class ImageUtils {
     }
   }
 
+  /**
+   * Table-driven equivalent of {@link #convertYUV420SPToARGB8888(byte[], int, int, int[])} that
+   * only converts rows [startRow, endRow), so that stripes of a frame can be converted in
+   * parallel. Each chroma sample is looked up once and applied to both pixels it covers. The output
+   * is identical to the scalar version.
+   */
+  public static void convertYUV420SPToARGB8888(
+      final byte[] input,
+      final int width,
+      final int height,
+      final int[] output,
+      final int startRow,
+      final int endRow) {
+    final int frameSize = width * height;
+    convertRows(
+        input, 0, input, frameSize + 1, input, frameSize, width, width, 2, width, output, startRow,
+        endRow);
+  }
+
+  /**
+   * Table-driven equivalent of {@link #convertYUV420ToARGB8888(byte[], byte[], byte[], int, int,
+   * int, int, int, int[])} that only converts rows [startRow, endRow).
+   */
+  public static void convertYUV420ToARGB8888(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out,
+      final int startRow,
+      final int endRow) {
+    convertRows(
+        yData, 0, uData, 0, vData, 0, yRowStride, uvRowStride, uvPixelStride, width, out, startRow,
+        endRow);
+  }
+
+  private static void convertRows(
+      final byte[] yData,
+      final int yOffset,
+      final byte[] uData,
+      final int uOffset,
+      final byte[] vData,
+      final int vOffset,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int width,
+      final int[] out,
+      final int startRow,
+      final int endRow) {
+    final int[] clamp = CLAMP_TABLE;
+    final int evenWidth = width & ~1;
+    for (int j = startRow; j < endRow; j++) {
+      int pY = yOffset + yRowStride * j;
+      int pU = uOffset + uvRowStride * (j >> 1);
+      int pV = vOffset + uvRowStride * (j >> 1);
+      int yp = width * j;
+
+      for (int i = 0; i < evenWidth; i += 2) {
+        final int v = 0xff & vData[pV];
+        final int u = 0xff & uData[pU];
+        pU += uvPixelStride;
+        pV += uvPixelStride;
+        final int r = RV_TABLE[v];
+        final int g = GV_TABLE[v] + GU_TABLE[u];
+        final int b = BU_TABLE[u];
+
+        int y = Y_TABLE[0xff & yData[pY++]];
+        out[yp++] =
+            0xff000000
+                | (clamp[((y + r) >> 10) + CLAMP_OFFSET] << 16)
+                | (clamp[((y + g) >> 10) + CLAMP_OFFSET] << 8)
+                | clamp[((y + b) >> 10) + CLAMP_OFFSET];
+        y = Y_TABLE[0xff & yData[pY++]];
+        out[yp++] =
+            0xff000000
+                | (clamp[((y + r) >> 10) + CLAMP_OFFSET] << 16)
+                | (clamp[((y + g) >> 10) + CLAMP_OFFSET] << 8)
+                | clamp[((y + b) >> 10) + CLAMP_OFFSET];
+      }
+
+      if (evenWidth != width) {
+        out[yp] = YUV2RGB(0xff & yData[pY], 0xff & uData[pU], 0xff & vData[pV]);
+      }
+    }
+  }
+
   /**
    * Returns a transformation matrix from one reference frame into another. Handles cropping (if
    * maintaining aspect ratio is desired) and rotation.
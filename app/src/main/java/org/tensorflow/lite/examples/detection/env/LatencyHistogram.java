@@ -0,0 +1,119 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed-size latency histogram in the style of HdrHistogram. Values are kept in microseconds;
+ * below 64 us every value has its own bucket, above that each power of two is split into 32
+ * linear buckets, so any recorded value is reported within about 3% of its true value. Recording
+ * does not allocate.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Values below this are counted exactly.
+  private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+  private static final int LINEAR_LIMIT_BITS = SUB_BUCKET_BITS + 1;
+  // Values are clamped below 2^36 us, which is roughly 19 hours.
+  private static final int MAX_VALUE_BITS = 36;
+  private static final long MAX_VALUE_US = (1L << MAX_VALUE_BITS) - 1;
+  private static final int BUCKET_COUNT =
+      LINEAR_LIMIT + (MAX_VALUE_BITS - LINEAR_LIMIT_BITS) * SUB_BUCKET_COUNT;
+
+  private final int[] counts = new int[BUCKET_COUNT];
+  private long totalCount;
+  private long maxValueUs;
+
+  /** Records a latency measured with {@link System#nanoTime()}. */
+  public void recordNanos(final long latencyNs) {
+    recordMicros(latencyNs / 1000);
+  }
+
+  public synchronized void recordMicros(final long latencyUs) {
+    final long value = Math.min(Math.max(latencyUs, 0), MAX_VALUE_US);
+    ++counts[getBucketIndex(value)];
+    ++totalCount;
+    maxValueUs = Math.max(maxValueUs, value);
+  }
+
+  private static int getBucketIndex(final long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int shift = exponent - SUB_BUCKET_BITS;
+    final int subBucket = (int) (value >> shift) - SUB_BUCKET_COUNT;
+    return LINEAR_LIMIT + (exponent - LINEAR_LIMIT_BITS) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /** Returns the middle of the range of values counted in a bucket. */
+  private static long getBucketValue(final int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    final int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + LINEAR_LIMIT_BITS;
+    final int shift = exponent - SUB_BUCKET_BITS;
+    final long top = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return (top << shift) + ((1L << shift) >> 1);
+  }
+
+  public synchronized long getCount() {
+    return totalCount;
+  }
+
+  public synchronized long getMaxMicros() {
+    return maxValueUs;
+  }
+
+  /**
+   * Returns the value below which the given percentage of recorded values fall, or 0 if nothing
+   * was recorded.
+   */
+  public synchronized long getPercentileMicros(final double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(getBucketValue(i), maxValueUs);
+      }
+    }
+    return maxValueUs;
+  }
+
+  public synchronized void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    maxValueUs = 0;
+  }
+
+  /** Formats p50, p90, p99 and max in milliseconds. */
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.US,
+        "p50 %.1f p90 %.1f p99 %.1f max %.1f ms",
+        getPercentileMicros(50) / 1000.0,
+        getPercentileMicros(90) / 1000.0,
+        getPercentileMicros(99) / 1000.0,
+        maxValueUs / 1000.0);
+  }
+}
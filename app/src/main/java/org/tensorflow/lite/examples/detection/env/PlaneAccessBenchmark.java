@@ -0,0 +1,131 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares two ways of turning camera2 image planes into detector input: copying every plane into
+ * an array first, as the camera activity used to, and converting straight from the planes' direct
+ * buffers. The planes are laid out like a typical YUV_420_888 image, with interleaved chroma and a
+ * pixel stride of 2, and the two outputs are checked against each other.
+ *
+ * <p>Has no Android dependencies, so it can be run with {@link #main} on a desktop JVM as well as
+ * from the app.
+ */
+public class PlaneAccessBenchmark {
+  private static final int[][] SIZES = {{640, 480}, {1280, 960}, {1920, 1080}};
+  private static final int INPUT_SIZE = 300;
+
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int MEASURED_ITERATIONS = 50;
+
+  private interface Variant {
+    void run();
+  }
+
+  /** Runs both variants at every size and returns one line per measurement. */
+  public static String run() {
+    final StringBuilder report = new StringBuilder();
+    final Random random = new Random(0);
+    for (final int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+
+      // Chroma is a single interleaved VU buffer; the U plane starts one byte into it.
+      final ByteBuffer yPlane = allocate(width * height, random);
+      final ByteBuffer vu = allocate(width * height / 2, random);
+      vu.limit(vu.capacity() - 1);
+      final ByteBuffer vPlane = vu.slice();
+      vu.limit(vu.capacity()).position(1);
+      final ByteBuffer uPlane = vu.slice();
+      final ByteBuffer[] planes = {yPlane, uPlane, vPlane};
+      final byte[][] bytes = new byte[3][];
+      for (int i = 0; i < planes.length; ++i) {
+        bytes[i] = new byte[planes[i].capacity()];
+      }
+
+      final YuvInputConverter converter =
+          new YuvInputConverter(
+              width,
+              height,
+              INPUT_SIZE,
+              INPUT_SIZE,
+              90,
+              false,
+              true,
+              YuvInputConverter.Sampling.NEAREST);
+      final ByteBuffer copiedOutput = ByteBuffer.allocateDirect(converter.getOutputByteSize());
+      final ByteBuffer directOutput = ByteBuffer.allocateDirect(converter.getOutputByteSize());
+
+      final double copyMs =
+          measure(
+              () -> {
+                for (int i = 0; i < planes.length; ++i) {
+                  planes[i].rewind();
+                  planes[i].get(bytes[i]);
+                }
+                converter.convert(bytes[0], bytes[1], bytes[2], width, width, 2, copiedOutput);
+              });
+      final double directMs =
+          measure(
+              () ->
+                  converter.convert(
+                      planes[0], planes[1], planes[2], width, width, 2, directOutput));
+
+      copiedOutput.rewind();
+      directOutput.rewind();
+      report.append(
+          String.format(
+              Locale.US,
+              "%dx%d copy+convert %7.3f ms, direct %7.3f ms, %.1f MB less copied per frame%s%n",
+              width,
+              height,
+              copyMs,
+              directMs,
+              (yPlane.capacity() + uPlane.capacity() + vPlane.capacity()) / 1e6,
+              copiedOutput.equals(directOutput) ? "" : " MISMATCH"));
+    }
+    return report.toString();
+  }
+
+  private static ByteBuffer allocate(final int size, final Random random) {
+    final byte[] data = new byte[size];
+    random.nextBytes(data);
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    buffer.put(data);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static double measure(final Variant variant) {
+    for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+      variant.run();
+    }
+    final long startTime = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; ++i) {
+      variant.run();
+    }
+    return (System.nanoTime() - startTime) / 1e6 / MEASURED_ITERATIONS;
+  }
+
+  public static void main(final String[] args) {
+    System.out.print(run());
+  }
+}
@@ -0,0 +1,183 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Converts full YUV420 frames to ARGB by splitting the rows into stripes and converting them on a
+ * fixed pool of worker threads, using the table-driven converters in {@link ImageUtils}. The
+ * calling thread converts the last stripe itself and returns once every stripe is done.
+ *
+ * <p>Stripe tasks are allocated once, so converting a frame does not allocate. A converter must
+ * only be used from one thread at a time.
+ */
+public class StripedYuvConverter {
+  private final ExecutorService executor;
+  private final Stripe[] stripes;
+  private final Semaphore completed = new Semaphore(0);
+
+  private boolean semiPlanar;
+  private byte[] yData;
+  private byte[] uData;
+  private byte[] vData;
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  private int[] output;
+
+  /** @param numStripes Number of stripes per frame; one less worker thread is started. */
+  public StripedYuvConverter(final int numStripes) {
+    if (numStripes < 1) {
+      throw new IllegalArgumentException("numStripes must be positive, was " + numStripes);
+    }
+    stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; ++i) {
+      stripes[i] = new Stripe();
+    }
+    executor =
+        numStripes > 1
+            ? Executors.newFixedThreadPool(
+                numStripes - 1,
+                new ThreadFactory() {
+                  private int count;
+
+                  @Override
+                  public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "yuv-converter-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                  }
+                })
+            : null;
+  }
+
+  /** Returns a stripe count suited to this device: one per core, at most four. */
+  public static int getDefaultStripeCount() {
+    return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  }
+
+  public int getStripeCount() {
+    return stripes.length;
+  }
+
+  /** Converts an NV21 frame as delivered by {@link android.hardware.Camera}. */
+  public void convertSemiPlanar(
+      final byte[] input, final int width, final int height, final int[] output) {
+    this.semiPlanar = true;
+    this.yData = input;
+    this.width = width;
+    this.height = height;
+    this.output = output;
+    run();
+  }
+
+  /** Converts a frame delivered as three planes, as by {@link android.media.Image}. */
+  public void convert(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] output) {
+    this.semiPlanar = false;
+    this.yData = yData;
+    this.uData = uData;
+    this.vData = vData;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+    this.output = output;
+    run();
+  }
+
+  private void run() {
+    final int numStripes = stripes.length;
+    // Keep stripe boundaries on even rows so each stripe starts on a fresh chroma row.
+    final int rowsPerStripe = ((height + numStripes - 1) / numStripes + 1) & ~1;
+    int startRow = 0;
+    for (final Stripe stripe : stripes) {
+      stripe.startRow = Math.min(startRow, height);
+      stripe.endRow = Math.min(startRow + rowsPerStripe, height);
+      stripe.error = null;
+      startRow += rowsPerStripe;
+    }
+
+    for (int i = 0; i < numStripes - 1; ++i) {
+      executor.execute(stripes[i]);
+    }
+    stripes[numStripes - 1].run();
+    completed.acquireUninterruptibly(numStripes);
+
+    // Drop frame references so they can be collected between frames.
+    yData = uData = vData = null;
+    output = null;
+
+    for (final Stripe stripe : stripes) {
+      if (stripe.error != null) {
+        throw stripe.error;
+      }
+    }
+  }
+
+  /** Stops the worker threads. The converter cannot be used afterwards. */
+  public void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private class Stripe implements Runnable {
+    private int startRow;
+    private int endRow;
+    private RuntimeException error;
+
+    @Override
+    public void run() {
+      try {
+        if (semiPlanar) {
+          ImageUtils.convertYUV420SPToARGB8888(yData, width, height, output, startRow, endRow);
+        } else {
+          ImageUtils.convertYUV420ToARGB8888(
+              yData,
+              uData,
+              vData,
+              width,
+              yRowStride,
+              uvRowStride,
+              uvPixelStride,
+              output,
+              startRow,
+              endRow);
+        }
+      } catch (final RuntimeException e) {
+        error = e;
+      } finally {
+        completed.release();
+      }
+    }
+  }
+}
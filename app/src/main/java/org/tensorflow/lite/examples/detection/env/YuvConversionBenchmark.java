@@ -0,0 +1,106 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the full-frame YUV to ARGB converters: the scalar loop, the table-driven loop on one
+ * thread, and the table-driven loop striped across threads. Each variant is warmed up before it is
+ * timed, and the striped output is checked against the scalar output.
+ *
+ * <p>Has no Android dependencies, so it can be run with {@link #main} on a desktop JVM as well as
+ * from the app.
+ */
+public class YuvConversionBenchmark {
+  private static final int[][] SIZES = {{640, 480}, {1280, 960}, {1920, 1080}};
+
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int MEASURED_ITERATIONS = 50;
+
+  private interface Variant {
+    void convert(byte[] input, int width, int height, int[] output);
+  }
+
+  /** Runs every variant at every size and returns one line per measurement. */
+  public static String run(final int numStripes) {
+    final StripedYuvConverter striped = new StripedYuvConverter(numStripes);
+    final String[] names = {"scalar", "lut", "striped-lut x" + numStripes};
+    final Variant[] variants = {
+      ImageUtils::convertYUV420SPToARGB8888,
+      (input, width, height, output) ->
+          ImageUtils.convertYUV420SPToARGB8888(input, width, height, output, 0, height),
+      striped::convertSemiPlanar
+    };
+
+    final StringBuilder report = new StringBuilder();
+    final Random random = new Random(0);
+    try {
+      for (final int[] size : SIZES) {
+        final int width = size[0];
+        final int height = size[1];
+        final byte[] input = new byte[ImageUtils.getYUVByteSize(width, height)];
+        random.nextBytes(input);
+
+        final int[] expected = new int[width * height];
+        final int[] output = new int[width * height];
+        ImageUtils.convertYUV420SPToARGB8888(input, width, height, expected);
+
+        for (int v = 0; v < variants.length; ++v) {
+          // Cleared so that pixels a variant fails to write cannot pass with an earlier output.
+          Arrays.fill(output, 0);
+          final double msPerFrame = measure(variants[v], input, width, height, output);
+          report.append(
+              String.format(
+                  Locale.US,
+                  "%dx%d %-16s %7.3f ms/frame%s%n",
+                  width,
+                  height,
+                  names[v],
+                  msPerFrame,
+                  Arrays.equals(expected, output) ? "" : " MISMATCH"));
+        }
+      }
+    } finally {
+      striped.close();
+    }
+    return report.toString();
+  }
+
+  private static double measure(
+      final Variant variant,
+      final byte[] input,
+      final int width,
+      final int height,
+      final int[] output) {
+    for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+      variant.convert(input, width, height, output);
+    }
+    final long startTime = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; ++i) {
+      variant.convert(input, width, height, output);
+    }
+    return (System.nanoTime() - startTime) / 1e6 / MEASURED_ITERATIONS;
+  }
+
+  public static void main(final String[] args) {
+    final int numStripes =
+        args.length > 0 ? Integer.parseInt(args[0]) : StripedYuvConverter.getDefaultStripeCount();
+    System.out.print(run(numStripes));
+  }
+}
@@ -0,0 +1,409 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Converts a YUV420 camera frame straight into detector input, applying the same crop, rotation
+ * and scaling as {@link ImageUtils#getTransformationMatrix}. Only the pixels that end up in the
+ * model input are sampled and converted, so no full-resolution ARGB frame or intermediate bitmap
+ * is needed.
+ *
+ * <p>The source position of every output pixel is computed once up front; converting a frame is
+ * then a single pass over the output. This class only depends on java.nio and can be exercised on
+ * a plain JVM.
+ */
+public class YuvInputConverter {
+  // Same normalization as the float detection models.
+  private static final float IMAGE_MEAN = 128.0f;
+  private static final float IMAGE_STD = 128.0f;
+
+  // Bilinear weights are kept in 8 bit fixed point.
+  private static final int WEIGHT_BITS = 8;
+  private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+  /** How the source planes are sampled at non-integer positions. */
+  public enum Sampling {
+    /** Picks the pixel under the sample point, like drawing a bitmap without filtering. */
+    NEAREST,
+    /** Interpolates the four neighbouring pixels. */
+    BILINEAR
+  }
+
+  private final int frameWidth;
+  private final int frameHeight;
+  private final int outputWidth;
+  private final int outputHeight;
+  private final boolean quantized;
+  private final Sampling sampling;
+
+  // Top-left source pixel of each output pixel, and for bilinear sampling the weight of the
+  // pixel to its right and below.
+  private final int[] sampleX;
+  private final int[] sampleY;
+  private final int[] weightX;
+  private final int[] weightY;
+
+  private final byte[] byteValues;
+  private final float[] floatValues;
+  private ByteBuffer floatViewSource;
+  private FloatBuffer floatView;
+
+  /**
+   * @param frameWidth Width of the camera frame.
+   * @param frameHeight Height of the camera frame.
+   * @param outputWidth Width of the model input.
+   * @param outputHeight Height of the model input.
+   * @param rotation Rotation applied to the frame, a multiple of 90.
+   * @param maintainAspectRatio Whether to crop rather than stretch, see {@link
+   *     ImageUtils#getTransformationMatrix}.
+   * @param quantized Whether the model takes one byte per channel rather than normalized floats.
+   * @param sampling How to sample the frame.
+   */
+  public YuvInputConverter(
+      final int frameWidth,
+      final int frameHeight,
+      final int outputWidth,
+      final int outputHeight,
+      final int rotation,
+      final boolean maintainAspectRatio,
+      final boolean quantized,
+      final Sampling sampling) {
+    this(
+        frameWidth,
+        frameHeight,
+        0,
+        0,
+        frameWidth,
+        frameHeight,
+        outputWidth,
+        outputHeight,
+        rotation,
+        maintainAspectRatio,
+        quantized,
+        sampling);
+  }
+
+  /**
+   * Converts a region of the frame only, as if it were the whole frame.
+   *
+   * @param cropLeft Left edge of the region in the frame.
+   * @param cropTop Top edge of the region in the frame.
+   * @param cropWidth Width of the region.
+   * @param cropHeight Height of the region.
+   */
+  public YuvInputConverter(
+      final int frameWidth,
+      final int frameHeight,
+      final int cropLeft,
+      final int cropTop,
+      final int cropWidth,
+      final int cropHeight,
+      final int outputWidth,
+      final int outputHeight,
+      final int rotation,
+      final boolean maintainAspectRatio,
+      final boolean quantized,
+      final Sampling sampling) {
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.outputWidth = outputWidth;
+    this.outputHeight = outputHeight;
+    this.quantized = quantized;
+    this.sampling = sampling;
+
+    final int numPixels = outputWidth * outputHeight;
+    sampleX = new int[numPixels];
+    sampleY = new int[numPixels];
+    weightX = sampling == Sampling.BILINEAR ? new int[numPixels] : null;
+    weightY = sampling == Sampling.BILINEAR ? new int[numPixels] : null;
+    byteValues = quantized ? new byte[numPixels * 3] : null;
+    floatValues = quantized ? null : new float[numPixels * 3];
+
+    computeSamplePositions(
+        cropLeft, cropTop, cropWidth, cropHeight, rotation, maintainAspectRatio);
+  }
+
+  public int getOutputWidth() {
+    return outputWidth;
+  }
+
+  public int getOutputHeight() {
+    return outputHeight;
+  }
+
+  /** Size in bytes of the input written by this converter. */
+  public int getOutputByteSize() {
+    return outputWidth * outputHeight * 3 * (quantized ? 1 : 4);
+  }
+
+  /**
+   * Inverts the transform built by {@link ImageUtils#getTransformationMatrix} for the crop and
+   * maps the center of every output pixel back into the frame.
+   */
+  private void computeSamplePositions(
+      final int cropLeft,
+      final int cropTop,
+      final int cropWidth,
+      final int cropHeight,
+      final int rotation,
+      final boolean maintainAspectRatio) {
+    final boolean transpose = (Math.abs(rotation) + 90) % 180 == 0;
+    final int inWidth = transpose ? cropHeight : cropWidth;
+    final int inHeight = transpose ? cropWidth : cropHeight;
+
+    float scaleX = 1.0f;
+    float scaleY = 1.0f;
+    if (inWidth != outputWidth || inHeight != outputHeight) {
+      scaleX = outputWidth / (float) inWidth;
+      scaleY = outputHeight / (float) inHeight;
+      if (maintainAspectRatio) {
+        scaleX = scaleY = Math.max(scaleX, scaleY);
+      }
+    }
+
+    final double radians = Math.toRadians(rotation);
+    final float cos = (float) Math.rint(Math.cos(radians));
+    final float sin = (float) Math.rint(Math.sin(radians));
+
+    for (int y = 0, i = 0; y < outputHeight; ++y) {
+      for (int x = 0; x < outputWidth; ++x, ++i) {
+        float u = x + 0.5f;
+        float v = y + 0.5f;
+        if (rotation != 0) {
+          u -= outputWidth / 2.0f;
+          v -= outputHeight / 2.0f;
+        }
+        u /= scaleX;
+        v /= scaleY;
+
+        float srcX = u;
+        float srcY = v;
+        if (rotation != 0) {
+          srcX = u * cos + v * sin + cropWidth / 2.0f;
+          srcY = -u * sin + v * cos + cropHeight / 2.0f;
+        }
+        srcX += cropLeft;
+        srcY += cropTop;
+
+        if (sampling == Sampling.NEAREST) {
+          sampleX[i] = clamp((int) Math.floor(srcX), frameWidth - 1);
+          sampleY[i] = clamp((int) Math.floor(srcY), frameHeight - 1);
+        } else {
+          // Pixel centers sit at half coordinates.
+          final float px = Math.min(Math.max(srcX - 0.5f, 0.0f), frameWidth - 1);
+          final float py = Math.min(Math.max(srcY - 0.5f, 0.0f), frameHeight - 1);
+          sampleX[i] = (int) px;
+          sampleY[i] = (int) py;
+          weightX[i] = Math.round((px - sampleX[i]) * WEIGHT_ONE);
+          weightY[i] = Math.round((py - sampleY[i]) * WEIGHT_ONE);
+        }
+      }
+    }
+  }
+
+  private static int clamp(final int value, final int max) {
+    return value < 0 ? 0 : (value > max ? max : value);
+  }
+
+  /**
+   * Converts a frame delivered as three planes, as by {@link android.media.Image}.
+   *
+   * @param output Model input buffer; written from its start.
+   */
+  public void convert(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final ByteBuffer output) {
+    convert(yData, uData, 0, vData, 0, yRowStride, uvRowStride, uvPixelStride, output);
+  }
+
+  /**
+   * Converts an NV21 frame as delivered by {@link android.hardware.Camera}.
+   *
+   * @param output Model input buffer; written from its start.
+   */
+  public void convertSemiPlanar(final byte[] data, final ByteBuffer output) {
+    final int frameSize = frameWidth * frameHeight;
+    // Chroma follows the luminance plane as interleaved V and U samples.
+    convert(data, data, frameSize + 1, data, frameSize, frameWidth, frameWidth, 2, output);
+  }
+
+  private void convert(
+      final byte[] yData,
+      final byte[] uData,
+      final int uOffset,
+      final byte[] vData,
+      final int vOffset,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final ByteBuffer output) {
+    final int numPixels = outputWidth * outputHeight;
+    for (int i = 0, j = 0; i < numPixels; ++i, j += 3) {
+      final int x = sampleX[i];
+      final int y = sampleY[i];
+
+      final int rgb;
+      if (sampling == Sampling.NEAREST) {
+        final int uv = uvRowStride * (y >> 1) + (x >> 1) * uvPixelStride;
+        rgb =
+            ImageUtils.YUV2RGB(
+                0xff & yData[yRowStride * y + x],
+                0xff & uData[uOffset + uv],
+                0xff & vData[vOffset + uv]);
+      } else {
+        final int x1 = x + 1 < frameWidth ? x + 1 : x;
+        final int y1 = y + 1 < frameHeight ? y + 1 : y;
+        final int wx = weightX[i];
+        final int wy = weightY[i];
+
+        final int row0 = yRowStride * y;
+        final int row1 = yRowStride * y1;
+        final int luma =
+            lerp(
+                lerp(0xff & yData[row0 + x], 0xff & yData[row0 + x1], wx),
+                lerp(0xff & yData[row1 + x], 0xff & yData[row1 + x1], wx),
+                wy);
+
+        final int uv00 = uvRowStride * (y >> 1) + (x >> 1) * uvPixelStride;
+        final int uv01 = uvRowStride * (y >> 1) + (x1 >> 1) * uvPixelStride;
+        final int uv10 = uvRowStride * (y1 >> 1) + (x >> 1) * uvPixelStride;
+        final int uv11 = uvRowStride * (y1 >> 1) + (x1 >> 1) * uvPixelStride;
+        final int u =
+            lerp(
+                lerp(0xff & uData[uOffset + uv00], 0xff & uData[uOffset + uv01], wx),
+                lerp(0xff & uData[uOffset + uv10], 0xff & uData[uOffset + uv11], wx),
+                wy);
+        final int v =
+            lerp(
+                lerp(0xff & vData[vOffset + uv00], 0xff & vData[vOffset + uv01], wx),
+                lerp(0xff & vData[vOffset + uv10], 0xff & vData[vOffset + uv11], wx),
+                wy);
+        rgb = ImageUtils.YUV2RGB(luma, u, v);
+      }
+
+      store(j, rgb);
+    }
+    write(output);
+  }
+
+  /**
+   * Converts a frame straight from the planes of an {@link android.media.Image}, while the image
+   * is still held, instead of copying the planes out first. Only the sampled pixels are read, with
+   * absolute gets, so the positions of the planes are left alone.
+   *
+   * @param output Model input buffer; written from its start.
+   */
+  public void convert(
+      final ByteBuffer yPlane,
+      final ByteBuffer uPlane,
+      final ByteBuffer vPlane,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final ByteBuffer output) {
+    final int numPixels = outputWidth * outputHeight;
+    for (int i = 0, j = 0; i < numPixels; ++i, j += 3) {
+      final int x = sampleX[i];
+      final int y = sampleY[i];
+
+      final int rgb;
+      if (sampling == Sampling.NEAREST) {
+        final int uv = uvRowStride * (y >> 1) + (x >> 1) * uvPixelStride;
+        rgb =
+            ImageUtils.YUV2RGB(
+                0xff & yPlane.get(yRowStride * y + x),
+                0xff & uPlane.get(uv),
+                0xff & vPlane.get(uv));
+      } else {
+        final int x1 = x + 1 < frameWidth ? x + 1 : x;
+        final int y1 = y + 1 < frameHeight ? y + 1 : y;
+        final int wx = weightX[i];
+        final int wy = weightY[i];
+
+        final int row0 = yRowStride * y;
+        final int row1 = yRowStride * y1;
+        final int luma =
+            lerp(
+                lerp(0xff & yPlane.get(row0 + x), 0xff & yPlane.get(row0 + x1), wx),
+                lerp(0xff & yPlane.get(row1 + x), 0xff & yPlane.get(row1 + x1), wx),
+                wy);
+
+        final int uv00 = uvRowStride * (y >> 1) + (x >> 1) * uvPixelStride;
+        final int uv01 = uvRowStride * (y >> 1) + (x1 >> 1) * uvPixelStride;
+        final int uv10 = uvRowStride * (y1 >> 1) + (x >> 1) * uvPixelStride;
+        final int uv11 = uvRowStride * (y1 >> 1) + (x1 >> 1) * uvPixelStride;
+        final int u =
+            lerp(
+                lerp(0xff & uPlane.get(uv00), 0xff & uPlane.get(uv01), wx),
+                lerp(0xff & uPlane.get(uv10), 0xff & uPlane.get(uv11), wx),
+                wy);
+        final int v =
+            lerp(
+                lerp(0xff & vPlane.get(uv00), 0xff & vPlane.get(uv01), wx),
+                lerp(0xff & vPlane.get(uv10), 0xff & vPlane.get(uv11), wx),
+                wy);
+        rgb = ImageUtils.YUV2RGB(luma, u, v);
+      }
+
+      store(j, rgb);
+    }
+    write(output);
+  }
+
+  /** Stores a converted pixel at value index {@code j} of the staging array. */
+  private void store(final int j, final int rgb) {
+    if (quantized) {
+      byteValues[j] = (byte) ((rgb >> 16) & 0xFF);
+      byteValues[j + 1] = (byte) ((rgb >> 8) & 0xFF);
+      byteValues[j + 2] = (byte) (rgb & 0xFF);
+    } else {
+      floatValues[j] = (((rgb >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
+      floatValues[j + 1] = (((rgb >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
+      floatValues[j + 2] = ((rgb & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
+    }
+  }
+
+  private void write(final ByteBuffer output) {
+    output.rewind();
+    if (quantized) {
+      output.put(byteValues);
+    } else {
+      getFloatView(output).put(floatValues);
+    }
+  }
+
+  private static int lerp(final int a, final int b, final int weight) {
+    return a + (((b - a) * weight + (WEIGHT_ONE >> 1)) >> WEIGHT_BITS);
+  }
+
+  private FloatBuffer getFloatView(final ByteBuffer output) {
+    if (floatViewSource != output) {
+      floatViewSource = output;
+      floatView = output.order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+    floatView.rewind();
+    return floatView;
+  }
+}
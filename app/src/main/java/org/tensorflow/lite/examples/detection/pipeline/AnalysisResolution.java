@@ -0,0 +1,183 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import android.util.Size;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks the resolution of the camera stream the detector analyses, apart from the one shown.
+ *
+ * <p>The candidates are the camera's YUV sizes with the aspect ratio of the displayed preview, so
+ * that detections still line up with it, no larger than the preview and with a short side at
+ * least the model input size, so the model input is never upscaled. Whether or not the aspect
+ * ratio is kept when the frame is cropped to the model input, it is the short side that has to
+ * cover it. The smallest candidate is used at first: every frame is converted and gated on the
+ * camera thread, and that work grows with the frame size while the model input stays the same.
+ *
+ * <p>When adaptive, the time spent on each frame is compared with the interval between frames
+ * over a window of frames. If frames keep the camera thread busy for more than a set fraction of
+ * the time, the next smaller candidate is proposed; if the next larger one would still stay well
+ * under that fraction, it is proposed, so a larger frame is only used when there is headroom for
+ * it and the resolution does not go back and forth.
+ */
+public class AnalysisResolution {
+  // Relative difference in aspect ratio still considered the same aspect ratio.
+  private static final float ASPECT_TOLERANCE = 0.02f;
+
+  private final int inputSize;
+  private final boolean adaptive;
+  private final float maxLoad;
+  private final float stepUpLoad;
+  private final int windowFrames;
+  private final List<Size> sizes = new ArrayList<>();
+
+  private int index;
+  private int windowCount;
+  private double windowWorkMs;
+  private double windowIntervalMs;
+  private float load;
+  private int stepDownCount;
+  private int stepUpCount;
+
+  /**
+   * @param inputSize Width and height of the model input.
+   * @param adaptive Whether the resolution follows the measured load after it is selected.
+   * @param maxLoad Fraction of the frame interval above which a smaller resolution is proposed.
+   * @param stepUpLoad Fraction of the frame interval the next larger resolution is expected to
+   *     stay under before it is proposed; below {@code maxLoad}.
+   * @param windowFrames Frames the load is averaged over before a change is proposed.
+   */
+  public AnalysisResolution(
+      final int inputSize,
+      final boolean adaptive,
+      final float maxLoad,
+      final float stepUpLoad,
+      final int windowFrames) {
+    this.inputSize = inputSize;
+    this.adaptive = adaptive;
+    this.maxLoad = maxLoad;
+    this.stepUpLoad = stepUpLoad;
+    this.windowFrames = windowFrames;
+  }
+
+  /**
+   * Collects the candidates from the sizes a camera supports, and returns the one to start with.
+   *
+   * @param choices Sizes the camera supports for YUV_420_888 output.
+   * @param previewSize Size of the displayed preview.
+   */
+  public synchronized Size select(final Size[] choices, final Size previewSize) {
+    sizes.clear();
+    final float previewAspect = (float) previewSize.getWidth() / previewSize.getHeight();
+    final long previewArea = (long) previewSize.getWidth() * previewSize.getHeight();
+    for (final Size option : choices) {
+      final float aspect = (float) option.getWidth() / option.getHeight();
+      if (Math.abs(aspect - previewAspect) <= ASPECT_TOLERANCE * previewAspect
+          && Math.min(option.getWidth(), option.getHeight()) >= inputSize
+          && (long) option.getWidth() * option.getHeight() <= previewArea) {
+        sizes.add(option);
+      }
+    }
+    Collections.sort(sizes, (lhs, rhs) -> Long.signum(area(lhs) - area(rhs)));
+    if (sizes.isEmpty()) {
+      // The preview size is a supported size with the right aspect ratio, just larger.
+      sizes.add(previewSize);
+    }
+    index = 0;
+    resetWindow();
+    return sizes.get(index);
+  }
+
+  private static long area(final Size size) {
+    return (long) size.getWidth() * size.getHeight();
+  }
+
+  /** Records that the stream was switched to {@code size}. */
+  public synchronized void setSize(final Size size) {
+    final int newIndex = sizes.indexOf(size);
+    if (newIndex < 0 || newIndex == index) {
+      return;
+    }
+    if (newIndex < index) {
+      ++stepDownCount;
+    } else {
+      ++stepUpCount;
+    }
+    index = newIndex;
+    resetWindow();
+  }
+
+  private void resetWindow() {
+    windowCount = 0;
+    windowWorkMs = 0;
+    windowIntervalMs = 0;
+  }
+
+  /**
+   * Takes the measurements of one frame, and returns the size to switch to, or null to stay.
+   *
+   * @param frameWorkMs Time spent on the frame before it was handed on or dropped.
+   * @param frameIntervalMs Measured time between frames, or 0 if not known yet.
+   */
+  public synchronized Size update(final double frameWorkMs, final double frameIntervalMs) {
+    if (!adaptive || sizes.size() < 2 || frameIntervalMs <= 0) {
+      return null;
+    }
+    windowWorkMs += frameWorkMs;
+    windowIntervalMs += frameIntervalMs;
+    if (++windowCount < windowFrames) {
+      return null;
+    }
+    load = (float) (windowWorkMs / windowIntervalMs);
+    // A proposal that is not taken up is made again after another window, not on every frame.
+    resetWindow();
+    if (load > maxLoad && index > 0) {
+      return sizes.get(index - 1);
+    }
+    if (index + 1 < sizes.size()) {
+      final float nextLoad = load * area(sizes.get(index + 1)) / area(sizes.get(index));
+      if (nextLoad < stepUpLoad) {
+        return sizes.get(index + 1);
+      }
+    }
+    return null;
+  }
+
+  public synchronized Size getSize() {
+    return sizes.isEmpty() ? null : sizes.get(index);
+  }
+
+  public synchronized String getStatString() {
+    if (sizes.isEmpty()) {
+      return "analysis: fixed";
+    }
+    final Size size = sizes.get(index);
+    return String.format(
+        Locale.US,
+        "analysis: %dx%d (%d/%d), load %.2f, %d down, %d up",
+        size.getWidth(),
+        size.getHeight(),
+        index + 1,
+        sizes.size(),
+        load,
+        stepDownCount,
+        stepUpCount);
+  }
+}
@@ -0,0 +1,86 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.Locale;
+
+/**
+ * Picks the frames the detector runs on when a tracker covers the frames in between.
+ *
+ * <p>The detector runs every N frames, where N follows the measured inference latency and frame
+ * interval so that inference keeps its thread busy for about a target fraction of the time. A
+ * slow model or a fast camera therefore means more frames are tracked rather than detected. The
+ * tracker can ask for an early detection when it loses an object.
+ */
+public class DetectionScheduler {
+  private final float targetDutyCycle;
+  private final int maxInterval;
+
+  private int interval = 1;
+  private int framesSinceDetection;
+  private boolean detectionRequested = true;
+  private long frameCount;
+  private long detectionCount;
+
+  /**
+   * @param targetDutyCycle Fraction of the time inference should keep its thread busy.
+   * @param maxInterval Most frames from one detection to the next.
+   */
+  public DetectionScheduler(final float targetDutyCycle, final int maxInterval) {
+    this.targetDutyCycle = targetDutyCycle;
+    this.maxInterval = maxInterval;
+  }
+
+  /**
+   * Returns whether the detector should run on the current frame.
+   *
+   * @param frameIntervalMs Measured time between camera frames, or 0 if not known yet.
+   * @param inferenceMs Measured inference latency, or 0 if not known yet.
+   */
+  public synchronized boolean shouldDetect(final double frameIntervalMs, final double inferenceMs) {
+    ++frameCount;
+    if (frameIntervalMs > 0 && inferenceMs > 0) {
+      final int target = (int) Math.ceil(inferenceMs / (targetDutyCycle * frameIntervalMs));
+      interval = Math.max(1, Math.min(maxInterval, target));
+    }
+    if (detectionRequested || ++framesSinceDetection >= interval) {
+      framesSinceDetection = 0;
+      detectionRequested = false;
+      ++detectionCount;
+      return true;
+    }
+    return false;
+  }
+
+  /** Makes the next frame a detection frame. */
+  public synchronized void requestDetection() {
+    detectionRequested = true;
+  }
+
+  public synchronized int getInterval() {
+    return interval;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.US,
+        "detect: every %d frames, %d/%d (%.0f%%)",
+        interval,
+        detectionCount,
+        frameCount,
+        frameCount > 0 ? 100.0 * detectionCount / frameCount : 0.0);
+  }
+}
@@ -0,0 +1,138 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Records raw camera frames into a memory-mapped file for {@link FrameReplaySource}.
+ *
+ * <p>The file starts with a header of magic, version, frame width, height, rotation, number of
+ * frames and the end of the last frame, as an offset from the start of the file. Each frame
+ * follows as its timestamp, row stride of the luminance plane, row and pixel stride of the chroma
+ * planes, number of planes, the length of each plane and then the plane bytes. A frame with a
+ * single plane is a whole NV21 frame from the legacy camera API. All numbers are little-endian.
+ *
+ * <p>The file is mapped at its maximum size up front, so recording a frame is a copy into memory
+ * and never blocks on the disk. Frames that no longer fit are dropped, and the file is cut to the
+ * recorded length when the recorder is closed. The number of frames and their end are updated in
+ * the header after each frame, so a recording that is never closed, because the app crashed or was
+ * killed, still ends at its last whole frame rather than in the zeroed tail of the mapping.
+ */
+public class FrameRecorder implements Closeable {
+  static final int MAGIC = 0x43455246; // "FREC"
+  static final int VERSION = 2;
+  // Offsets in the header of the number of frames and the end of the last frame.
+  static final int FRAME_COUNT_OFFSET = 20;
+  static final int DATA_END_OFFSET = 24;
+  static final int HEADER_SIZE = 28;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+
+  private int frameCount;
+  private int droppedCount;
+  private boolean closed;
+
+  /**
+   * @param rotation Rotation of the frames relative to the sensor, as passed to {@code
+   *     onPreviewSizeChosen}.
+   * @param maxBytes Largest size the file may grow to.
+   */
+  public FrameRecorder(
+      final File path, final int width, final int height, final int rotation, final int maxBytes)
+      throws IOException {
+    file = new RandomAccessFile(path, "rw");
+    channel = file.getChannel();
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(rotation);
+    buffer.putInt(0).putInt(HEADER_SIZE);
+  }
+
+  /**
+   * Appends a frame.
+   *
+   * @param planes Frame planes, recorded from their start to their limit; only the first {@code
+   *     planeCount} are recorded.
+   * @return Whether the frame fit in the file.
+   */
+  public synchronized boolean record(
+      final long timestampNs,
+      final ByteBuffer[] planes,
+      final int planeCount,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    if (closed) {
+      return false;
+    }
+    int size = 8 + 4 * 4 + 4 * planeCount;
+    for (int i = 0; i < planeCount; ++i) {
+      size += planes[i].limit();
+    }
+    if (size > buffer.remaining()) {
+      ++droppedCount;
+      return false;
+    }
+
+    buffer.putLong(timestampNs);
+    buffer.putInt(yRowStride).putInt(uvRowStride).putInt(uvPixelStride).putInt(planeCount);
+    for (int i = 0; i < planeCount; ++i) {
+      buffer.putInt(planes[i].limit());
+    }
+    for (int i = 0; i < planeCount; ++i) {
+      // Copied through a duplicate, so the position of the plane is left alone.
+      final ByteBuffer plane = planes[i].duplicate();
+      plane.rewind();
+      buffer.put(plane);
+    }
+    ++frameCount;
+    // The end is written last: until then, the frame is not part of the recording.
+    buffer.putInt(FRAME_COUNT_OFFSET, frameCount);
+    buffer.putInt(DATA_END_OFFSET, buffer.position());
+    return true;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.US,
+        "recorded %d frames (%.1f MB), %d did not fit",
+        frameCount,
+        buffer.position() / 1e6,
+        droppedCount);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    buffer.force();
+    channel.truncate(buffer.position());
+    file.close();
+  }
+}
@@ -0,0 +1,303 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Plays back frames written by {@link FrameRecorder} in place of a camera.
+ *
+ * <p>Frames are delivered on a thread of their own, one at a time: like a camera buffer, the
+ * delivered {@link Frame} belongs to the listener until it calls {@link Frame#release()}. At
+ * maximum rate the next frame is delivered as soon as the previous one is released, so every
+ * recorded frame reaches the listener; whether each is processed the same way in two runs depends
+ * on when the listener releases it. At a fixed rate frames are due at regular intervals, and a
+ * frame that is due while the previous one is still held is dropped, as a camera would.
+ *
+ * <p>Only the frames the header of the recording accounts for are replayed. Every frame is checked
+ * against the end of the recording before it is read, and the replay stops at a frame that is cut
+ * short or malformed.
+ */
+public class FrameReplaySource implements Closeable {
+  private static final Logger LOGGER = new Logger();
+
+  /** Receives replayed frames on the replay thread. */
+  public interface Listener {
+    void onFrame(Frame frame);
+  }
+
+  /** A recorded frame. The plane arrays are reused for later frames. */
+  public static class Frame {
+    private final FrameReplaySource source;
+
+    public final byte[][] planes = new byte[3][];
+    public int planeCount;
+    public int yRowStride;
+    public int uvRowStride;
+    public int uvPixelStride;
+    public long timestampNs;
+
+    /** Whether {@code planes[0]} holds a whole NV21 frame rather than the luminance plane. */
+    public boolean isSemiPlanar() {
+      return planeCount == 1;
+    }
+
+    Frame(final FrameReplaySource source) {
+      this.source = source;
+    }
+
+    /** Hands the frame back, so that the next one can be delivered. */
+    public void release() {
+      source.release();
+    }
+  }
+
+  private final MappedByteBuffer buffer;
+  private final int width;
+  private final int height;
+  private final int rotation;
+  private final int recordedFrameCount;
+  private final int dataStart;
+  private final Frame frame = new Frame(this);
+
+  private Thread thread;
+  private volatile boolean running;
+  private boolean held;
+  private int deliveredCount;
+  private int droppedCount;
+
+  public FrameReplaySource(final File path) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+      // The mapping stays valid after the file is closed.
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.remaining() < FrameRecorder.HEADER_SIZE
+        || buffer.getInt() != FrameRecorder.MAGIC
+        || buffer.getInt() != FrameRecorder.VERSION) {
+      throw new IOException(path + " is not a frame recording");
+    }
+    width = buffer.getInt();
+    height = buffer.getInt();
+    rotation = buffer.getInt();
+    recordedFrameCount = buffer.getInt();
+    final int dataEnd = buffer.getInt();
+    dataStart = buffer.position();
+    if (dataEnd < dataStart) {
+      throw new IOException(path + " has a corrupt header");
+    }
+    // Anything past the last recorded frame is the unused tail of the mapping. A file cut short
+    // after recording ends early, in a partial frame.
+    buffer.limit(Math.min(dataEnd, buffer.capacity()));
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getRotation() {
+    return rotation;
+  }
+
+  /**
+   * Starts delivering frames from the beginning of the recording.
+   *
+   * @param framesPerSecond Delivery rate, or 0 to deliver as fast as frames are released.
+   * @param loop Whether to start over at the end of the recording.
+   */
+  public synchronized void start(
+      final Listener listener, final float framesPerSecond, final boolean loop) {
+    if (thread != null) {
+      return;
+    }
+    running = true;
+    held = false;
+    thread = new Thread(() -> replay(listener, framesPerSecond, loop), "replay");
+    thread.start();
+  }
+
+  private synchronized void release() {
+    held = false;
+    notifyAll();
+  }
+
+  private void replay(final Listener listener, final float framesPerSecond, final boolean loop) {
+    final long intervalNs = framesPerSecond > 0 ? (long) (1e9 / framesPerSecond) : 0;
+    if (buffer.limit() == dataStart) {
+      LOGGER.w("Nothing to replay: the recording has no frames");
+      return;
+    }
+    long dueNs = System.nanoTime();
+    boolean valid = true;
+    try {
+      do {
+        buffer.position(dataStart);
+        while (running && valid && buffer.hasRemaining()) {
+          if (intervalNs > 0) {
+            sleepUntil(dueNs);
+            dueNs += intervalNs;
+            synchronized (this) {
+              if (held) {
+                valid = skipFrame();
+                if (valid) {
+                  ++droppedCount;
+                }
+                continue;
+              }
+            }
+          } else {
+            waitForRelease();
+          }
+          synchronized (this) {
+            if (!running) {
+              break;
+            }
+            valid = readFrame();
+            if (!valid) {
+              break;
+            }
+            held = true;
+            ++deliveredCount;
+          }
+          listener.onFrame(frame);
+        }
+      } while (running && valid && loop);
+      waitForRelease();
+    } catch (final InterruptedException e) {
+      return;
+    }
+    if (!valid) {
+      LOGGER.w("Replay stopped at a partial or malformed frame: %s", getStatString());
+    } else if (running) {
+      LOGGER.i("Replay finished: %s", getStatString());
+    }
+  }
+
+  private synchronized void waitForRelease() throws InterruptedException {
+    while (running && held) {
+      wait();
+    }
+  }
+
+  private static void sleepUntil(final long timeNs) throws InterruptedException {
+    final long delayNs = timeNs - System.nanoTime();
+    if (delayNs > 0) {
+      Thread.sleep(delayNs / 1000000, (int) (delayNs % 1000000));
+    }
+  }
+
+  /**
+   * Returns the size of the frame at the current position, or -1 if it is cut short by the end of
+   * the recording or has an impossible number of planes or plane length. Leaves the position alone.
+   */
+  private int getFrameSize() {
+    final int start = buffer.position();
+    final int fixedSize = 8 + 4 * 4;
+    if (buffer.remaining() < fixedSize) {
+      return -1;
+    }
+    final int planeCount = buffer.getInt(start + fixedSize - 4);
+    if (planeCount < 1
+        || planeCount > frame.planes.length
+        || buffer.remaining() < fixedSize + 4 * planeCount) {
+      return -1;
+    }
+    long size = fixedSize + 4 * planeCount;
+    for (int i = 0; i < planeCount; ++i) {
+      final int length = buffer.getInt(start + fixedSize + 4 * i);
+      if (length < 0) {
+        return -1;
+      }
+      size += length;
+    }
+    return size <= buffer.remaining() ? (int) size : -1;
+  }
+
+  /** Reads the frame at the current position, or returns false if it is not a whole frame. */
+  private boolean readFrame() {
+    if (getFrameSize() < 0) {
+      return false;
+    }
+    frame.timestampNs = buffer.getLong();
+    frame.yRowStride = buffer.getInt();
+    frame.uvRowStride = buffer.getInt();
+    frame.uvPixelStride = buffer.getInt();
+    frame.planeCount = buffer.getInt();
+    final int lengthsStart = buffer.position();
+    buffer.position(lengthsStart + 4 * frame.planeCount);
+    for (int i = 0; i < frame.planeCount; ++i) {
+      final int length = buffer.getInt(lengthsStart + 4 * i);
+      if (frame.planes[i] == null || frame.planes[i].length != length) {
+        frame.planes[i] = new byte[length];
+      }
+      buffer.get(frame.planes[i]);
+    }
+    return true;
+  }
+
+  /** Skips the frame at the current position, or returns false if it is not a whole frame. */
+  private boolean skipFrame() {
+    final int size = getFrameSize();
+    if (size < 0) {
+      return false;
+    }
+    buffer.position(buffer.position() + size);
+    return true;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.US,
+        "replayed %dx%d, %d frames delivered of %d recorded, %d dropped",
+        width,
+        height,
+        deliveredCount,
+        recordedFrameCount,
+        droppedCount);
+  }
+
+  /** Stops the replay thread and waits for it to finish. */
+  @Override
+  public void close() {
+    final Thread replayThread;
+    synchronized (this) {
+      running = false;
+      notifyAll();
+      replayThread = thread;
+      thread = null;
+    }
+    if (replayThread != null) {
+      replayThread.interrupt();
+      try {
+        replayThread.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
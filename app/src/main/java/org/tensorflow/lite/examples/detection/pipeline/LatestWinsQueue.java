@@ -0,0 +1,47 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+/**
+ * A hand-off queue holding at most one item. Offering an item replaces the one waiting, which is
+ * returned so the caller can recycle it; a consumer that falls behind therefore always gets the
+ * most recent item rather than a backlog.
+ */
+public class LatestWinsQueue<T> {
+  private T item;
+
+  /**
+   * Puts an item in the queue.
+   *
+   * @return The item it replaced, or null if the queue was empty.
+   */
+  public synchronized T offer(final T newItem) {
+    final T replaced = item;
+    item = newItem;
+    return replaced;
+  }
+
+  /** Removes and returns the waiting item, or null if there is none. */
+  public synchronized T poll() {
+    final T taken = item;
+    item = null;
+    return taken;
+  }
+
+  public synchronized boolean isEmpty() {
+    return item == null;
+  }
+}
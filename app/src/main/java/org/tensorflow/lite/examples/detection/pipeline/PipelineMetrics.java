@@ -0,0 +1,137 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects the {@link StageStats} of a pipeline in the order frames pass through them, together
+ * with frame rates at the pipeline's input and output.
+ */
+public class PipelineMetrics {
+  // Weight of the newest interval in the smoothed frame rates.
+  private static final double RATE_SMOOTHING = 0.1;
+
+  private final List<StageStats> stages = new ArrayList<>();
+
+  private long framesIn;
+  private long framesOut;
+  private long lastFrameInNs;
+  private long lastFrameOutNs;
+  private double frameInIntervalNs;
+  private double frameOutIntervalNs;
+
+  /** Adds the stats of a stage or step; intended to be called while setting the pipeline up. */
+  public synchronized StageStats add(final StageStats stats) {
+    stages.add(stats);
+    return stats;
+  }
+
+  /** Adds the stats of a pipeline stage and returns the stage. */
+  public <T> PipelineStage<T> add(final PipelineStage<T> stage) {
+    add(stage.getStats());
+    return stage;
+  }
+
+  /** Creates and adds stats for a step that is timed by its caller. */
+  public StageStats add(final String name) {
+    return add(new StageStats(name));
+  }
+
+  /** Records a frame entering the pipeline, whether or not it is processed. */
+  public synchronized void recordFrameIn(final long timestampNs) {
+    ++framesIn;
+    frameInIntervalNs = smooth(frameInIntervalNs, lastFrameInNs, timestampNs);
+    lastFrameInNs = timestampNs;
+  }
+
+  /** Records a frame leaving the last stage. */
+  public synchronized void recordFrameOut(final long timestampNs) {
+    ++framesOut;
+    frameOutIntervalNs = smooth(frameOutIntervalNs, lastFrameOutNs, timestampNs);
+    lastFrameOutNs = timestampNs;
+  }
+
+  private static double smooth(
+      final double intervalNs, final long lastTimestampNs, final long timestampNs) {
+    if (lastTimestampNs == 0) {
+      return intervalNs;
+    }
+    final long newIntervalNs = timestampNs - lastTimestampNs;
+    return intervalNs == 0
+        ? newIntervalNs
+        : intervalNs + RATE_SMOOTHING * (newIntervalNs - intervalNs);
+  }
+
+  public synchronized long getFramesIn() {
+    return framesIn;
+  }
+
+  public synchronized long getFramesOut() {
+    return framesOut;
+  }
+
+  public synchronized double getInputFps() {
+    return frameInIntervalNs > 0 ? 1e9 / frameInIntervalNs : 0;
+  }
+
+  public synchronized double getOutputFps() {
+    return frameOutIntervalNs > 0 ? 1e9 / frameOutIntervalNs : 0;
+  }
+
+  /** Returns the number of frames dropped by all stages. */
+  public synchronized long getDroppedCount() {
+    long dropped = 0;
+    for (final StageStats stats : stages) {
+      dropped += stats.getDroppedCount();
+    }
+    return dropped;
+  }
+
+  public synchronized void reset() {
+    for (final StageStats stats : stages) {
+      stats.reset();
+    }
+    framesIn = 0;
+    framesOut = 0;
+    lastFrameInNs = 0;
+    lastFrameOutNs = 0;
+    frameInIntervalNs = 0;
+    frameOutIntervalNs = 0;
+  }
+
+  /** Summarizes the frame rates. */
+  public synchronized String getFrameRateString() {
+    return String.format(
+        Locale.US,
+        "in %.1f fps, out %.1f fps, %d/%d dropped",
+        getInputFps(),
+        getOutputFps(),
+        getDroppedCount(),
+        framesIn);
+  }
+
+  /** Returns the frame rates followed by one line per stage. */
+  public synchronized String getStatString() {
+    final StringBuilder builder = new StringBuilder(getFrameRateString());
+    for (final StageStats stats : stages) {
+      builder.append('\n').append(stats.getStatString());
+    }
+    return builder.toString();
+  }
+}
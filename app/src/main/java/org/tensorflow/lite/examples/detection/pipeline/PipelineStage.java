@@ -0,0 +1,155 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Trace;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * A pipeline stage running on its own {@link HandlerThread}. Items are handed to it through a
+ * {@link LatestWinsQueue}, so a producer never waits on the stage: if the stage is still busy when
+ * a new item arrives, the waiting item is dropped and recycled.
+ *
+ * <p>Other work for the stage thread, such as reconfiguring what the stage uses, can be posted
+ * with {@link #post} and runs between items.
+ */
+public class PipelineStage<T> {
+  private static final Logger LOGGER = new Logger();
+
+  /** Does the stage's work on one item, and owns the item from then on. */
+  public interface Processor<T> {
+    void process(T item);
+  }
+
+  /** Takes back items the stage dropped, so their resources can be reused. */
+  public interface Recycler<T> {
+    void recycle(T item);
+  }
+
+  private final String name;
+  private final Processor<T> processor;
+  private final Recycler<T> recycler;
+  private final LatestWinsQueue<T> queue = new LatestWinsQueue<>();
+  private final StageStats stats;
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  private final Runnable drain = this::drain;
+
+  private HandlerThread thread;
+  private Handler handler;
+
+  public PipelineStage(
+      final String name, final Processor<T> processor, final Recycler<T> recycler) {
+    this.name = name;
+    this.processor = processor;
+    this.recycler = recycler;
+    this.stats = new StageStats(name);
+  }
+
+  public synchronized void start() {
+    if (thread != null) {
+      return;
+    }
+    thread = new HandlerThread(name);
+    thread.start();
+    handler = new Handler(thread.getLooper());
+  }
+
+  /** Stops the stage thread after the work already posted. Items still waiting are recycled. */
+  public synchronized void stop() {
+    if (thread == null) {
+      return;
+    }
+    thread.quitSafely();
+    try {
+      thread.join();
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Exception!");
+    }
+    thread = null;
+    handler = null;
+    drainScheduled.set(false);
+
+    final T pending = queue.poll();
+    if (pending != null) {
+      recycler.recycle(pending);
+    }
+  }
+
+  /**
+   * Hands an item to the stage. If an earlier item is still waiting it is dropped in favour of
+   * this one. Items offered while the stage is stopped are recycled straight away.
+   */
+  public void offer(final T item) {
+    final T replaced = queue.offer(item);
+    if (replaced != null) {
+      stats.recordDrop();
+      recycler.recycle(replaced);
+    }
+    synchronized (this) {
+      if (handler == null) {
+        final T pending = queue.poll();
+        if (pending != null) {
+          recycler.recycle(pending);
+        }
+        return;
+      }
+      if (drainScheduled.compareAndSet(false, true)) {
+        handler.post(drain);
+      }
+    }
+  }
+
+  /**
+   * Takes back the waiting item, if any, before the stage gets to it. Counts as a drop; the caller
+   * owns the returned item.
+   */
+  public T reclaim() {
+    final T reclaimed = queue.poll();
+    if (reclaimed != null) {
+      stats.recordDrop();
+    }
+    return reclaimed;
+  }
+
+  /** Runs a task on the stage thread between items. */
+  public synchronized boolean post(final Runnable task) {
+    return handler != null && handler.post(task);
+  }
+
+  public StageStats getStats() {
+    return stats;
+  }
+
+  private void drain() {
+    drainScheduled.set(false);
+    final T item = queue.poll();
+    if (item == null) {
+      return;
+    }
+
+    Trace.beginSection(name);
+    final long startTime = System.nanoTime();
+    try {
+      processor.process(item);
+    } finally {
+      stats.recordLatency(System.nanoTime() - startTime);
+      Trace.endSection();
+    }
+  }
+}
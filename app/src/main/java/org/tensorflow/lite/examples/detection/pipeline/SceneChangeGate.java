@@ -0,0 +1,180 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Decides whether a camera frame differs enough from the last detected one to be worth running
+ * the detector on, or whether the detections of that frame still hold.
+ *
+ * <p>Each frame is reduced to a signature: the mean luminance of the cells of a coarse grid,
+ * estimated from a few sampled pixels per cell. The frame counts as unchanged when its signature
+ * is within a threshold of the signature of the reference, the last frame the detector ran on.
+ * The mean of each signature is subtracted before comparing, so exposure adjustments alone do not
+ * count as a change. Comparing against the last detected frame rather than the previous one keeps
+ * a slow pan from slipping through in small steps, and a frame is let through at least every
+ * {@code maxSkippedFrames} frames regardless.
+ */
+public class SceneChangeGate {
+  private final int cellCount;
+  private final int samplesPerCell;
+  private final float threshold;
+  private final int maxSkippedFrames;
+  // Sampled columns, and sampled rows as offsets in rows, grouped by cell.
+  private final int[] sampleX;
+  private final int[] sampleY;
+  private final int gridWidth;
+  private final int samplesPerAxis;
+
+  private int[] signature;
+  private int[] reference;
+  private boolean hasReference;
+  private int skippedInARow;
+
+  private long checkedCount;
+  private long skippedCount;
+  private float lastDifference;
+
+  /**
+   * @param frameWidth Width of the luminance plane.
+   * @param frameHeight Height of the luminance plane.
+   * @param gridWidth Number of signature cells across.
+   * @param gridHeight Number of signature cells down.
+   * @param samplesPerAxis Pixels sampled per cell along each axis.
+   * @param threshold Mean absolute difference, in luminance levels, above which a frame counts
+   *     as changed.
+   * @param maxSkippedFrames Most frames skipped in a row.
+   */
+  public SceneChangeGate(
+      final int frameWidth,
+      final int frameHeight,
+      final int gridWidth,
+      final int gridHeight,
+      final int samplesPerAxis,
+      final float threshold,
+      final int maxSkippedFrames) {
+    this.gridWidth = gridWidth;
+    this.samplesPerAxis = samplesPerAxis;
+    this.cellCount = gridWidth * gridHeight;
+    this.samplesPerCell = samplesPerAxis * samplesPerAxis;
+    this.threshold = threshold;
+    this.maxSkippedFrames = maxSkippedFrames;
+    this.sampleX = samplePositions(frameWidth, gridWidth, samplesPerAxis);
+    this.sampleY = samplePositions(frameHeight, gridHeight, samplesPerAxis);
+    this.signature = new int[cellCount];
+    this.reference = new int[cellCount];
+  }
+
+  /** Spreads the samples of each cell evenly over it, centred in their sub-cells. */
+  private static int[] samplePositions(final int size, final int cells, final int samples) {
+    final int count = cells * samples;
+    final int[] positions = new int[count];
+    for (int i = 0; i < count; ++i) {
+      positions[i] = Math.min(size - 1, (int) ((i + 0.5f) * size / count));
+    }
+    return positions;
+  }
+
+  /**
+   * Computes the signature of a frame and returns whether it differs enough from the reference
+   * for the detector to run on it. Call {@link #setReference} if it then does.
+   */
+  public synchronized boolean hasChanged(final ByteBuffer luminance, final int rowStride) {
+    computeSignature(luminance, rowStride);
+    ++checkedCount;
+
+    if (hasReference) {
+      lastDifference = difference(signature, reference) / samplesPerCell;
+      if (lastDifference < threshold && skippedInARow < maxSkippedFrames) {
+        ++skippedInARow;
+        ++skippedCount;
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Makes the frame last passed to {@link #hasChanged} the one later frames are compared to. */
+  public synchronized void setReference() {
+    final int[] swap = reference;
+    reference = signature;
+    signature = swap;
+    hasReference = true;
+    skippedInARow = 0;
+  }
+
+  private void computeSignature(final ByteBuffer luminance, final int rowStride) {
+    final int[] signature = this.signature;
+    for (int cellY = 0, cell = 0; cell < cellCount; ++cellY) {
+      for (int cellX = 0; cellX < gridWidth; ++cellX, ++cell) {
+        int sum = 0;
+        for (int sy = 0; sy < samplesPerAxis; ++sy) {
+          final int rowOffset = sampleY[cellY * samplesPerAxis + sy] * rowStride;
+          for (int sx = 0; sx < samplesPerAxis; ++sx) {
+            sum += luminance.get(rowOffset + sampleX[cellX * samplesPerAxis + sx]) & 0xFF;
+          }
+        }
+        signature[cell] = sum;
+      }
+    }
+  }
+
+  /** Mean absolute difference of two signatures after removing their means. */
+  private float difference(final int[] a, final int[] b) {
+    long sumA = 0;
+    long sumB = 0;
+    for (int i = 0; i < cellCount; ++i) {
+      sumA += a[i];
+      sumB += b[i];
+    }
+    final float meanShift = (float) (sumA - sumB) / cellCount;
+    float total = 0;
+    for (int i = 0; i < cellCount; ++i) {
+      total += Math.abs(a[i] - b[i] - meanShift);
+    }
+    return total / cellCount;
+  }
+
+  /** Forgets the reference frame, so the next frame is processed. */
+  public synchronized void reset() {
+    hasReference = false;
+    skippedInARow = 0;
+  }
+
+  public synchronized long getCheckedCount() {
+    return checkedCount;
+  }
+
+  public synchronized long getSkippedCount() {
+    return skippedCount;
+  }
+
+  public synchronized float getSkipRatio() {
+    return checkedCount > 0 ? (float) skippedCount / checkedCount : 0.0f;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.US,
+        "scene: %d/%d skipped (%.0f%%), diff %.1f",
+        skippedCount,
+        checkedCount,
+        getSkipRatio() * 100.0f,
+        lastDifference);
+  }
+}
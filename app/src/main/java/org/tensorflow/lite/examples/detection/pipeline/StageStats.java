@@ -0,0 +1,84 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.Locale;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+
+/** Latency histogram and drop counter of one pipeline stage or step. */
+public class StageStats {
+  private final String name;
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  private long droppedCount;
+  private long lastLatencyNs;
+
+  public StageStats(final String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** Records one item that went through the stage. */
+  public void recordLatency(final long latencyNs) {
+    latency.recordNanos(latencyNs);
+    synchronized (this) {
+      lastLatencyNs = latencyNs;
+    }
+  }
+
+  /** Records one item that was discarded before the stage got to it. */
+  public synchronized void recordDrop() {
+    ++droppedCount;
+  }
+
+  public long getProcessedCount() {
+    return latency.getCount();
+  }
+
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  public synchronized long getLastLatencyNs() {
+    return lastLatencyNs;
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  public void reset() {
+    latency.reset();
+    synchronized (this) {
+      droppedCount = 0;
+      lastLatencyNs = 0;
+    }
+  }
+
+  public String getStatString() {
+    final long dropped = getDroppedCount();
+    return String.format(
+        Locale.US,
+        "%s: %d%s, %s",
+        name,
+        getProcessedCount(),
+        dropped > 0 ? " (" + dropped + " dropped)" : "",
+        latency.getStatString());
+  }
+}
@@ -0,0 +1,77 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Runs every available backend of a {@link DetectorBackends} over the same directory of images
+ * with an {@link OfflineDetectionRunner}, so models can be compared on the same frames. The
+ * detections of each backend are written to a directory named after it.
+ */
+public class BackendBenchmark {
+  private static final Logger LOGGER = new Logger();
+
+  /**
+   * @param outputDirectory Directory the directory of each backend is made in.
+   * @param batchSize Number of images recognized together.
+   * @return One line per backend.
+   */
+  public static String run(
+      final AssetManager assets,
+      final DetectorBackends registry,
+      final File imageDirectory,
+      final File outputDirectory,
+      final int batchSize)
+      throws IOException {
+    final StringBuilder summary = new StringBuilder();
+    for (final DetectorBackend backend : registry.getBackends()) {
+      if (!backend.isAvailable(assets)) {
+        summary.append(String.format(Locale.US, "%-20s not bundled%n", backend.getName()));
+        continue;
+      }
+      final File backendDirectory = new File(outputDirectory, backend.getName());
+      if (!backendDirectory.isDirectory() && !backendDirectory.mkdirs()) {
+        throw new IOException("Cannot create " + backendDirectory);
+      }
+
+      final Classifier classifier = backend.create(assets);
+      final OfflineDetectionRunner.Report report;
+      try {
+        report =
+            new OfflineDetectionRunner(
+                    classifier, backend.getInputSize(), backend.isQuantized(), batchSize)
+                .run(imageDirectory);
+      } finally {
+        classifier.close();
+      }
+      OfflineDetectionRunner.writeReport(report, backendDirectory);
+      LOGGER.i("Backend %s: %s", backend, report.getStatString());
+      summary.append(
+          String.format(
+              Locale.US,
+              "%-20s %6.1f images/s, %s%n",
+              backend.getName(),
+              report.getImagesPerSecond(),
+              report.getStatString()));
+    }
+    return summary.toString();
+  }
+}
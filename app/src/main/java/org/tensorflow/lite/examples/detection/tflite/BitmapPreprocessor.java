@@ -0,0 +1,84 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/** Packs ARGB pixels into a model input buffer, shared by the TensorFlow Lite models. */
+abstract class BitmapPreprocessor {
+  // Float model
+  private static final float IMAGE_MEAN = 128.0f;
+  private static final float IMAGE_STD = 128.0f;
+
+  /**
+   * @param imgData The buffer the float preprocessor writes through, whatever it is passed.
+   * @param quantized Whether the model takes one byte per channel rather than normalized floats.
+   */
+  static BitmapPreprocessor create(
+      final ByteBuffer imgData, final int inputSize, final boolean quantized) {
+    return quantized
+        ? new QuantizedPreprocessor(inputSize)
+        : new FloatPreprocessor(imgData, inputSize);
+  }
+
+  abstract void process(int[] pixels, ByteBuffer imgData);
+
+  /** Writes one byte per channel with a single bulk put. */
+  private static class QuantizedPreprocessor extends BitmapPreprocessor {
+    private final byte[] values;
+
+    QuantizedPreprocessor(final int inputSize) {
+      values = new byte[inputSize * inputSize * 3];
+    }
+
+    @Override
+    void process(final int[] pixels, final ByteBuffer imgData) {
+      final byte[] values = this.values;
+      for (int i = 0, j = 0; i < pixels.length; ++i) {
+        final int pixelValue = pixels[i];
+        values[j++] = (byte) ((pixelValue >> 16) & 0xFF);
+        values[j++] = (byte) ((pixelValue >> 8) & 0xFF);
+        values[j++] = (byte) (pixelValue & 0xFF);
+      }
+      imgData.put(values);
+    }
+  }
+
+  /** Normalizes each channel to a float and writes them through a reused float view. */
+  private static class FloatPreprocessor extends BitmapPreprocessor {
+    private final float[] values;
+    private final FloatBuffer floatView;
+
+    FloatPreprocessor(final ByteBuffer imgData, final int inputSize) {
+      values = new float[inputSize * inputSize * 3];
+      floatView = imgData.asFloatBuffer();
+    }
+
+    @Override
+    void process(final int[] pixels, final ByteBuffer imgData) {
+      final float[] values = this.values;
+      for (int i = 0, j = 0; i < pixels.length; ++i) {
+        final int pixelValue = pixels[i];
+        values[j++] = (((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
+        values[j++] = (((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
+        values[j++] = ((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD;
+      }
+      floatView.rewind();
+      floatView.put(values);
+    }
+  }
+}
@@ -19,12 +19,52 @@ import android.graphics.Bitmap;
 import android.graphics.RectF;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Classifier {
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /**
+   * Returns the buffer the model reads its input from, for callers that write preprocessed pixels
+   * directly (see {@link org.tensorflow.lite.examples.detection.env.YuvInputConverter}).
+   */
+  ByteBuffer getInputBuffer();
+
+  /** Runs recognition on whatever was last written to {@link #getInputBuffer()}. */
+  List<Recognition> recognizeInput();
+
+  /**
+   * Runs recognition on a caller-owned input buffer laid out like {@link #getInputBuffer()}, so
+   * that the next input can be prepared while this one is being recognized.
+   */
+  List<Recognition> recognizeInput(ByteBuffer input);
+
+  /**
+   * Runs recognition on several bitmaps at once, and returns the results of each in order. The
+   * results are reused by the next call, like those of {@link #recognizeImage}.
+   */
+  List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps);
+
+  /**
+   * Runs recognition on several caller-owned input buffers laid out like {@link #getInputBuffer()},
+   * and returns the results of each in order. The results are reused by the next call.
+   */
+  List<List<Recognition>> recognizeInputs(List<ByteBuffer> inputs);
+
+  /**
+   * Sets how raw model output is filtered before results are created. Takes effect from the next
+   * recognition; may be called from any thread.
+   */
+  void setPostprocessConfig(PostprocessConfig config);
+
+  PostprocessConfig getPostprocessConfig();
+
+  /** Returns the label of each class the model recognizes, by class index. */
+  List<String> getLabels();
+
   void enableStatLogging(final boolean debug);
 
   String getStatString();
@@ -35,33 +75,81 @@ public interface Classifier {
 
   void setUseNNAPI(boolean isChecked);
 
-  /** An immutable result returned by a Classifier describing what was recognized. */
+  /** Lets float models compute in half precision, trading a little accuracy for speed. */
+  void setAllowFp16(boolean allowFp16);
+
+  /**
+   * Measures recognition with different thread counts, up to {@code maxThreads}, and switches to
+   * the fastest. Blocks for the duration of the measurements and must be called from the thread
+   * that runs recognition.
+   *
+   * @param cancelled Checked between runs; once set, tuning stops and the thread count is left as
+   *     it was.
+   * @return The chosen number of threads.
+   * @throws java.util.concurrent.CancellationException If tuning was cancelled.
+   */
+  int tuneNumThreads(int maxThreads, AtomicBoolean cancelled);
+
+  /**
+   * A result returned by a Classifier describing what was recognized. Classifiers may reuse the
+   * instances they return on their next call, so copy anything that has to outlive it.
+   */
   class Recognition {
     /**
      * A unique identifier for what has been recognized. Specific to the class, not the instance of
      * the object.
      */
-    private final String id;
+    private String id;
 
     /** Display name for the recognition. */
-    private final String title;
+    private String title;
+
+    /** Index of the recognized class in {@link Classifier#getLabels()}, or -1 if not known. */
+    private int classIndex;
 
     /**
      * A sortable score for how good the recognition is relative to others. Higher should be better.
      */
-    private final Float confidence;
+    private float confidence;
 
     /** Optional location within the source image for the location of the recognized object. */
     private RectF location;
 
     public Recognition(
-        final String id, final String title, final Float confidence, final RectF location) {
+        final String id, final String title, final float confidence, final RectF location) {
+      this(id, title, -1, confidence, location);
+    }
+
+    public Recognition(
+        final String id,
+        final String title,
+        final int classIndex,
+        final float confidence,
+        final RectF location) {
       this.id = id;
       this.title = title;
+      this.classIndex = classIndex;
       this.confidence = confidence;
       this.location = location;
     }
 
+    /** Overwrites a pooled instance in place. The location rect is kept and its bounds updated. */
+    void set(
+        final String id,
+        final String title,
+        final int classIndex,
+        final float confidence,
+        final float left,
+        final float top,
+        final float right,
+        final float bottom) {
+      this.id = id;
+      this.title = title;
+      this.classIndex = classIndex;
+      this.confidence = confidence;
+      this.location.set(left, top, right, bottom);
+    }
+
     public String getId() {
       return id;
     }
@@ -70,7 +158,11 @@ public interface Classifier {
       return title;
     }
 
-    public Float getConfidence() {
+    public int getClassIndex() {
+      return classIndex;
+    }
+
+    public float getConfidence() {
       return confidence;
     }
 
@@ -94,9 +186,7 @@ public interface Classifier {
         resultString += title + " ";
       }
 
-      if (confidence != null) {
-        resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-      }
+      resultString += String.format("(%.1f%%) ", confidence * 100.0f);
 
       if (location != null) {
         resultString += location + " ";
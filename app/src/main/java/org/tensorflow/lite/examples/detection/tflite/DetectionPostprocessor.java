@@ -0,0 +1,128 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.List;
+
+/**
+ * Applies a {@link PostprocessConfig} to raw detector output held in primitive arrays. The label
+ * allow-list is resolved to a lookup by class index once, so filtering touches no objects and
+ * allocates nothing; callers only create results for the detections that survive.
+ */
+class DetectionPostprocessor {
+  private final PostprocessConfig config;
+  // Allowed flag per class index, or null if all classes are allowed.
+  private final boolean[] allowedClasses;
+  private final int[] order;
+
+  /**
+   * @param labels Labels of the model.
+   * @param labelOffset Index in {@code labels} of class 0.
+   * @param capacity Most detections passed to {@link #filter}.
+   */
+  DetectionPostprocessor(
+      final PostprocessConfig config,
+      final List<String> labels,
+      final int labelOffset,
+      final int capacity) {
+    this.config = config;
+    if (config.getAllowedLabels() != null) {
+      allowedClasses = new boolean[Math.max(0, labels.size() - labelOffset)];
+      for (int i = 0; i < allowedClasses.length; ++i) {
+        allowedClasses[i] = config.isAllowed(labels.get(i + labelOffset));
+      }
+    } else {
+      allowedClasses = null;
+    }
+    order = new int[capacity];
+  }
+
+  PostprocessConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * Selects the detections to keep.
+   *
+   * @param boxes Box of each detection as {top, left, bottom, right}.
+   * @param classes Class index of each detection.
+   * @param scores Score of each detection.
+   * @param count Number of detections in the arrays.
+   * @param kept Receives the indices of the detections kept, best first.
+   * @return Number of detections kept.
+   */
+  int filter(
+      final float[][] boxes,
+      final float[] classes,
+      final float[] scores,
+      final int count,
+      final int[] kept) {
+    final float minConfidence = config.getMinConfidence();
+    int candidates = 0;
+    for (int i = 0; i < count; ++i) {
+      if (scores[i] >= minConfidence && isAllowed((int) classes[i])) {
+        // Insertion sort by score; the model returns only a handful of detections.
+        int j = candidates++;
+        while (j > 0 && scores[order[j - 1]] < scores[i]) {
+          order[j] = order[j - 1];
+          --j;
+        }
+        order[j] = i;
+      }
+    }
+
+    final float nmsIouThreshold = config.getNmsIouThreshold();
+    final int maxResults = config.getMaxResults() >= 0 ? config.getMaxResults() : count;
+    int keptCount = 0;
+    for (int c = 0; c < candidates && keptCount < maxResults; ++c) {
+      final int i = order[c];
+      boolean suppressed = false;
+      if (nmsIouThreshold < 1.0f) {
+        for (int k = 0; k < keptCount; ++k) {
+          final int j = kept[k];
+          if (classes[j] == classes[i] && iou(boxes[i], boxes[j]) > nmsIouThreshold) {
+            suppressed = true;
+            break;
+          }
+        }
+      }
+      if (!suppressed) {
+        kept[keptCount++] = i;
+      }
+    }
+    return keptCount;
+  }
+
+  private boolean isAllowed(final int classIndex) {
+    if (allowedClasses == null) {
+      return true;
+    }
+    return classIndex >= 0 && classIndex < allowedClasses.length && allowedClasses[classIndex];
+  }
+
+  /** IoU of two boxes given as {top, left, bottom, right}. */
+  static float iou(final float[] a, final float[] b) {
+    final float intersectionHeight = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+    final float intersectionWidth = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+    if (intersectionHeight <= 0 || intersectionWidth <= 0) {
+      return 0.0f;
+    }
+    final float intersection = intersectionHeight * intersectionWidth;
+    final float areaA = (a[2] - a[0]) * (a[3] - a[1]);
+    final float areaB = (b[2] - b[0]) * (b[3] - b[1]);
+    return intersection / (areaA + areaB - intersection);
+  }
+}
@@ -0,0 +1,182 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * A {@link Classifier} implementation and the model it runs, as listed in {@link DetectorBackends}:
+ *
+ * <pre>
+ * {
+ *   "name": "ssd_quantized",
+ *   "type": "detection",
+ *   "model": "detect.tflite",
+ *   "labels": "labelmap.txt",
+ *   "inputSize": 300,
+ *   "quantized": true,
+ *   "manifest": "detect_elements.json"
+ * }
+ * </pre>
+ *
+ * <p>The types are {@value #TYPE_DETECTION}, an SSD model of the TensorFlow Object Detection API,
+ * {@value #TYPE_CLASSIFICATION}, a whole-image classification model, and {@value #TYPE_STUB}, a
+ * {@link StubClassifier} that needs no model. Detection and stub label files list the background
+ * label first, like the stock label map. A detection backend may name a {@link ModelManifest},
+ * which is preferred to its model and labels when it can be read and must take the same input.
+ *
+ * <p>A float backend may also set {@code "allowFp16": true} to let the interpreter compute in half
+ * precision, see {@link Classifier#setAllowFp16}. It is off unless set, since it can cost accuracy.
+ */
+public final class DetectorBackend {
+  private static final Logger LOGGER = new Logger();
+
+  public static final String TYPE_DETECTION = "detection";
+  public static final String TYPE_CLASSIFICATION = "classification";
+  public static final String TYPE_STUB = "stub";
+
+  private static final String ASSET_PREFIX = "file:///android_asset/";
+
+  private String name;
+  private String type;
+  private String model;
+  private String labels;
+  private int inputSize;
+  private boolean quantized;
+  private String manifest;
+  private boolean allowFp16;
+
+  // For Gson.
+  private DetectorBackend() {}
+
+  /**
+   * @param model Asset name of the model; unused by stubs.
+   * @param labels Asset name of the label file.
+   * @param manifest Asset name of a model manifest, or null.
+   */
+  public DetectorBackend(
+      final String name,
+      final String type,
+      final String model,
+      final String labels,
+      final int inputSize,
+      final boolean quantized,
+      final String manifest) {
+    this.name = name;
+    this.type = type;
+    this.model = model;
+    this.labels = labels;
+    this.inputSize = inputSize;
+    this.quantized = quantized;
+    this.manifest = manifest;
+  }
+
+  /** Returns whether every field the type needs is set. */
+  boolean isComplete() {
+    return name != null
+        && type != null
+        && labels != null
+        && inputSize > 0
+        && (model != null || TYPE_STUB.equals(type));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  public boolean isAllowFp16() {
+    return allowFp16;
+  }
+
+  /** Returns whether the model is bundled with the app. */
+  public boolean isAvailable(final AssetManager assets) {
+    if (TYPE_STUB.equals(type)) {
+      return true;
+    }
+    try {
+      final String[] files = assets.list("");
+      return files != null && Arrays.asList(files).contains(model);
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  /** Loads the model, or makes the stub. */
+  public Classifier create(final AssetManager assets) throws IOException {
+    switch (type) {
+      case TYPE_DETECTION:
+        if (manifest != null) {
+          try {
+            return TFLiteObjectDetectionAPIModel.create(
+                assets, ModelManifest.load(assets, manifest));
+          } catch (final IOException e) {
+            LOGGER.w("Model manifest unavailable, loading %s: %s", model, e);
+          }
+        }
+        return TFLiteObjectDetectionAPIModel.create(
+            assets, model, ASSET_PREFIX + labels, inputSize, quantized);
+      case TYPE_CLASSIFICATION:
+        return TFLiteImageClassifierModel.create(assets, model, labels, inputSize, quantized);
+      case TYPE_STUB:
+        final List<String> stubLabels = readLabels(assets, labels);
+        // Like the detection models, the stub has no use for the background label.
+        return new StubClassifier(
+            stubLabels.subList(Math.min(1, stubLabels.size()), stubLabels.size()),
+            inputSize,
+            quantized);
+      default:
+        throw new IOException("Unknown type " + type + " of detector backend " + name);
+    }
+  }
+
+  private static List<String> readLabels(final AssetManager assets, final String fileName)
+      throws IOException {
+    final List<String> labels = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(assets.open(fileName), "UTF-8"))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        labels.add(line);
+      }
+    }
+    return labels;
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + type + ", " + inputSize + "x" + inputSize
+        + (quantized ? ", quantized" : ", float") + (allowFp16 ? ", fp16 allowed)" : ")");
+  }
+}
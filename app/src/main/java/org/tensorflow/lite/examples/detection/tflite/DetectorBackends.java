@@ -0,0 +1,102 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * The detector backends the app can run, read from a JSON asset, so that models can be swapped
+ * and compared without code changes:
+ *
+ * <pre>
+ * {
+ *   "selected": "ssd_quantized",
+ *   "backends": [{"name": "ssd_quantized", "type": "detection", ...}, ...]
+ * }
+ * </pre>
+ *
+ * <p>{@code selected} names the backend used unless another one is asked for. Backends whose model
+ * is not bundled may be listed; they are skipped when selecting and benchmarking.
+ */
+public final class DetectorBackends {
+  private static final Logger LOGGER = new Logger();
+  private static final Gson GSON = new Gson();
+
+  private String selected;
+  private List<DetectorBackend> backends;
+
+  /** Reads the backends from the assets. */
+  public static DetectorBackends load(final AssetManager assets, final String fileName)
+      throws IOException {
+    final DetectorBackends registry;
+    try (Reader reader = new InputStreamReader(assets.open(fileName), "UTF-8")) {
+      registry = GSON.fromJson(reader, DetectorBackends.class);
+    } catch (final JsonParseException e) {
+      throw new IOException("Malformed detector backends " + fileName, e);
+    }
+    if (registry == null || registry.backends == null || registry.backends.isEmpty()) {
+      throw new IOException("No detector backends in " + fileName);
+    }
+    for (final DetectorBackend backend : registry.backends) {
+      if (backend == null || !backend.isComplete()) {
+        throw new IOException("Incomplete detector backend in " + fileName);
+      }
+    }
+    return registry;
+  }
+
+  public List<DetectorBackend> getBackends() {
+    return Collections.unmodifiableList(backends);
+  }
+
+  /** Returns the backend named {@code name}, or null if there is none. */
+  public DetectorBackend get(final String name) {
+    for (final DetectorBackend backend : backends) {
+      if (backend.getName().equals(name)) {
+        return backend;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the backend named {@code name}, or the selected one if {@code name} is null. If that
+   * backend is not listed or its model is not bundled, the first available backend is returned
+   * instead, or null if there is none.
+   */
+  public DetectorBackend select(final AssetManager assets, final String name) {
+    final String wanted = name != null ? name : selected;
+    final DetectorBackend backend = get(wanted);
+    if (backend != null && backend.isAvailable(assets)) {
+      return backend;
+    }
+    for (final DetectorBackend available : backends) {
+      if (available.isAvailable(assets)) {
+        LOGGER.w("Detector backend %s unavailable, using %s", wanted, available.getName());
+        return available;
+      }
+    }
+    return null;
+  }
+}
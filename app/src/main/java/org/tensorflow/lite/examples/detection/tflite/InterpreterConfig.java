@@ -0,0 +1,96 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Locale;
+import org.tensorflow.lite.Interpreter;
+
+/** Immutable set of options an {@link Interpreter} is built with. */
+public final class InterpreterConfig {
+  private final int numThreads;
+  private final boolean useNNAPI;
+  private final boolean allowFp16;
+
+  public InterpreterConfig(final int numThreads, final boolean useNNAPI, final boolean allowFp16) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("numThreads must be positive: " + numThreads);
+    }
+    this.numThreads = numThreads;
+    this.useNNAPI = useNNAPI;
+    this.allowFp16 = allowFp16;
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  public boolean getUseNNAPI() {
+    return useNNAPI;
+  }
+
+  /** Whether float models may compute in half precision. Quantized models ignore this. */
+  public boolean getAllowFp16() {
+    return allowFp16;
+  }
+
+  public InterpreterConfig withNumThreads(final int numThreads) {
+    return new InterpreterConfig(numThreads, useNNAPI, allowFp16);
+  }
+
+  public InterpreterConfig withUseNNAPI(final boolean useNNAPI) {
+    return new InterpreterConfig(numThreads, useNNAPI, allowFp16);
+  }
+
+  public InterpreterConfig withAllowFp16(final boolean allowFp16) {
+    return new InterpreterConfig(numThreads, useNNAPI, allowFp16);
+  }
+
+  Interpreter.Options toOptions() {
+    return new Interpreter.Options()
+        .setNumThreads(numThreads)
+        .setUseNNAPI(useNNAPI)
+        .setAllowFp16PrecisionForFp32(allowFp16);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof InterpreterConfig)) {
+      return false;
+    }
+    final InterpreterConfig other = (InterpreterConfig) o;
+    return numThreads == other.numThreads
+        && useNNAPI == other.useNNAPI
+        && allowFp16 == other.allowFp16;
+  }
+
+  @Override
+  public int hashCode() {
+    return (numThreads * 31 + (useNNAPI ? 1 : 0)) * 31 + (allowFp16 ? 1 : 0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "%d threads%s%s",
+        numThreads,
+        useNNAPI ? ", NNAPI" : "",
+        allowFp16 ? ", fp16" : "");
+  }
+}
@@ -0,0 +1,200 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Trace;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Owns the {@link Interpreter} of a model and rebuilds it when its configuration changes.
+ *
+ * <p>A live interpreter is never reconfigured. Requested configurations are built on a background
+ * thread, and the finished interpreter waits until the thread running inference calls {@link
+ * #swapIfReady} between two runs; only then is the old interpreter closed. If several
+ * configurations are requested while one is being built, only the latest is installed.
+ *
+ * <p>{@link #swapIfReady}, {@link #getInterpreter} and {@link #close} must be called from the
+ * thread that runs the interpreter. The other methods may be called from any thread.
+ */
+public class InterpreterManager {
+  private static final Logger LOGGER = new Logger();
+
+  /** A built interpreter together with the configuration it was built with. */
+  private static class Built {
+    private final Interpreter interpreter;
+    private final InterpreterConfig config;
+
+    Built(final Interpreter interpreter, final InterpreterConfig config) {
+      this.interpreter = interpreter;
+      this.config = config;
+    }
+  }
+
+  private final ByteBuffer model;
+  private final AtomicReference<Built> pending = new AtomicReference<>();
+  private final Runnable buildRequested = this::buildRequested;
+  private final HandlerThread builderThread;
+  private final Handler builderHandler;
+
+  // Latest configuration asked for, guarded by this.
+  private InterpreterConfig requested;
+
+  // Only touched by the inference thread.
+  private Interpreter interpreter;
+  private InterpreterConfig config;
+
+  /** Builds the first interpreter on the calling thread so the model is usable straight away. */
+  public InterpreterManager(final ByteBuffer model, final InterpreterConfig config) {
+    this.model = model;
+    this.interpreter = build(config);
+    this.config = config;
+    this.requested = config;
+
+    builderThread = new HandlerThread("interpreter");
+    builderThread.start();
+    builderHandler = new Handler(builderThread.getLooper());
+  }
+
+  /** Builds a standalone interpreter for the model. The caller owns and must close it. */
+  public Interpreter build(final InterpreterConfig config) {
+    Trace.beginSection("buildInterpreter");
+    try {
+      final long startTime = System.nanoTime();
+      final Interpreter built = new Interpreter(model, config.toOptions());
+      LOGGER.i(
+          "Built interpreter (%s) in %d ms", config, (System.nanoTime() - startTime) / 1000000);
+      return built;
+    } finally {
+      Trace.endSection();
+    }
+  }
+
+  /** Asks for the interpreter to be rebuilt with the given configuration, in the background. */
+  public synchronized void request(final InterpreterConfig config) {
+    if (config.equals(requested)) {
+      return;
+    }
+    requested = config;
+    builderHandler.post(buildRequested);
+  }
+
+  public synchronized void setNumThreads(final int numThreads) {
+    request(requested.withNumThreads(numThreads));
+  }
+
+  public synchronized void setUseNNAPI(final boolean useNNAPI) {
+    request(requested.withUseNNAPI(useNNAPI));
+  }
+
+  public synchronized void setAllowFp16(final boolean allowFp16) {
+    request(requested.withAllowFp16(allowFp16));
+  }
+
+  /**
+   * Hands over an interpreter that was already built with {@link #build}, e.g. by {@link
+   * ThreadCountTuner}, to be installed by the next {@link #swapIfReady} like a requested one. Only
+   * its thread count is adopted: if other options were changed while it was being built, it is
+   * closed and an interpreter with the new options and its thread count is requested instead.
+   */
+  public void install(final Interpreter interpreter, final InterpreterConfig config) {
+    synchronized (this) {
+      final InterpreterConfig current = requested.withNumThreads(config.getNumThreads());
+      if (!config.equals(current)) {
+        interpreter.close();
+        request(current);
+        return;
+      }
+      requested = config;
+    }
+    offerPending(new Built(interpreter, config));
+  }
+
+  /** Returns the configuration that will be in use once pending rebuilds are installed. */
+  public synchronized InterpreterConfig getRequestedConfig() {
+    return requested;
+  }
+
+  private void buildRequested() {
+    final InterpreterConfig target = getRequestedConfig();
+    final Built pendingBuild = pending.get();
+    if (pendingBuild != null && pendingBuild.config.equals(target)) {
+      return;
+    }
+    final Interpreter built = build(target);
+    synchronized (this) {
+      // A newer request is queued behind this one; it will build its own interpreter.
+      if (!target.equals(requested)) {
+        built.close();
+        return;
+      }
+    }
+    offerPending(new Built(built, target));
+  }
+
+  private void offerPending(final Built built) {
+    final Built replaced = pending.getAndSet(built);
+    if (replaced != null) {
+      replaced.interpreter.close();
+    }
+  }
+
+  /**
+   * Installs the most recently built interpreter, if one is waiting, and closes the one it
+   * replaces. Call between runs on the inference thread.
+   *
+   * @return Whether the interpreter changed.
+   */
+  public boolean swapIfReady() {
+    final Built next = pending.getAndSet(null);
+    if (next == null) {
+      return false;
+    }
+    interpreter.close();
+    interpreter = next.interpreter;
+    config = next.config;
+    LOGGER.i("Switched interpreter to %s", config);
+    return true;
+  }
+
+  public Interpreter getInterpreter() {
+    return interpreter;
+  }
+
+  /** Returns the configuration of the interpreter currently in use. */
+  public InterpreterConfig getConfig() {
+    return config;
+  }
+
+  /** Stops the builder thread and closes every interpreter. */
+  public void close() {
+    builderThread.quitSafely();
+    try {
+      builderThread.join();
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Exception!");
+    }
+    final Built leftover = pending.getAndSet(null);
+    if (leftover != null) {
+      leftover.interpreter.close();
+    }
+    interpreter.close();
+  }
+}
@@ -0,0 +1,105 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+
+/**
+ * Compares the restricted model of a {@link ModelManifest} against its fallback model: model size,
+ * output tensor size and end-to-end latency of {@link Classifier#recognizeInput()} on random
+ * input, including postprocessing. If the restricted model is not bundled, the fallback model is
+ * compared with and without the class mask instead, which shows what masking alone costs.
+ */
+public class ModelBenchmark {
+  private static final int WARMUP_RUNS = 5;
+
+  /** Runs each model {@code runs} times and returns one line per model. */
+  public static String run(
+      final AssetManager assets, final ModelManifest manifest, final int runs) throws IOException {
+    final StringBuilder report = new StringBuilder();
+    final Classifier stock =
+        TFLiteObjectDetectionAPIModel.create(
+            assets,
+            manifest.getFallbackModel(),
+            "file:///android_asset/" + manifest.getFallbackLabels(),
+            manifest.getInputSize(),
+            manifest.isQuantized());
+    try {
+      measure(report, "stock", stock, getAssetSize(assets, manifest.getFallbackModel()), runs);
+    } finally {
+      stock.close();
+    }
+
+    final boolean restricted = manifest.hasRestrictedModel(assets);
+    final Classifier candidate = TFLiteObjectDetectionAPIModel.create(assets, manifest);
+    try {
+      measure(
+          report,
+          restricted ? "restricted" : "stock masked",
+          candidate,
+          getAssetSize(
+              assets, restricted ? manifest.getModel() : manifest.getFallbackModel()),
+          runs);
+    } finally {
+      candidate.close();
+    }
+    return report.toString();
+  }
+
+  private static void measure(
+      final StringBuilder report,
+      final String name,
+      final Classifier classifier,
+      final long modelBytes,
+      final int runs) {
+    final ByteBuffer input = classifier.getInputBuffer();
+    final byte[] pixels = new byte[input.capacity()];
+    new Random(0).nextBytes(pixels);
+    input.clear();
+    input.put(pixels);
+
+    for (int i = 0; i < WARMUP_RUNS; ++i) {
+      classifier.recognizeInput();
+    }
+    final LatencyHistogram latency = new LatencyHistogram();
+    for (int i = 0; i < runs; ++i) {
+      final long startTime = System.nanoTime();
+      classifier.recognizeInput();
+      latency.recordNanos(System.nanoTime() - startTime);
+    }
+    report.append(
+        String.format(
+            Locale.US,
+            "%-12s model %6d KB, output %5d B, %s%n",
+            name,
+            modelBytes / 1024,
+            ((TFLiteObjectDetectionAPIModel) classifier).getOutputBytes(),
+            latency.getStatString()));
+  }
+
+  private static long getAssetSize(final AssetManager assets, final String fileName)
+      throws IOException {
+    try (AssetFileDescriptor fileDescriptor = assets.openFd(fileName)) {
+      return fileDescriptor.getDeclaredLength();
+    }
+  }
+}
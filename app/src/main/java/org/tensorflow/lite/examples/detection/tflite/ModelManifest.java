@@ -0,0 +1,116 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a detection model restricted to the classes the app uses, read from a JSON asset:
+ *
+ * <pre>
+ * {
+ *   "model": "detect_elements.tflite",
+ *   "labels": "labelmap_elements.txt",
+ *   "inputSize": 300,
+ *   "quantized": true,
+ *   "fallbackModel": "detect.tflite",
+ *   "fallbackLabels": "labelmap.txt",
+ *   "classes": ["person", "banana", ...]
+ * }
+ * </pre>
+ *
+ * <p>The restricted model only scores {@code classes}, and its label file lists them after the
+ * background label, like the stock label map. If the restricted model is not bundled, the
+ * fallback model is used instead and every class not in {@code classes} is masked out while its
+ * output is postprocessed. Both models must take the same input.
+ */
+public final class ModelManifest {
+  private static final Gson GSON = new Gson();
+
+  private String model;
+  private String labels;
+  private int inputSize;
+  private boolean quantized;
+  private String fallbackModel;
+  private String fallbackLabels;
+  private List<String> classes;
+
+  /** Reads a manifest from the assets. */
+  public static ModelManifest load(final AssetManager assets, final String fileName)
+      throws IOException {
+    final ModelManifest manifest;
+    try (Reader reader = new InputStreamReader(assets.open(fileName), "UTF-8")) {
+      manifest = GSON.fromJson(reader, ModelManifest.class);
+    } catch (final JsonParseException e) {
+      throw new IOException("Malformed model manifest " + fileName, e);
+    }
+    if (manifest == null
+        || manifest.model == null
+        || manifest.labels == null
+        || manifest.inputSize <= 0
+        || manifest.classes == null) {
+      throw new IOException("Incomplete model manifest " + fileName);
+    }
+    return manifest;
+  }
+
+  /** Returns whether the restricted model is bundled with the app. */
+  public boolean hasRestrictedModel(final AssetManager assets) {
+    try {
+      final String[] files = assets.list("");
+      return files != null && Arrays.asList(files).contains(model);
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+  public String getModel() {
+    return model;
+  }
+
+  public String getLabels() {
+    return labels;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  public String getFallbackModel() {
+    return fallbackModel;
+  }
+
+  public String getFallbackLabels() {
+    return fallbackLabels;
+  }
+
+  /** Returns the labels of the classes the restricted model scores. */
+  public List<String> getClasses() {
+    return Collections.unmodifiableList(classes);
+  }
+}
@@ -0,0 +1,447 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvInputConverter;
+
+/**
+ * Runs a {@link Classifier} over a directory of images without a camera, for reproducible speed
+ * and accuracy comparisons between builds.
+ *
+ * <p>JPEG and PNG files are decoded and scaled to the model input like camera bitmaps. Raw NV21
+ * dumps named {@code <name>_<width>x<height>.yuv} go through {@link YuvInputConverter} like camera
+ * frames. Files are processed in name order and in batches: a whole batch is decoded first and
+ * then recognized with a single batched call per kind of input, so that inference latency is
+ * measured apart from decoding. Each image of a batch is credited an equal share of its call.
+ * Detections are reported in the coordinates of the source image. Files that cannot be read or
+ * decoded are skipped and listed in the report, so one bad file does not end the run.
+ */
+public class OfflineDetectionRunner {
+  private static final Logger LOGGER = new Logger();
+
+  private static final Pattern YUV_NAME = Pattern.compile(".*_(\\d+)x(\\d+)\\.(yuv|nv21)");
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+  private final Classifier classifier;
+  private final int inputSize;
+  private final boolean quantized;
+  private final int batchSize;
+
+  // Decoded inputs of the current batch, reused from batch to batch. A slot holding a YUV input
+  // has a null bitmap; its crop is kept for the next image decoded into the slot.
+  private final Bitmap[] bitmaps;
+  private final Bitmap[] crops;
+  private final ByteBuffer[] buffers;
+  private final Matrix[] cropToImage;
+  private final File[] files;
+
+  /**
+   * @param inputSize Size of the square model input.
+   * @param quantized Whether the model takes one byte per channel rather than normalized floats.
+   * @param batchSize Number of images decoded ahead of recognition and recognized together.
+   */
+  public OfflineDetectionRunner(
+      final Classifier classifier,
+      final int inputSize,
+      final boolean quantized,
+      final int batchSize) {
+    this.classifier = classifier;
+    this.inputSize = inputSize;
+    this.quantized = quantized;
+    this.batchSize = Math.max(1, batchSize);
+    bitmaps = new Bitmap[this.batchSize];
+    crops = new Bitmap[this.batchSize];
+    buffers = new ByteBuffer[this.batchSize];
+    cropToImage = new Matrix[this.batchSize];
+    files = new File[this.batchSize];
+  }
+
+  /** Recognizes every supported image in a directory. */
+  public Report run(final File directory) throws IOException {
+    final File[] listed = directory.listFiles();
+    if (listed == null) {
+      throw new IOException("Cannot list " + directory);
+    }
+    Arrays.sort(listed);
+
+    final Report report = new Report();
+    final long startTime = System.nanoTime();
+    int pending = 0;
+    for (final File file : listed) {
+      if (isSupported(file)) {
+        files[pending++] = file;
+        if (pending == batchSize) {
+          runBatch(pending, report);
+          pending = 0;
+        }
+      }
+    }
+    if (pending > 0) {
+      runBatch(pending, report);
+    }
+    report.totalMs = (System.nanoTime() - startTime) / 1e6;
+    report.imagesPerSecond =
+        report.totalMs > 0 ? 1000.0 * report.images.size() / report.totalMs : 0.0;
+    report.decodeLatency = report.decodeHistogram.getStatString();
+    report.inferenceLatency = report.inferenceHistogram.getStatString();
+    report.classifierStats = classifier.getStatString();
+    return report;
+  }
+
+  private void runBatch(final int count, final Report report) {
+    final long[] decodeNs = new long[count];
+    final boolean[] decoded = new boolean[count];
+    for (int i = 0; i < count; ++i) {
+      final long startTime = System.nanoTime();
+      try {
+        decode(i);
+      } catch (final IOException e) {
+        LOGGER.w("Skipping %s: %s", files[i], e.getMessage());
+        report.skipped.add(new SkippedFile(files[i].getName(), e.getMessage()));
+        continue;
+      }
+      decoded[i] = true;
+      decodeNs[i] = System.nanoTime() - startTime;
+      report.decodeHistogram.recordNanos(decodeNs[i]);
+    }
+
+    final List<Integer> bitmapSlots = new ArrayList<>();
+    final List<Integer> bufferSlots = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      if (decoded[i]) {
+        (bitmaps[i] != null ? bitmapSlots : bufferSlots).add(i);
+      }
+    }
+    final ImageResult[] images = new ImageResult[count];
+    if (!bitmapSlots.isEmpty()) {
+      final List<Bitmap> batch = new ArrayList<>(bitmapSlots.size());
+      for (final int slot : bitmapSlots) {
+        batch.add(bitmaps[slot]);
+      }
+      final long startTime = System.nanoTime();
+      final List<List<Classifier.Recognition>> results = classifier.recognizeImages(batch);
+      addResults(bitmapSlots, results, System.nanoTime() - startTime, decodeNs, images, report);
+    }
+    if (!bufferSlots.isEmpty()) {
+      final List<ByteBuffer> batch = new ArrayList<>(bufferSlots.size());
+      for (final int slot : bufferSlots) {
+        batch.add(buffers[slot]);
+      }
+      final long startTime = System.nanoTime();
+      final List<List<Classifier.Recognition>> results = classifier.recognizeInputs(batch);
+      addResults(bufferSlots, results, System.nanoTime() - startTime, decodeNs, images, report);
+    }
+    for (final ImageResult image : images) {
+      if (image != null) {
+        report.images.add(image);
+      }
+    }
+  }
+
+  /** Copies out the results of the batch of {@code slots}, which took {@code batchNs}. */
+  private void addResults(
+      final List<Integer> slots,
+      final List<List<Classifier.Recognition>> results,
+      final long batchNs,
+      final long[] decodeNs,
+      final ImageResult[] images,
+      final Report report) {
+    final long inferenceNs = batchNs / slots.size();
+    for (int k = 0; k < slots.size(); ++k) {
+      final int i = slots.get(k);
+      report.inferenceHistogram.recordNanos(inferenceNs);
+
+      final ImageResult image = new ImageResult();
+      image.file = files[i].getName();
+      image.decodeMs = decodeNs[i] / 1e6;
+      image.inferenceMs = inferenceNs / 1e6;
+      // Results may be reused by the classifier, so they are copied out right away.
+      for (final Classifier.Recognition result : results.get(k)) {
+        final RectF location = result.getLocation();
+        cropToImage[i].mapRect(location);
+        final Detection detection = new Detection();
+        detection.label = result.getTitle();
+        detection.classIndex = result.getClassIndex();
+        detection.confidence = result.getConfidence();
+        detection.left = location.left;
+        detection.top = location.top;
+        detection.right = location.right;
+        detection.bottom = location.bottom;
+        image.detections.add(detection);
+      }
+      images[i] = image;
+    }
+  }
+
+  /** Decodes a file of the batch into its bitmap or buffer and sets its transform. */
+  private void decode(final int slot) throws IOException {
+    final File file = files[slot];
+    final Matcher yuvName = YUV_NAME.matcher(file.getName().toLowerCase(Locale.US));
+    final int width;
+    final int height;
+    if (yuvName.matches()) {
+      width = Integer.parseInt(yuvName.group(1));
+      height = Integer.parseInt(yuvName.group(2));
+      final byte[] data = readFully(file, ImageUtils.getYUVByteSize(width, height));
+      if (buffers[slot] == null) {
+        buffers[slot] =
+            ByteBuffer.allocateDirect(classifier.getInputBuffer().capacity())
+                .order(ByteOrder.nativeOrder());
+      }
+      new YuvInputConverter(
+              width,
+              height,
+              inputSize,
+              inputSize,
+              0,
+              false,
+              quantized,
+              YuvInputConverter.Sampling.NEAREST)
+          .convertSemiPlanar(data, buffers[slot]);
+      bitmaps[slot] = null;
+    } else {
+      final Bitmap image = BitmapFactory.decodeFile(file.getPath());
+      if (image == null) {
+        throw new IOException("Cannot decode " + file);
+      }
+      width = image.getWidth();
+      height = image.getHeight();
+      if (crops[slot] == null) {
+        crops[slot] = Bitmap.createBitmap(inputSize, inputSize, Bitmap.Config.ARGB_8888);
+      } else {
+        // Transparent images must not show the previous image of the slot.
+        crops[slot].eraseColor(Color.TRANSPARENT);
+      }
+      new Canvas(crops[slot])
+          .drawBitmap(
+              image,
+              ImageUtils.getTransformationMatrix(width, height, inputSize, inputSize, 0, false),
+              null);
+      image.recycle();
+      bitmaps[slot] = crops[slot];
+    }
+
+    cropToImage[slot] = new Matrix();
+    ImageUtils.getTransformationMatrix(width, height, inputSize, inputSize, 0, false)
+        .invert(cropToImage[slot]);
+  }
+
+  private static boolean isSupported(final File file) {
+    final String name = file.getName().toLowerCase(Locale.US);
+    return file.isFile()
+        && (name.endsWith(".jpg")
+            || name.endsWith(".jpeg")
+            || name.endsWith(".png")
+            || YUV_NAME.matcher(name).matches());
+  }
+
+  private static byte[] readFully(final File file, final int size) throws IOException {
+    final byte[] data = new byte[size];
+    try (InputStream input = new FileInputStream(file)) {
+      int read = 0;
+      while (read < size) {
+        final int n = input.read(data, read, size - read);
+        if (n < 0) {
+          throw new IOException(file + " is shorter than " + size + " bytes");
+        }
+        read += n;
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Runs the model a manifest describes over {@code imageDirectory} and writes {@code
+   * detections.json} and {@code detections.csv} to {@code outputDirectory}.
+   *
+   * @return Summary of the run.
+   */
+  public static String run(
+      final AssetManager assets,
+      final ModelManifest manifest,
+      final File imageDirectory,
+      final File outputDirectory,
+      final int batchSize)
+      throws IOException {
+    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+      throw new IOException("Cannot create " + outputDirectory);
+    }
+    final Classifier classifier = TFLiteObjectDetectionAPIModel.create(assets, manifest);
+    final Report report;
+    try {
+      report =
+          new OfflineDetectionRunner(
+                  classifier, manifest.getInputSize(), manifest.isQuantized(), batchSize)
+              .run(imageDirectory);
+    } finally {
+      classifier.close();
+    }
+
+    writeReport(report, outputDirectory);
+    LOGGER.i("Offline detection: %s", report.getStatString());
+    return report.getStatString();
+  }
+
+  /** Writes {@code detections.json} and {@code detections.csv} to {@code outputDirectory}. */
+  static void writeReport(final Report report, final File outputDirectory) throws IOException {
+    try (Writer writer = newWriter(new File(outputDirectory, "detections.json"))) {
+      report.writeJson(writer);
+    }
+    try (Writer writer = newWriter(new File(outputDirectory, "detections.csv"))) {
+      report.writeCsv(writer);
+    }
+  }
+
+  private static Writer newWriter(final File file) throws IOException {
+    return new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+  }
+
+  /** Results of a run. Serialized as is to JSON. */
+  public static class Report {
+    private double totalMs;
+    private double imagesPerSecond;
+    private String decodeLatency;
+    private String inferenceLatency;
+    private String classifierStats;
+    private final List<ImageResult> images = new ArrayList<>();
+    private final List<SkippedFile> skipped = new ArrayList<>();
+
+    private final transient LatencyHistogram decodeHistogram = new LatencyHistogram();
+    private final transient LatencyHistogram inferenceHistogram = new LatencyHistogram();
+
+    public int getImageCount() {
+      return images.size();
+    }
+
+    /** Returns the number of files that could not be read or decoded. */
+    public int getSkippedCount() {
+      return skipped.size();
+    }
+
+    public double getImagesPerSecond() {
+      return imagesPerSecond;
+    }
+
+    public String getStatString() {
+      return String.format(
+          Locale.US,
+          "%d images (%d skipped) in %.0f ms (%.1f/s), decode %s, inference %s",
+          images.size(),
+          skipped.size(),
+          totalMs,
+          imagesPerSecond,
+          decodeLatency,
+          inferenceLatency);
+    }
+
+    public void writeJson(final Writer writer) throws IOException {
+      GSON.toJson(this, writer);
+      writer.flush();
+    }
+
+    /** Writes one row per detection, and one row without a detection for an empty image. */
+    public void writeCsv(final Writer writer) throws IOException {
+      writer.write("file,decode_ms,inference_ms,label,class,confidence,left,top,right,bottom\n");
+      for (final ImageResult image : images) {
+        final String prefix =
+            String.format(
+                Locale.US, "%s,%.3f,%.3f", escape(image.file), image.decodeMs, image.inferenceMs);
+        if (image.detections.isEmpty()) {
+          writer.write(prefix + ",,,,,,,\n");
+        }
+        for (final Detection d : image.detections) {
+          writer.write(
+              String.format(
+                  Locale.US,
+                  "%s,%s,%d,%.4f,%.1f,%.1f,%.1f,%.1f\n",
+                  prefix,
+                  escape(d.label),
+                  d.classIndex,
+                  d.confidence,
+                  d.left,
+                  d.top,
+                  d.right,
+                  d.bottom));
+        }
+      }
+      writer.flush();
+    }
+
+    private static String escape(final String value) {
+      if (value == null) {
+        return "";
+      }
+      if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+        return value;
+      }
+      return '"' + value.replace("\"", "\"\"") + '"';
+    }
+  }
+
+  private static class ImageResult {
+    String file;
+    double decodeMs;
+    double inferenceMs;
+    final List<Detection> detections = new ArrayList<>();
+  }
+
+  private static class SkippedFile {
+    final String file;
+    final String reason;
+
+    SkippedFile(final String file, final String reason) {
+      this.file = file;
+      this.reason = reason;
+    }
+  }
+
+  private static class Detection {
+    String label;
+    int classIndex;
+    float confidence;
+    float left;
+    float top;
+    float right;
+    float bottom;
+  }
+}
@@ -0,0 +1,104 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable description of how a {@link Classifier} filters raw model output before it creates
+ * any {@link Classifier.Recognition}s: a score threshold, an optional allow-list of labels,
+ * per-class non-max suppression and a cap on the number of results.
+ */
+public final class PostprocessConfig {
+  /** Keeps every detection the model returns, as the classifiers always did. */
+  public static final PostprocessConfig NONE = new PostprocessConfig(0.0f, null, 1.0f, -1);
+
+  private final float minConfidence;
+  private final Set<String> allowedLabels;
+  private final float nmsIouThreshold;
+  private final int maxResults;
+
+  /**
+   * @param minConfidence Detections scoring below this are dropped.
+   * @param allowedLabels Labels to keep, or null to keep all.
+   * @param nmsIouThreshold A detection overlapping a better one of the same class by more than
+   *     this IoU is dropped. 1 disables suppression.
+   * @param maxResults Most detections returned, best first, or a negative number for no limit.
+   */
+  public PostprocessConfig(
+      final float minConfidence,
+      final Collection<String> allowedLabels,
+      final float nmsIouThreshold,
+      final int maxResults) {
+    this.minConfidence = minConfidence;
+    this.allowedLabels =
+        allowedLabels != null ? Collections.unmodifiableSet(new HashSet<>(allowedLabels)) : null;
+    this.nmsIouThreshold = nmsIouThreshold;
+    this.maxResults = maxResults;
+  }
+
+  public float getMinConfidence() {
+    return minConfidence;
+  }
+
+  /** Returns the labels to keep, or null if every label is kept. */
+  public Set<String> getAllowedLabels() {
+    return allowedLabels;
+  }
+
+  public boolean isAllowed(final String label) {
+    return allowedLabels == null || allowedLabels.contains(label);
+  }
+
+  public float getNmsIouThreshold() {
+    return nmsIouThreshold;
+  }
+
+  public int getMaxResults() {
+    return maxResults;
+  }
+
+  public PostprocessConfig withMinConfidence(final float minConfidence) {
+    return new PostprocessConfig(minConfidence, allowedLabels, nmsIouThreshold, maxResults);
+  }
+
+  public PostprocessConfig withAllowedLabels(final Collection<String> allowedLabels) {
+    return new PostprocessConfig(minConfidence, allowedLabels, nmsIouThreshold, maxResults);
+  }
+
+  public PostprocessConfig withNmsIouThreshold(final float nmsIouThreshold) {
+    return new PostprocessConfig(minConfidence, allowedLabels, nmsIouThreshold, maxResults);
+  }
+
+  public PostprocessConfig withMaxResults(final int maxResults) {
+    return new PostprocessConfig(minConfidence, allowedLabels, nmsIouThreshold, maxResults);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "score >= %.2f, %s labels, nms %.2f, top %d",
+        minConfidence,
+        allowedLabels != null ? String.valueOf(allowedLabels.size()) : "all",
+        nmsIouThreshold,
+        maxResults);
+  }
+}
@@ -0,0 +1,166 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A classifier without a model that returns the same detections for every input, so that the
+ * pipeline can be tested and its overhead measured without inference.
+ *
+ * <p>The detections are one per label the {@link PostprocessConfig} allows, in label order, up to
+ * its maximum number of results: each in its own cell of a grid over the input, with confidence
+ * falling from {@link #TOP_CONFIDENCE} in steps of {@link #CONFIDENCE_STEP}, and dropped below the
+ * minimum confidence.
+ */
+public class StubClassifier implements Classifier {
+  static final float TOP_CONFIDENCE = 0.95f;
+  static final float CONFIDENCE_STEP = 0.05f;
+  private static final int GRID_SIZE = 4;
+
+  private final List<String> labels;
+  private final int inputSize;
+  private final ByteBuffer imgData;
+  private volatile PostprocessConfig config = PostprocessConfig.NONE;
+  private long recognitionCount;
+
+  /**
+   * @param labels Labels the detections are made for.
+   * @param inputSize Width and height of the input the detections are located in.
+   * @param quantized Whether the input buffer holds one byte per channel rather than floats.
+   */
+  public StubClassifier(final List<String> labels, final int inputSize, final boolean quantized) {
+    this.labels = Collections.unmodifiableList(new ArrayList<>(labels));
+    this.inputSize = inputSize;
+    imgData = ByteBuffer.allocateDirect(inputSize * inputSize * 3 * (quantized ? 1 : 4));
+    imgData.order(ByteOrder.nativeOrder());
+  }
+
+  private List<Recognition> recognize() {
+    ++recognitionCount;
+    final PostprocessConfig config = this.config;
+    final int maxResults = config.getMaxResults() >= 0 ? config.getMaxResults() : labels.size();
+    final float cellSize = (float) inputSize / GRID_SIZE;
+    final List<Recognition> results = new ArrayList<>();
+    for (int i = 0; i < labels.size() && results.size() < maxResults; ++i) {
+      final float confidence = TOP_CONFIDENCE - CONFIDENCE_STEP * results.size();
+      if (confidence < config.getMinConfidence()) {
+        break;
+      }
+      if (!config.isAllowed(labels.get(i))) {
+        continue;
+      }
+      final int cell = results.size() % (GRID_SIZE * GRID_SIZE);
+      final float left = (cell % GRID_SIZE) * cellSize;
+      final float top = (cell / GRID_SIZE) * cellSize;
+      results.add(
+          new Recognition(
+              "" + i,
+              labels.get(i),
+              i,
+              confidence,
+              new RectF(left, top, left + cellSize, top + cellSize)));
+    }
+    return results;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    return recognize();
+  }
+
+  @Override
+  public ByteBuffer getInputBuffer() {
+    return imgData;
+  }
+
+  @Override
+  public List<Recognition> recognizeInput() {
+    return recognize();
+  }
+
+  @Override
+  public List<Recognition> recognizeInput(final ByteBuffer input) {
+    return recognize();
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    final List<List<Recognition>> results = new ArrayList<>(bitmaps.size());
+    for (int i = 0; i < bitmaps.size(); ++i) {
+      results.add(recognize());
+    }
+    return results;
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeInputs(final List<ByteBuffer> inputs) {
+    final List<List<Recognition>> results = new ArrayList<>(inputs.size());
+    for (int i = 0; i < inputs.size(); ++i) {
+      results.add(recognize());
+    }
+    return results;
+  }
+
+  @Override
+  public void setPostprocessConfig(final PostprocessConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public PostprocessConfig getPostprocessConfig() {
+    return config;
+  }
+
+  @Override
+  public List<String> getLabels() {
+    return labels;
+  }
+
+  @Override
+  public void enableStatLogging(final boolean debug) {}
+
+  @Override
+  public String getStatString() {
+    return String.format(
+        Locale.US, "model: stub, %d labels, %d recognitions", labels.size(), recognitionCount);
+  }
+
+  @Override
+  public void close() {}
+
+  @Override
+  public void setNumThreads(final int numThreads) {}
+
+  @Override
+  public void setUseNNAPI(final boolean isChecked) {}
+
+  @Override
+  public void setAllowFp16(final boolean allowFp16) {}
+
+  @Override
+  public int tuneNumThreads(final int maxThreads, final AtomicBoolean cancelled) {
+    return 1;
+  }
+}
@@ -0,0 +1,322 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.os.Trace;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Wrapper for image classification models, such as MobileNet, that score the whole input for
+ * every label rather than locating objects. A much lighter alternative to a detection model where
+ * one object fills most of the frame.
+ *
+ * <p>Every class scoring above the minimum confidence of the {@link PostprocessConfig} becomes a
+ * recognition located on the whole model input, best first. The label file lists one label per
+ * output score, in order. Batches are run image by image.
+ */
+public class TFLiteImageClassifierModel implements Classifier {
+  private static final Logger LOGGER = new Logger();
+
+  // Number of threads in the java app
+  private static final int NUM_THREADS = 4;
+  // Runs per candidate when tuning the thread count.
+  private static final int TUNING_WARMUP_RUNS = 2;
+  private static final int TUNING_TIMED_RUNS = 5;
+
+  private final List<String> labels = new ArrayList<>();
+  private int inputSize;
+  private boolean isModelQuantized;
+  private String modelDescription;
+
+  private ByteBuffer imgData;
+  private int[] intValues;
+  private BitmapPreprocessor preprocessor;
+  private InterpreterManager interpreters;
+
+  // Output of a quantized or a float model, and the scores either is read into.
+  private byte[][] quantizedOutput;
+  private float[][] floatOutput;
+  private float[] scores;
+  // Every label scores the same box, the whole input, as {top, left, bottom, right}.
+  private float[][] boxes;
+  private float[] classes;
+  private int[] keptIndices;
+  private volatile DetectionPostprocessor postprocessor;
+
+  private final ArrayList<Recognition> recognitions = new ArrayList<>();
+  private final ArrayList<Recognition> recognitionPool = new ArrayList<>();
+
+  private final LatencyHistogram preprocessLatency = new LatencyHistogram();
+  private final LatencyHistogram runLatency = new LatencyHistogram();
+  private final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+  private TFLiteImageClassifierModel() {}
+
+  /**
+   * Initializes a classification model from the assets.
+   *
+   * @param modelFilename Asset name of the model.
+   * @param labelFilename Asset name of the label file.
+   * @param inputSize Width and height of the model input.
+   * @param isQuantized Whether the model takes and returns bytes rather than floats.
+   */
+  public static Classifier create(
+      final AssetManager assetManager,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized)
+      throws IOException {
+    final TFLiteImageClassifierModel c = new TFLiteImageClassifierModel();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(assetManager.open(labelFilename)))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        c.labels.add(line);
+      }
+    }
+
+    final MappedByteBuffer model;
+    try (AssetFileDescriptor fileDescriptor = assetManager.openFd(modelFilename);
+        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+      model =
+          inputStream
+              .getChannel()
+              .map(
+                  FileChannel.MapMode.READ_ONLY,
+                  fileDescriptor.getStartOffset(),
+                  fileDescriptor.getDeclaredLength());
+    }
+    c.interpreters =
+        new InterpreterManager(model, new InterpreterConfig(NUM_THREADS, false, false));
+
+    c.inputSize = inputSize;
+    c.isModelQuantized = isQuantized;
+    c.modelDescription = modelFilename;
+    c.imgData = ByteBuffer.allocateDirect(inputSize * inputSize * 3 * (isQuantized ? 1 : 4));
+    c.imgData.order(ByteOrder.nativeOrder());
+    c.intValues = new int[inputSize * inputSize];
+    c.preprocessor = BitmapPreprocessor.create(c.imgData, inputSize, isQuantized);
+
+    final int numLabels = c.labels.size();
+    if (isQuantized) {
+      c.quantizedOutput = new byte[1][numLabels];
+    } else {
+      c.floatOutput = new float[1][numLabels];
+    }
+    c.scores = new float[numLabels];
+    c.boxes = new float[numLabels][];
+    c.classes = new float[numLabels];
+    final float[] wholeInput = {0.0f, 0.0f, 1.0f, 1.0f};
+    for (int i = 0; i < numLabels; ++i) {
+      c.boxes[i] = wholeInput;
+      c.classes[i] = i;
+    }
+    c.keptIndices = new int[numLabels];
+    c.setPostprocessConfig(PostprocessConfig.NONE);
+    LOGGER.i("Loaded %s, %d labels", modelFilename, numLabels);
+    return c;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    Trace.beginSection("recognizeImage");
+    preprocess(bitmap);
+    runInference(imgData);
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
+
+  private void preprocess(final Bitmap bitmap) {
+    final long preprocessStartTime = System.nanoTime();
+    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    imgData.rewind();
+    preprocessor.process(intValues, imgData);
+    imgData.rewind();
+    preprocessLatency.recordNanos(System.nanoTime() - preprocessStartTime);
+  }
+
+  @Override
+  public ByteBuffer getInputBuffer() {
+    return imgData;
+  }
+
+  @Override
+  public List<Recognition> recognizeInput() {
+    return recognizeInput(imgData);
+  }
+
+  @Override
+  public List<Recognition> recognizeInput(final ByteBuffer input) {
+    Trace.beginSection("recognizeInput");
+    runInference(input);
+    Trace.endSection(); // "recognizeInput"
+    return recognitions;
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    final List<List<Recognition>> results = new ArrayList<>(bitmaps.size());
+    for (final Bitmap bitmap : bitmaps) {
+      results.add(copyOf(recognizeImage(bitmap)));
+    }
+    return results;
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeInputs(final List<ByteBuffer> inputs) {
+    final List<List<Recognition>> results = new ArrayList<>(inputs.size());
+    for (final ByteBuffer input : inputs) {
+      results.add(copyOf(recognizeInput(input)));
+    }
+    return results;
+  }
+
+  /** Copies results that the next recognition would overwrite. */
+  private static List<Recognition> copyOf(final List<Recognition> recognitions) {
+    final List<Recognition> copy = new ArrayList<>(recognitions.size());
+    for (final Recognition recognition : recognitions) {
+      copy.add(
+          new Recognition(
+              recognition.getId(),
+              recognition.getTitle(),
+              recognition.getClassIndex(),
+              recognition.getConfidence(),
+              recognition.getLocation()));
+    }
+    return copy;
+  }
+
+  private void runInference(final ByteBuffer input) {
+    // Pick up an interpreter rebuilt with new settings, now that the old one is idle.
+    if (interpreters.swapIfReady()) {
+      resetLatencies();
+    }
+
+    Trace.beginSection("run");
+    final long runStartTime = System.nanoTime();
+    interpreters.getInterpreter().run(input, isModelQuantized ? quantizedOutput : floatOutput);
+    final long decodeStartTime = System.nanoTime();
+    runLatency.recordNanos(decodeStartTime - runStartTime);
+    Trace.endSection();
+
+    if (isModelQuantized) {
+      for (int i = 0; i < scores.length; ++i) {
+        scores[i] = (quantizedOutput[0][i] & 0xFF) / 255.0f;
+      }
+    } else {
+      System.arraycopy(floatOutput[0], 0, scores, 0, scores.length);
+    }
+    final int kept = postprocessor.filter(boxes, classes, scores, scores.length, keptIndices);
+    while (recognitionPool.size() < kept) {
+      recognitionPool.add(new Recognition(null, null, 0.0f, new RectF()));
+    }
+    recognitions.clear();
+    for (int k = 0; k < kept; ++k) {
+      final int i = keptIndices[k];
+      final Recognition recognition = recognitionPool.get(k);
+      recognition.set(labels.get(i), labels.get(i), i, scores[i], 0, 0, inputSize, inputSize);
+      recognitions.add(recognition);
+    }
+    decodeLatency.recordNanos(System.nanoTime() - decodeStartTime);
+  }
+
+  @Override
+  public void setPostprocessConfig(final PostprocessConfig config) {
+    postprocessor = new DetectionPostprocessor(config, labels, 0, labels.size());
+  }
+
+  @Override
+  public PostprocessConfig getPostprocessConfig() {
+    return postprocessor.getConfig();
+  }
+
+  @Override
+  public List<String> getLabels() {
+    return Collections.unmodifiableList(labels);
+  }
+
+  @Override
+  public void enableStatLogging(final boolean debug) {}
+
+  @Override
+  public String getStatString() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("model: ").append(modelDescription).append('\n');
+    if (preprocessLatency.getCount() > 0) {
+      builder.append("preprocess: ").append(preprocessLatency.getStatString()).append('\n');
+    }
+    builder.append("run: ").append(runLatency.getStatString()).append('\n');
+    builder.append("decode: ").append(decodeLatency.getStatString());
+    return builder.toString();
+  }
+
+  private void resetLatencies() {
+    preprocessLatency.reset();
+    runLatency.reset();
+    decodeLatency.reset();
+  }
+
+  @Override
+  public void close() {
+    interpreters.close();
+  }
+
+  @Override
+  public void setNumThreads(final int numThreads) {
+    interpreters.setNumThreads(numThreads);
+  }
+
+  @Override
+  public void setUseNNAPI(final boolean isChecked) {
+    interpreters.setUseNNAPI(isChecked);
+  }
+
+  @Override
+  public void setAllowFp16(final boolean allowFp16) {
+    interpreters.setAllowFp16(allowFp16);
+  }
+
+  @Override
+  public int tuneNumThreads(final int maxThreads, final AtomicBoolean cancelled) {
+    final ThreadCountTuner tuner = new ThreadCountTuner(TUNING_WARMUP_RUNS, TUNING_TIMED_RUNS);
+    final InterpreterConfig config =
+        tuner.tune(
+            interpreters,
+            ThreadCountTuner.getDefaultCandidates(maxThreads),
+            interpreter ->
+                interpreter.run(imgData, isModelQuantized ? quantizedOutput : floatOutput),
+            cancelled);
+    return config.getNumThreads();
+  }
+}
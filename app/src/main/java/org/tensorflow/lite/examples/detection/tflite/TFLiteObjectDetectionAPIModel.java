@@ -19,6 +19,7 @@ import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.RectF;
+import android.os.Debug;
 import android.os.Trace;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
@@ -30,40 +31,65 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
 import org.tensorflow.lite.examples.detection.env.Logger;
 
 /**
  * Wrapper for frozen detection models trained using the Tensorflow Object Detection API:
  * github.com/tensorflow/models/tree/master/research/object_detection
+ *
+ * <p>All buffers, output arrays and result objects are allocated in {@link #create}, so
+ * {@link #recognizeImage} and {@link #recognizeInput} do not allocate once the interpreter has
+ * warmed up. The returned list and its recognitions are reused by the next call.
+ *
+ * <p>Raw output is filtered by a {@link PostprocessConfig} while it is still in the output arrays,
+ * so results are only created for the detections that are kept.
+ *
+ * <p>{@link #recognizeImages} and {@link #recognizeInputs} resize the interpreter input to the
+ * number of images and run them all in one invocation, with buffers allocated by the first batch
+ * of each size. Models whose outputs have a fixed batch size, like those ending in the SSD
+ * postprocessing op, cannot be resized; their batches are run image by image instead.
  */
 public class TFLiteObjectDetectionAPIModel implements Classifier {
   private static final Logger LOGGER = new Logger();
 
-  // Only return this many results.
+  private static final String ASSET_PREFIX = "file:///android_asset/";
+
+  // Number of results of the stock model, used if a model's output shape cannot be read.
   private static final int NUM_DETECTIONS = 10;
-  // Float model
-  private static final float IMAGE_MEAN = 128.0f;
-  private static final float IMAGE_STD = 128.0f;
+  // SSD Mobilenet V1 Model assumes class 0 is background class
+  // in label file and class labels start from 1 to number_of_classes+1,
+  // while outputClasses correspond to class index from 0 to number_of_classes
+  private static final int LABEL_OFFSET = 1;
   // Number of threads in the java app
   private static final int NUM_THREADS = 4;
+  // Runs per candidate when tuning the thread count.
+  private static final int TUNING_WARMUP_RUNS = 2;
+  private static final int TUNING_TIMED_RUNS = 5;
   private boolean isModelQuantized;
   // Config values.
   private int inputSize;
+  // Number of detections the model outputs.
+  private int maxDetections;
+  private String modelDescription;
   // Pre-allocated buffers.
   private Vector<String> labels = new Vector<>();
   private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
+  // outputLocations: array of shape [Batchsize, maxDetections,4]
   // contains the location of detected boxes
   private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
+  // outputClasses: array of shape [Batchsize, maxDetections]
   // contains the classes of detected boxes
   private float[][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
+  // outputScores: array of shape [Batchsize, maxDetections]
   // contains the scores of detected boxes
   private float[][] outputScores;
   // numDetections: array of shape [Batchsize]
@@ -71,8 +97,49 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   private float[] numDetections;
 
   private ByteBuffer imgData;
+  private BitmapPreprocessor preprocessor;
+
+  private Object[] inputArray;
+  private Map<Integer, Object> outputMap;
+  private Recognition[] recognitionPool;
+  private ArrayList<Recognition> recognitions;
+  private String[] recognitionIds;
+  private int[] keptIndices;
+  // Replaced as a whole when the configuration changes, so it can be set from any thread.
+  private volatile DetectionPostprocessor postprocessor;
+
+  // Whether the model runs batches in one invocation, until resizing it has failed.
+  private boolean batchSupported = true;
+  // The interpreter whose input was last resized, and the batch size it takes now.
+  private Interpreter batchInterpreter;
+  private int interpreterBatchSize = 1;
+  // Input and outputs of a batch, allocated for the batch size last run.
+  private int batchBufferSize;
+  private ByteBuffer batchData;
+  private float[][][] batchLocations;
+  private float[][] batchClasses;
+  private float[][] batchScores;
+  private float[] batchNumDetections;
+  private Object[] batchInputArray;
+  private Map<Integer, Object> batchOutputMap;
+  // Results of each image of a batch, and the recognitions each reuses.
+  private final ArrayList<List<Recognition>> batchResults = new ArrayList<>();
+  private final ArrayList<ArrayList<Recognition>> slotRecognitions = new ArrayList<>();
+  private final ArrayList<Recognition[]> slotPools = new ArrayList<>();
+
+  // Latency of the steps of a recognition, recorded whether or not stat logging is enabled.
+  private final LatencyHistogram preprocessLatency = new LatencyHistogram();
+  private final LatencyHistogram runLatency = new LatencyHistogram();
+  private final LatencyHistogram decodeLatency = new LatencyHistogram();
+  private final LatencyHistogram batchRunLatency = new LatencyHistogram();
+  private int lastBatchSize;
 
-  private Interpreter tfLite;
+  private boolean logStats = false;
+  private long framesRecognized;
+  private long lastFrameAllocations;
+  private long maxFrameAllocations;
+
+  private InterpreterManager interpreters;
 
   private TFLiteObjectDetectionAPIModel() {}
 
@@ -87,6 +154,37 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
   }
 
+  /**
+   * Initializes the model a {@link ModelManifest} describes: the restricted model if it is
+   * bundled, otherwise the fallback model with every class outside the manifest masked out.
+   * Detections are restricted to the manifest's classes through the postprocess config, so a
+   * caller replacing that config should keep its allowed labels.
+   */
+  public static Classifier create(
+      final AssetManager assetManager, final ModelManifest manifest) throws IOException {
+    final boolean restricted = manifest.hasRestrictedModel(assetManager);
+    final TFLiteObjectDetectionAPIModel d =
+        (TFLiteObjectDetectionAPIModel)
+            create(
+                assetManager,
+                restricted ? manifest.getModel() : manifest.getFallbackModel(),
+                ASSET_PREFIX + (restricted ? manifest.getLabels() : manifest.getFallbackLabels()),
+                manifest.getInputSize(),
+                manifest.isQuantized());
+    // Harmless for the restricted model, whose labels are the allowed classes anyway.
+    d.setPostprocessConfig(PostprocessConfig.NONE.withAllowedLabels(manifest.getClasses()));
+    if (!restricted) {
+      d.modelDescription +=
+          String.format(
+              Locale.US,
+              " (%d of %d classes)",
+              manifest.getClasses().size(),
+              d.labels.size() - LABEL_OFFSET);
+    }
+    LOGGER.i("Loaded %s", d.modelDescription);
+    return d;
+  }
+
   /**
    * Initializes a native TensorFlow session for classifying images.
    *
@@ -105,7 +203,7 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
       throws IOException {
     final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
 
-    String actualFilename = labelFilename.split("file:///android_asset/")[1];
+    String actualFilename = labelFilename.split(ASSET_PREFIX)[1];
     InputStream labelsInput = assetManager.open(actualFilename);
     BufferedReader br = new BufferedReader(new InputStreamReader(labelsInput));
     String line;
@@ -118,7 +216,10 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     d.inputSize = inputSize;
 
     try {
-      d.tfLite = new Interpreter(loadModelFile(assetManager, modelFilename));
+      d.interpreters =
+          new InterpreterManager(
+              loadModelFile(assetManager, modelFilename),
+              new InterpreterConfig(NUM_THREADS, false, false));
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -134,105 +235,426 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     d.imgData = ByteBuffer.allocateDirect(d.inputSize * d.inputSize * 3 * numBytesPerChannel);
     d.imgData.order(ByteOrder.nativeOrder());
     d.intValues = new int[d.inputSize * d.inputSize];
+    d.preprocessor = BitmapPreprocessor.create(d.imgData, d.inputSize, isQuantized);
 
-    d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS];
-    d.outputScores = new float[1][NUM_DETECTIONS];
+    final int[] locationsShape = d.interpreters.getInterpreter().getOutputTensor(0).shape();
+    d.maxDetections = locationsShape.length == 3 ? locationsShape[1] : NUM_DETECTIONS;
+    d.modelDescription = modelFilename;
+    d.outputLocations = new float[1][d.maxDetections][4];
+    d.outputClasses = new float[1][d.maxDetections];
+    d.outputScores = new float[1][d.maxDetections];
     d.numDetections = new float[1];
+
+    d.inputArray = new Object[] {d.imgData};
+    d.outputMap = new HashMap<>();
+    d.outputMap.put(0, d.outputLocations);
+    d.outputMap.put(1, d.outputClasses);
+    d.outputMap.put(2, d.outputScores);
+    d.outputMap.put(3, d.numDetections);
+
+    d.recognitionPool = new Recognition[d.maxDetections];
+    d.recognitionIds = new String[d.maxDetections];
+    for (int i = 0; i < d.maxDetections; ++i) {
+      d.recognitionIds[i] = "" + i;
+      d.recognitionPool[i] = new Recognition(d.recognitionIds[i], null, 0.0f, new RectF());
+    }
+    d.recognitions = new ArrayList<>(d.maxDetections);
+    d.keptIndices = new int[d.maxDetections];
+    d.setPostprocessConfig(PostprocessConfig.NONE);
     return d;
   }
 
   @Override
+  @SuppressWarnings("deprecation")
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final int allocationsBefore = logStats ? Debug.getThreadAllocCount() : 0;
+
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
 
     Trace.beginSection("preprocessBitmap");
+    preprocess(bitmap);
+    Trace.endSection(); // preprocessBitmap
+
+    runInference(imgData, recognitionPool, recognitions);
+    Trace.endSection(); // "recognizeImage"
+
+    recordAllocations(allocationsBefore);
+    return recognitions;
+  }
+
+  /** Writes a bitmap to {@link #imgData}, and leaves it rewound. */
+  private void preprocess(final Bitmap bitmap) {
+    final long preprocessStartTime = System.nanoTime();
     // Preprocess the image data from 0-255 int to normalized float based
     // on the provided parameters.
     bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
 
     imgData.rewind();
-    for (int i = 0; i < inputSize; ++i) {
-      for (int j = 0; j < inputSize; ++j) {
-        int pixelValue = intValues[i * inputSize + j];
-        if (isModelQuantized) {
-          // Quantized model
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else { // Float model
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-        }
+    preprocessor.process(intValues, imgData);
+    imgData.rewind();
+    preprocessLatency.recordNanos(System.nanoTime() - preprocessStartTime);
+  }
+
+  @Override
+  public ByteBuffer getInputBuffer() {
+    return imgData;
+  }
+
+  @Override
+  public List<Recognition> recognizeInput() {
+    return recognizeInput(imgData);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public List<Recognition> recognizeInput(final ByteBuffer input) {
+    final int allocationsBefore = logStats ? Debug.getThreadAllocCount() : 0;
+
+    Trace.beginSection("recognizeInput");
+    runInference(input, recognitionPool, recognitions);
+    Trace.endSection(); // "recognizeInput"
+
+    recordAllocations(allocationsBefore);
+    return recognitions;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    final int allocationsBefore = logStats ? Debug.getThreadAllocCount() : 0;
+
+    Trace.beginSection("recognizeImages");
+    final int count = bitmaps.size();
+    prepareBatch(count);
+    if (count > 1 && setBatchSize(count)) {
+      Trace.beginSection("preprocessBitmap");
+      ensureBatchBuffers(count);
+      batchData.clear();
+      for (int b = 0; b < count; ++b) {
+        preprocess(bitmaps.get(b));
+        batchData.put(imgData);
+        imgData.rewind();
+      }
+      Trace.endSection(); // preprocessBitmap
+      runBatch(count);
+    } else {
+      for (int b = 0; b < count; ++b) {
+        preprocess(bitmaps.get(b));
+        runInference(imgData, slotPools.get(b), slotRecognitions.get(b));
       }
     }
-    Trace.endSection(); // preprocessBitmap
+    Trace.endSection(); // "recognizeImages"
+
+    recordAllocations(allocationsBefore);
+    return batchResults;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public List<List<Recognition>> recognizeInputs(final List<ByteBuffer> inputs) {
+    final int allocationsBefore = logStats ? Debug.getThreadAllocCount() : 0;
+
+    Trace.beginSection("recognizeInputs");
+    final int count = inputs.size();
+    prepareBatch(count);
+    if (count > 1 && setBatchSize(count)) {
+      ensureBatchBuffers(count);
+      batchData.clear();
+      for (int b = 0; b < count; ++b) {
+        final ByteBuffer input = inputs.get(b);
+        input.rewind();
+        batchData.put(input);
+        input.rewind();
+      }
+      runBatch(count);
+    } else {
+      for (int b = 0; b < count; ++b) {
+        runInference(inputs.get(b), slotPools.get(b), slotRecognitions.get(b));
+      }
+    }
+    Trace.endSection(); // "recognizeInputs"
+
+    recordAllocations(allocationsBefore);
+    return batchResults;
+  }
 
-    // Copy the input data into TensorFlow.
-    Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
+  /** Makes room for the results of {@code count} images in {@link #batchResults}. */
+  private void prepareBatch(final int count) {
+    while (slotRecognitions.size() < count) {
+      final Recognition[] pool = new Recognition[maxDetections];
+      for (int i = 0; i < maxDetections; ++i) {
+        pool[i] = new Recognition(recognitionIds[i], null, 0.0f, new RectF());
+      }
+      slotPools.add(pool);
+      slotRecognitions.add(new ArrayList<>(maxDetections));
+    }
+    batchResults.clear();
+    for (int b = 0; b < count; ++b) {
+      batchResults.add(slotRecognitions.get(b));
+    }
+  }
+
+  /** Allocates the batch input and outputs for {@code count} images, unless they already are. */
+  private void ensureBatchBuffers(final int count) {
+    if (count == batchBufferSize) {
+      return;
+    }
+    // The interpreter checks that buffers and arrays match its tensors exactly.
+    batchData = ByteBuffer.allocateDirect(count * imgData.capacity());
+    batchData.order(ByteOrder.nativeOrder());
+    batchLocations = new float[count][maxDetections][4];
+    batchClasses = new float[count][maxDetections];
+    batchScores = new float[count][maxDetections];
+    batchNumDetections = new float[count];
+    batchInputArray = new Object[] {batchData};
+    batchOutputMap = new HashMap<>();
+    batchOutputMap.put(0, batchLocations);
+    batchOutputMap.put(1, batchClasses);
+    batchOutputMap.put(2, batchScores);
+    batchOutputMap.put(3, batchNumDetections);
+    batchBufferSize = count;
+  }
+
+  /**
+   * Resizes the input of the current interpreter to a batch of {@code batch} images if needed,
+   * and returns whether the interpreter takes that batch size now. Once resizing has failed,
+   * batches are not tried again.
+   */
+  private boolean setBatchSize(final int batch) {
+    // Pick up an interpreter rebuilt with new settings before resizing it.
+    if (interpreters.swapIfReady()) {
+      resetLatencies();
+    }
+    final Interpreter interpreter = interpreters.getInterpreter();
+    if (interpreter != batchInterpreter) {
+      // Interpreters are built for single images.
+      batchInterpreter = interpreter;
+      interpreterBatchSize = 1;
+    }
+    if (batch == interpreterBatchSize) {
+      return true;
+    }
+    if (batch > 1 && !batchSupported) {
+      return false;
+    }
+    try {
+      resizeInput(interpreter, batch);
+      if (interpreter.getOutputTensor(0).shape()[0] != batch) {
+        throw new IllegalStateException("output batch size is fixed");
+      }
+      interpreterBatchSize = batch;
+      return true;
+    } catch (final RuntimeException e) {
+      LOGGER.w("%s cannot run batches, running images one by one: %s", modelDescription, e);
+      batchSupported = false;
+      resizeInput(interpreter, 1);
+      interpreterBatchSize = 1;
+      return false;
+    }
+  }
+
+  private void resizeInput(final Interpreter interpreter, final int batch) {
+    interpreter.resizeInput(0, new int[] {batch, inputSize, inputSize, 3});
+    interpreter.allocateTensors();
+  }
+
+  /** Runs the batch in {@link #batchData} and fills the results of each of its images. */
+  private void runBatch(final int count) {
+    Trace.beginSection("run");
+    final long runStartTime = System.nanoTime();
+    interpreters.getInterpreter().runForMultipleInputsOutputs(batchInputArray, batchOutputMap);
+    batchRunLatency.recordNanos(System.nanoTime() - runStartTime);
+    lastBatchSize = count;
     Trace.endSection();
 
+    for (int b = 0; b < count; ++b) {
+      decode(
+          batchLocations[b],
+          batchClasses[b],
+          batchScores[b],
+          batchNumDetections[b],
+          slotPools.get(b),
+          slotRecognitions.get(b));
+    }
+  }
+
+  /** Runs the interpreter on a single input and fills {@code results} from {@code pool}. */
+  private void runInference(
+      final ByteBuffer input, final Recognition[] pool, final List<Recognition> results) {
+    // Pick up an interpreter rebuilt with new settings, now that the old one is idle, and undo a
+    // batch size left from a batch.
+    setBatchSize(1);
+
     // Run the inference call.
     Trace.beginSection("run");
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    final long runStartTime = System.nanoTime();
+    inputArray[0] = input;
+    interpreters.getInterpreter().runForMultipleInputsOutputs(inputArray, outputMap);
+    runLatency.recordNanos(System.nanoTime() - runStartTime);
     Trace.endSection();
 
-    // Show the best detections.
-    // after scaling them back to the input size.
-    final ArrayList<Recognition> recognitions = new ArrayList<>(NUM_DETECTIONS);
-    for (int i = 0; i < NUM_DETECTIONS; ++i) {
-      final RectF detection =
-          new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);
-      // SSD Mobilenet V1 Model assumes class 0 is background class
-      // in label file and class labels start from 1 to number_of_classes+1,
-      // while outputClasses correspond to class index from 0 to number_of_classes
-      int labelOffset = 1;
-      recognitions.add(
-          new Recognition(
-              "" + i,
-              labels.get((int) outputClasses[0][i] + labelOffset),
-              outputScores[0][i],
-              detection));
+    decode(outputLocations[0], outputClasses[0], outputScores[0], numDetections[0], pool, results);
+  }
+
+  /**
+   * Filters the raw output of one image, then shows the best detections after scaling them back
+   * to the input size.
+   */
+  private void decode(
+      final float[][] locations,
+      final float[] classes,
+      final float[] scores,
+      final float numDetections,
+      final Recognition[] pool,
+      final List<Recognition> results) {
+    final long decodeStartTime = System.nanoTime();
+    final int count = Math.min(maxDetections, (int) numDetections);
+    final int kept = postprocessor.filter(locations, classes, scores, count, keptIndices);
+    results.clear();
+    for (int k = 0; k < kept; ++k) {
+      final int i = keptIndices[k];
+      final Recognition recognition = pool[k];
+      final int classIndex = (int) classes[i];
+      recognition.set(
+          recognitionIds[i],
+          labels.get(classIndex + LABEL_OFFSET),
+          classIndex,
+          scores[i],
+          locations[i][1] * inputSize,
+          locations[i][0] * inputSize,
+          locations[i][3] * inputSize,
+          locations[i][2] * inputSize);
+      results.add(recognition);
+    }
+    decodeLatency.recordNanos(System.nanoTime() - decodeStartTime);
+  }
+
+  @SuppressWarnings("deprecation")
+  private void recordAllocations(final int allocationsBefore) {
+    if (logStats) {
+      lastFrameAllocations = Debug.getThreadAllocCount() - allocationsBefore;
+      // The first frames pay for lazy interpreter setup, so only steady state counts.
+      if (++framesRecognized > 1) {
+        maxFrameAllocations = Math.max(maxFrameAllocations, lastFrameAllocations);
+      }
     }
-    Trace.endSection(); // "recognizeImage"
-    return recognitions;
   }
 
   @Override
-  public void enableStatLogging(final boolean logStats) {}
+  @SuppressWarnings("deprecation")
+  public void enableStatLogging(final boolean logStats) {
+    if (logStats == this.logStats) {
+      return;
+    }
+    this.logStats = logStats;
+    if (logStats) {
+      framesRecognized = 0;
+      lastFrameAllocations = 0;
+      maxFrameAllocations = 0;
+      Debug.resetThreadAllocCount();
+      Debug.startAllocCounting();
+    } else {
+      Debug.stopAllocCounting();
+    }
+  }
 
+  /**
+   * Returns the loaded model and latency histograms of bitmap preprocessing, the interpreter run
+   * and output decoding, plus allocation counts while stat logging is enabled. Histograms restart
+   * whenever a rebuilt interpreter is swapped in, so they always describe the current thread and
+   * NNAPI settings.
+   */
   @Override
   public String getStatString() {
-    return "";
+    final StringBuilder builder = new StringBuilder();
+    builder.append("model: ").append(modelDescription).append('\n');
+    if (preprocessLatency.getCount() > 0) {
+      builder.append("preprocess: ").append(preprocessLatency.getStatString()).append('\n');
+    }
+    builder.append("run: ").append(runLatency.getStatString()).append('\n');
+    builder.append("decode: ").append(decodeLatency.getStatString());
+    if (batchRunLatency.getCount() > 0) {
+      builder
+          .append(String.format(Locale.US, "\nbatch run (%d images): ", lastBatchSize))
+          .append(batchRunLatency.getStatString());
+    } else if (!batchSupported) {
+      builder.append("\nbatches: run image by image");
+    }
+    if (logStats) {
+      builder.append(
+          String.format(
+              Locale.US,
+              "\nallocations/frame: %d (max %d after warm-up)",
+              lastFrameAllocations,
+              maxFrameAllocations));
+    }
+    return builder.toString();
+  }
+
+  /** Returns the size of the output tensors, which the interpreter fills on every run. */
+  int getOutputBytes() {
+    int bytes = 0;
+    for (int i = 0; i < outputMap.size(); ++i) {
+      bytes += interpreters.getInterpreter().getOutputTensor(i).numBytes();
+    }
+    return bytes;
+  }
+
+  private void resetLatencies() {
+    preprocessLatency.reset();
+    runLatency.reset();
+    decodeLatency.reset();
+    batchRunLatency.reset();
+  }
+
+  @Override
+  public void close() {
+    interpreters.close();
+  }
+
+  @Override
+  public List<String> getLabels() {
+    return Collections.unmodifiableList(labels.subList(LABEL_OFFSET, labels.size()));
   }
 
   @Override
-  public void close() {}
+  public void setPostprocessConfig(final PostprocessConfig config) {
+    postprocessor = new DetectionPostprocessor(config, labels, LABEL_OFFSET, maxDetections);
+  }
+
+  @Override
+  public PostprocessConfig getPostprocessConfig() {
+    return postprocessor.getConfig();
+  }
 
+  @Override
   public void setNumThreads(int num_threads) {
-    if (tfLite != null) tfLite.setNumThreads(num_threads);
+    interpreters.setNumThreads(num_threads);
   }
 
   @Override
   public void setUseNNAPI(boolean isChecked) {
-    if (tfLite != null) tfLite.setUseNNAPI(isChecked);
+    interpreters.setUseNNAPI(isChecked);
+  }
+
+  @Override
+  public void setAllowFp16(final boolean allowFp16) {
+    interpreters.setAllowFp16(allowFp16);
+  }
+
+  @Override
+  public int tuneNumThreads(final int maxThreads, final AtomicBoolean cancelled) {
+    final ThreadCountTuner tuner = new ThreadCountTuner(TUNING_WARMUP_RUNS, TUNING_TIMED_RUNS);
+    final InterpreterConfig config =
+        tuner.tune(
+            interpreters,
+            ThreadCountTuner.getDefaultCandidates(maxThreads),
+            interpreter -> {
+              inputArray[0] = imgData;
+              interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+            },
+            cancelled);
+    return config.getNumThreads();
   }
 }
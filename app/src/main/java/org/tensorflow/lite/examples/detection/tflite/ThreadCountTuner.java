@@ -0,0 +1,147 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.os.Trace;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Finds the fastest thread count for a model on this device by building an interpreter for each
+ * candidate and timing a few runs of it. The winner is handed to the {@link InterpreterManager},
+ * so tuning never reconfigures the interpreter in use.
+ *
+ * <p>Runs are timed on the calling thread. Tuning from the inference thread keeps the
+ * measurements from competing with live inference. Tuning can take seconds on a slow device, so
+ * it can be cancelled, for instance when the activity pauses: the flag is checked before every
+ * run, so cancelling waits for at most one run.
+ */
+public class ThreadCountTuner {
+  private static final Logger LOGGER = new Logger();
+
+  /** Runs the model once on some representative input. */
+  public interface Runner {
+    void run(Interpreter interpreter);
+  }
+
+  private final int warmupRuns;
+  private final int timedRuns;
+
+  public ThreadCountTuner(final int warmupRuns, final int timedRuns) {
+    this.warmupRuns = warmupRuns;
+    this.timedRuns = timedRuns;
+  }
+
+  /**
+   * Returns thread counts worth trying on this device: powers of two below the number of cores,
+   * plus the number of cores itself, capped at {@code maxThreads}.
+   */
+  public static int[] getDefaultCandidates(final int maxThreads) {
+    final int cores = Runtime.getRuntime().availableProcessors();
+    final int limit = Math.max(1, Math.min(maxThreads, cores));
+    final int[] candidates = new int[32];
+    int count = 0;
+    for (int numThreads = 1; numThreads < limit; numThreads *= 2) {
+      candidates[count++] = numThreads;
+    }
+    candidates[count++] = limit;
+    return Arrays.copyOf(candidates, count);
+  }
+
+  /**
+   * Times each candidate thread count with the rest of the manager's requested configuration and
+   * installs the fastest.
+   *
+   * @param cancelled Once set, tuning stops before the next run and installs nothing.
+   * @return The configuration that was installed.
+   * @throws CancellationException If tuning was cancelled.
+   */
+  public InterpreterConfig tune(
+      final InterpreterManager manager,
+      final int[] candidates,
+      final Runner runner,
+      final AtomicBoolean cancelled) {
+    Trace.beginSection("tuneThreads");
+    final InterpreterConfig base = manager.getRequestedConfig();
+    Interpreter best = null;
+    InterpreterConfig bestConfig = base;
+    long bestNs = Long.MAX_VALUE;
+    try {
+      for (final int numThreads : candidates) {
+        checkCancelled(cancelled);
+        final InterpreterConfig config = base.withNumThreads(numThreads);
+        final Interpreter interpreter = manager.build(config);
+        final long medianNs;
+        try {
+          medianNs = measure(interpreter, runner, cancelled);
+        } catch (final RuntimeException e) {
+          interpreter.close();
+          throw e;
+        }
+        LOGGER.i("%s: %.1f ms", config, medianNs / 1e6);
+        if (medianNs < bestNs) {
+          if (best != null) {
+            best.close();
+          }
+          best = interpreter;
+          bestConfig = config;
+          bestNs = medianNs;
+        } else {
+          interpreter.close();
+        }
+      }
+    } catch (final RuntimeException e) {
+      if (best != null) {
+        best.close();
+      }
+      throw e;
+    } finally {
+      Trace.endSection();
+    }
+
+    if (best != null) {
+      LOGGER.i("Fastest: %s", bestConfig);
+      manager.install(best, bestConfig);
+    }
+    return bestConfig;
+  }
+
+  private long measure(
+      final Interpreter interpreter, final Runner runner, final AtomicBoolean cancelled) {
+    for (int i = 0; i < warmupRuns; ++i) {
+      checkCancelled(cancelled);
+      runner.run(interpreter);
+    }
+    final long[] times = new long[timedRuns];
+    for (int i = 0; i < timedRuns; ++i) {
+      checkCancelled(cancelled);
+      final long startTime = System.nanoTime();
+      runner.run(interpreter);
+      times[i] = System.nanoTime() - startTime;
+    }
+    Arrays.sort(times);
+    return times[timedRuns / 2];
+  }
+
+  private static void checkCancelled(final AtomicBoolean cancelled) {
+    if (cancelled.get()) {
+      throw new CancellationException("Thread count tuning cancelled");
+    }
+  }
+}
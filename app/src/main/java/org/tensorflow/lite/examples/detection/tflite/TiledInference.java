@@ -0,0 +1,241 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.env.YuvInputConverter;
+
+/**
+ * Runs the detector on overlapping tiles of the frame as well as on the whole frame, so that
+ * objects too small to survive scaling the whole frame down to the model input are still found.
+ *
+ * <p>The frame is split into a grid of tiles with the aspect ratio of the frame, overlapping by a
+ * fraction of their size so that an object on a border is whole in at least one tile. Each tile
+ * is converted to its own model input buffer, which is reused from frame to frame, and the tiles
+ * are detected in one batch with the whole frame. The batch size is then the same for every frame,
+ * so a model that runs batches is never resized between the frame and its tiles, which would also
+ * prepare any delegate again. Only the classes tiling is enabled for are
+ * taken from tiles; the rest come from the whole frame alone. The detections of all tiles and the
+ * whole frame are then merged with non-maximum suppression across tiles: of two detections of the
+ * same class, the weaker is dropped if they overlap, or if most of it lies inside the other, as
+ * happens to an object cut off by a tile border.
+ */
+public class TiledInference {
+  private final List<YuvInputConverter> converters = new ArrayList<>();
+  private final List<Matrix> cropToFrameTransforms = new ArrayList<>();
+  private final Set<String> classes;
+  private final float iouThreshold;
+  private final float containmentThreshold;
+  private final LatencyHistogram convertLatency = new LatencyHistogram();
+  private final LatencyHistogram inferenceLatency = new LatencyHistogram();
+
+  /**
+   * @param columns Number of tiles across the frame.
+   * @param rows Number of tiles down the frame.
+   * @param overlap Fraction of a tile's width and height it shares with its neighbours.
+   * @param classes Labels of the classes taken from tiles.
+   * @param iouThreshold Overlap above which the weaker of two detections of a class is dropped.
+   * @param containmentThreshold Fraction of the weaker detection inside the stronger one above
+   *     which it is dropped.
+   */
+  public TiledInference(
+      final int frameWidth,
+      final int frameHeight,
+      final int inputSize,
+      final int rotation,
+      final boolean maintainAspectRatio,
+      final boolean quantized,
+      final int columns,
+      final int rows,
+      final float overlap,
+      final Set<String> classes,
+      final float iouThreshold,
+      final float containmentThreshold) {
+    this.classes = Collections.unmodifiableSet(new HashSet<>(classes));
+    this.iouThreshold = iouThreshold;
+    this.containmentThreshold = containmentThreshold;
+
+    final int tileWidth = Math.round(frameWidth / (columns - (columns - 1) * overlap));
+    final int tileHeight = Math.round(frameHeight / (rows - (rows - 1) * overlap));
+    for (int row = 0; row < rows; ++row) {
+      for (int column = 0; column < columns; ++column) {
+        final int left = offset(column, columns, frameWidth, tileWidth);
+        final int top = offset(row, rows, frameHeight, tileHeight);
+        converters.add(
+            new YuvInputConverter(
+                frameWidth,
+                frameHeight,
+                left,
+                top,
+                tileWidth,
+                tileHeight,
+                inputSize,
+                inputSize,
+                rotation,
+                maintainAspectRatio,
+                quantized,
+                YuvInputConverter.Sampling.NEAREST));
+
+        final Matrix cropToFrame = new Matrix();
+        ImageUtils.getTransformationMatrix(
+                tileWidth, tileHeight, inputSize, inputSize, rotation, maintainAspectRatio)
+            .invert(cropToFrame);
+        cropToFrame.postTranslate(left, top);
+        cropToFrameTransforms.add(cropToFrame);
+      }
+    }
+  }
+
+  /** Left or top edge of a tile, spreading the tiles evenly from one edge to the other. */
+  private static int offset(final int index, final int count, final int frameSize, final int size) {
+    return count > 1 ? Math.round(index * (frameSize - size) / (float) (count - 1)) : 0;
+  }
+
+  public int getTileCount() {
+    return converters.size();
+  }
+
+  /** Converts tile {@code index} of the current frame. */
+  public YuvInputConverter getConverter(final int index) {
+    return converters.get(index);
+  }
+
+  /** Allocates one model input buffer per tile. */
+  public ByteBuffer[] allocateInputs() {
+    final ByteBuffer[] inputs = new ByteBuffer[converters.size()];
+    for (int i = 0; i < inputs.length; ++i) {
+      inputs[i] =
+          ByteBuffer.allocateDirect(converters.get(i).getOutputByteSize())
+              .order(ByteOrder.nativeOrder());
+    }
+    return inputs;
+  }
+
+  /** Records how long converting the tiles of one frame took. */
+  public void recordConvertLatency(final long latencyNs) {
+    convertLatency.recordNanos(latencyNs);
+  }
+
+  /**
+   * Runs the detector on the whole frame and its converted tiles as one batch, and adds the
+   * detections of the classes taken from tiles to {@code results}, in frame coordinates.
+   *
+   * @param frameInput Model input of the whole frame.
+   * @param tileInputs Model inputs of the tiles, from {@link #allocateInputs}.
+   * @return Detections of the whole frame, in model input coordinates, as returned by the
+   *     detector: they are reused by its next call.
+   */
+  public List<Classifier.Recognition> detect(
+      final Classifier detector,
+      final ByteBuffer frameInput,
+      final ByteBuffer[] tileInputs,
+      final List<Classifier.Recognition> results) {
+    final long startTime = System.nanoTime();
+    final List<ByteBuffer> inputs = new ArrayList<>(tileInputs.length + 1);
+    inputs.add(frameInput);
+    inputs.addAll(Arrays.asList(tileInputs));
+    final List<List<Classifier.Recognition>> batchResults = detector.recognizeInputs(inputs);
+    for (int i = 0; i < tileInputs.length; ++i) {
+      // The detector reuses its results on the next call, so new ones are made.
+      for (final Classifier.Recognition result : batchResults.get(i + 1)) {
+        if (result.getLocation() == null || !classes.contains(result.getTitle())) {
+          continue;
+        }
+        final RectF location = result.getLocation();
+        cropToFrameTransforms.get(i).mapRect(location);
+        results.add(
+            new Classifier.Recognition(
+                result.getId(),
+                result.getTitle(),
+                result.getClassIndex(),
+                result.getConfidence(),
+                location));
+      }
+    }
+    inferenceLatency.recordNanos(System.nanoTime() - startTime);
+    return batchResults.get(0);
+  }
+
+  /**
+   * Merges the detections of the whole frame and the tiles, best first.
+   *
+   * @param maxResults Most detections kept.
+   */
+  public List<Classifier.Recognition> merge(
+      final List<Classifier.Recognition> results, final int maxResults) {
+    final List<Classifier.Recognition> sorted = new ArrayList<>(results);
+    Collections.sort(sorted, (lhs, rhs) -> Float.compare(rhs.getConfidence(), lhs.getConfidence()));
+    final List<Classifier.Recognition> kept = new ArrayList<>();
+    for (final Classifier.Recognition candidate : sorted) {
+      if (kept.size() >= maxResults) {
+        break;
+      }
+      boolean suppressed = false;
+      for (final Classifier.Recognition stronger : kept) {
+        if (stronger.getClassIndex() == candidate.getClassIndex()
+            && suppresses(stronger.getLocation(), candidate.getLocation())) {
+          suppressed = true;
+          break;
+        }
+      }
+      if (!suppressed) {
+        kept.add(candidate);
+      }
+    }
+    return kept;
+  }
+
+  private boolean suppresses(final RectF stronger, final RectF weaker) {
+    final float intersectionWidth =
+        Math.min(stronger.right, weaker.right) - Math.max(stronger.left, weaker.left);
+    final float intersectionHeight =
+        Math.min(stronger.bottom, weaker.bottom) - Math.max(stronger.top, weaker.top);
+    if (intersectionWidth <= 0 || intersectionHeight <= 0) {
+      return false;
+    }
+    final float intersection = intersectionWidth * intersectionHeight;
+    final float strongerArea = stronger.width() * stronger.height();
+    final float weakerArea = weaker.width() * weaker.height();
+    return intersection / (strongerArea + weakerArea - intersection) > iouThreshold
+        || intersection / weakerArea > containmentThreshold;
+  }
+
+  /**
+   * Returns the tile layout, what converting the tiles costs on top of the whole frame, and how
+   * long detecting the frame and its tiles takes.
+   */
+  public String getStatString() {
+    return String.format(
+        Locale.US,
+        "tiles: %d for %s, +%.1f ms convert, %.1f ms batch inference (p50)",
+        converters.size(),
+        classes,
+        convertLatency.getPercentileMicros(50) / 1000.0,
+        inferenceLatency.getPercentileMicros(50) / 1000.0);
+  }
+}
@@ -0,0 +1,132 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+
+/**
+ * Constant-velocity Kalman filter over a bounding box. The centre and size of the box are filtered
+ * independently, each as a position with a velocity, which keeps every step a handful of float
+ * operations and needs no matrix library. Noise is scaled by the size of the box, so small and
+ * large objects are smoothed alike.
+ */
+class KalmanBoxFilter {
+  // Centre x, centre y, width, height.
+  private static final int DIMENSIONS = 4;
+  // Measurement noise, as a fraction of the box size.
+  private static final float MEASUREMENT_NOISE = 0.05f;
+  // Random acceleration, in box sizes per second squared.
+  private static final float ACCELERATION_NOISE = 2.0f;
+  // Initial velocity uncertainty, in box sizes per second.
+  private static final float INITIAL_VELOCITY_NOISE = 1.0f;
+
+  private final float[] position = new float[DIMENSIONS];
+  private final float[] velocity = new float[DIMENSIONS];
+  // Covariance of each dimension: var(position), cov(position, velocity), var(velocity).
+  private final float[] positionVariance = new float[DIMENSIONS];
+  private final float[] covariance = new float[DIMENSIONS];
+  private final float[] velocityVariance = new float[DIMENSIONS];
+  private final float[] measurement = new float[DIMENSIONS];
+
+  KalmanBoxFilter(final RectF box) {
+    toMeasurement(box, position);
+    final float scale = Math.max(box.width(), box.height());
+    final float positionNoise = MEASUREMENT_NOISE * scale;
+    final float velocityNoise = INITIAL_VELOCITY_NOISE * scale;
+    for (int i = 0; i < DIMENSIONS; ++i) {
+      positionVariance[i] = positionNoise * positionNoise;
+      velocityVariance[i] = velocityNoise * velocityNoise;
+    }
+  }
+
+  private static void toMeasurement(final RectF box, final float[] out) {
+    out[0] = box.centerX();
+    out[1] = box.centerY();
+    out[2] = box.width();
+    out[3] = box.height();
+  }
+
+  private float getScale() {
+    return Math.max(position[2], position[3]);
+  }
+
+  /** Advances the state by {@code dt} seconds. */
+  void predict(final float dt) {
+    if (dt <= 0) {
+      return;
+    }
+    final float accelerationNoise = ACCELERATION_NOISE * getScale();
+    final float q = accelerationNoise * accelerationNoise;
+    for (int i = 0; i < DIMENSIONS; ++i) {
+      position[i] += velocity[i] * dt;
+      final float c = velocityVariance[i];
+      final float b = covariance[i];
+      positionVariance[i] += dt * (2 * b + dt * c) + q * dt * dt * dt / 3;
+      covariance[i] = b + dt * c + q * dt * dt / 2;
+      velocityVariance[i] = c + q * dt;
+    }
+  }
+
+  /** Corrects the state with a detected box. */
+  void update(final RectF box) {
+    toMeasurement(box, measurement);
+    final float measurementNoise = MEASUREMENT_NOISE * Math.max(box.width(), box.height());
+    final float r = measurementNoise * measurementNoise;
+    for (int i = 0; i < DIMENSIONS; ++i) {
+      final float a = positionVariance[i];
+      final float b = covariance[i];
+      final float s = a + r;
+      final float positionGain = a / s;
+      final float velocityGain = b / s;
+      final float innovation = measurement[i] - position[i];
+      position[i] += positionGain * innovation;
+      velocity[i] += velocityGain * innovation;
+      positionVariance[i] = (1 - positionGain) * a;
+      covariance[i] = (1 - positionGain) * b;
+      velocityVariance[i] -= velocityGain * b;
+    }
+  }
+
+  /** Scales the state to frames resized by the given factors. */
+  void scale(final float scaleX, final float scaleY) {
+    for (int i = 0; i < DIMENSIONS; ++i) {
+      final float factor = i % 2 == 0 ? scaleX : scaleY;
+      position[i] *= factor;
+      velocity[i] *= factor;
+      positionVariance[i] *= factor * factor;
+      covariance[i] *= factor * factor;
+      velocityVariance[i] *= factor * factor;
+    }
+  }
+
+  /**
+   * Copies the state to {@code out} from {@code offset}: centre x, centre y, width and height,
+   * then the velocity of each.
+   */
+  void getState(final float[] out, final int offset) {
+    System.arraycopy(position, 0, out, offset, DIMENSIONS);
+    System.arraycopy(velocity, 0, out, offset + DIMENSIONS, DIMENSIONS);
+  }
+
+  /** Writes the box the state predicts {@code dt} seconds ahead, without changing the state. */
+  void getBox(final float dt, final float minSize, final RectF out) {
+    final float halfWidth = Math.max(minSize, position[2] + velocity[2] * dt) / 2;
+    final float halfHeight = Math.max(minSize, position[3] + velocity[3] * dt) / 2;
+    final float centerX = position[0] + velocity[0] * dt;
+    final float centerY = position[1] + velocity[1] * dt;
+    out.set(centerX - halfWidth, centerY - halfHeight, centerX + halfWidth, centerY + halfHeight);
+  }
+}
@@ -0,0 +1,147 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Locale;
+
+/**
+ * Decides when the label shown to the user should follow the detector's top result. Detection can
+ * run as fast as the model allows while the label only changes when:
+ *
+ * <ul>
+ *   <li>a new class has been the top result for {@code confirmFrames} consecutive updates,
+ *   <li>at least {@code minIntervalMs} have passed since the last change, and
+ *   <li>its confidence reaches {@code showThreshold}. A class already shown stays up as long as it
+ *       keeps {@code hideThreshold}, which should be lower, so it does not flicker around a
+ *       single cut-off. This holds whether or not it is still the top result: another class that
+ *       tops it without reaching {@code showThreshold} does not take the label down.
+ * </ul>
+ *
+ * <p>Updates never block; a suppressed change is simply re-evaluated on the next update.
+ */
+public class LabelThrottle {
+  private final long minIntervalMs;
+  private final int confirmFrames;
+  private final float showThreshold;
+  private final float hideThreshold;
+
+  private String label;
+  private String pendingLabel;
+  private int pendingCount;
+  private long lastChangeMs = Long.MIN_VALUE / 2;
+
+  private long updateCount;
+  private long changeCount;
+  private long suppressedCount;
+
+  public LabelThrottle(
+      final long minIntervalMs,
+      final int confirmFrames,
+      final float showThreshold,
+      final float hideThreshold) {
+    if (hideThreshold > showThreshold) {
+      throw new IllegalArgumentException(
+          "hideThreshold " + hideThreshold + " is above showThreshold " + showThreshold);
+    }
+    this.minIntervalMs = minIntervalMs;
+    this.confirmFrames = Math.max(1, confirmFrames);
+    this.showThreshold = showThreshold;
+    this.hideThreshold = hideThreshold;
+  }
+
+  /**
+   * Offers the top result of one detection pass, for a pass in which the shown class, if any, was
+   * only recognized if it is the top result.
+   *
+   * @param title Title of the most confident recognition, or null if nothing was recognized.
+   * @param confidence Confidence of that recognition.
+   * @param timestampMs Current time, e.g. from {@link android.os.SystemClock#uptimeMillis()}.
+   * @return Whether {@link #getLabel()} changed.
+   */
+  public synchronized boolean update(
+      final String title, final float confidence, final long timestampMs) {
+    return update(
+        title, confidence, title != null && title.equals(label) ? confidence : 0.0f, timestampMs);
+  }
+
+  /**
+   * Offers the top result of one detection pass.
+   *
+   * @param title Title of the most confident recognition, or null if nothing was recognized.
+   * @param confidence Confidence of that recognition.
+   * @param labelConfidence Confidence of the class shown now, see {@link #getLabel()}, in the same
+   *     pass, or 0 if it was not recognized.
+   * @param timestampMs Current time, e.g. from {@link android.os.SystemClock#uptimeMillis()}.
+   * @return Whether {@link #getLabel()} changed.
+   */
+  public synchronized boolean update(
+      final String title,
+      final float confidence,
+      final float labelConfidence,
+      final long timestampMs) {
+    ++updateCount;
+
+    String candidate = null;
+    if (title != null && !title.equals(label) && confidence >= showThreshold) {
+      candidate = title;
+    } else if (label != null && labelConfidence >= hideThreshold) {
+      candidate = label;
+    }
+
+    if (equal(candidate, label)) {
+      pendingLabel = null;
+      pendingCount = 0;
+      return false;
+    }
+
+    if (pendingCount > 0 && equal(candidate, pendingLabel)) {
+      ++pendingCount;
+    } else {
+      pendingLabel = candidate;
+      pendingCount = 1;
+    }
+
+    if (pendingCount < confirmFrames || timestampMs - lastChangeMs < minIntervalMs) {
+      ++suppressedCount;
+      return false;
+    }
+
+    label = candidate;
+    lastChangeMs = timestampMs;
+    pendingLabel = null;
+    pendingCount = 0;
+    ++changeCount;
+    return true;
+  }
+
+  private static boolean equal(final String a, final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  /** Returns the label to show, or null if no class should be shown. */
+  public synchronized String getLabel() {
+    return label;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.US,
+        "label updates: %d, changes: %d, suppressed: %d",
+        updateCount,
+        changeCount,
+        suppressedCount);
+  }
+}
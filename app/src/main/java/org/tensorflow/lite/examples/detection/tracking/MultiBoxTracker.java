@@ -17,25 +17,49 @@ package org.tensorflow.lite.examples.detection.tracking;
 
 import android.content.Context;
 import android.graphics.*;
-import android.graphics.Paint.Cap;
-import android.graphics.Paint.Join;
-import android.graphics.Paint.Style;
-import android.text.TextUtils;
-import android.util.Pair;
+import android.os.SystemClock;
 import android.util.TypedValue;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
 import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 
-/** A tracker that handles non-max suppression and matches existing objects to new detections. */
+/**
+ * A tracker that matches existing objects to new detections.
+ *
+ * <p>Each detection is associated with the track whose predicted box it overlaps most, greedily
+ * by IoU, so tracks keep their id and color while the object stays in view. Track boxes follow a
+ * constant-velocity Kalman filter; between detections they are drawn where the filter predicts
+ * them, which keeps them moving smoothly even when the detector runs well below the display rate.
+ * Tracks that go unmatched for a while are dropped.
+ *
+ * <p>On frames the detector skips, {@link #trackFrame} follows the content of each track on the
+ * luminance plane with a {@link TemplateMatcher} and feeds the result to its filter, so boxes stay
+ * on their objects between detections rather than only extrapolating.
+ */
 public class MultiBoxTracker {
   private static final float TEXT_SIZE_DIP = 18;
   private static final float MIN_SIZE = 16.0f;
+  // Least overlap between a track and a detection for the detection to continue the track.
+  private static final float MIN_IOU = 0.3f;
+  // Detections a track needs before it is shown, so one-off false positives never appear.
+  private static final int MIN_HITS = 2;
+  // A track that goes unmatched for this long is dropped.
+  private static final long MAX_TRACK_AGE_MS = 1000;
+  // Boxes are not extrapolated further than this past their last detection.
+  private static final long MAX_PREDICTION_MS = 500;
+  // Detections in a row of another class before a track takes on that class.
+  private static final int TITLE_SWITCH_FRAMES = 3;
+  // Weight of a new detection in the confidence of its track.
+  private static final float CONFIDENCE_SMOOTHING = 0.5f;
+  // A template match worse than this, in mean luminance levels, counts as having lost the object.
+  private static final float MAX_MATCH_COST = 24.0f;
   private static final int[] COLORS = {
     Color.BLUE,
     Color.RED,
@@ -53,15 +77,18 @@ public class MultiBoxTracker {
     Color.parseColor("#AA33AA"),
     Color.parseColor("#0D0068")
   };
-  final List<Pair<Float, RectF>> screenRects = new LinkedList<>();
   private final Logger logger = new Logger();
-  private final List<TrackedRecognition> trackedObjects = new LinkedList<>();
-  private final Paint boxPaint = new Paint();
-  private final BorderedText borderedText;
-  private Matrix frameToCanvasMatrix;
+  private final List<TrackedRecognition> trackedObjects = new ArrayList<>();
+  private final List<Recognition> detections = new ArrayList<>();
+  private final RectF matchRect = new RectF();
+  private final TrackOverlayRenderer renderer;
+  // Results of the last detected frame, shown by the debug overlay.
+  private List<Recognition> lastResults;
   private int frameWidth;
   private int frameHeight;
   private int sensorOrientation;
+  private int configuration;
+  private int nextTrackId;
 
   public MultiBoxTracker(final Context context) {
     for (final int color : COLORS) {
@@ -69,138 +96,363 @@ public class MultiBoxTracker {
       availableColors.add(color);
     }
 
-    boxPaint.setColor(Color.RED);
-    boxPaint.setStyle(Style.STROKE);
-    boxPaint.setStrokeWidth(10.0f);
-    boxPaint.setStrokeCap(Cap.ROUND);
-    boxPaint.setStrokeJoin(Join.ROUND);
-    boxPaint.setStrokeMiter(100);
-
     float textSizePx = TypedValue.applyDimension(
             TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, context.getResources().getDisplayMetrics());
-    borderedText = new BorderedText(textSizePx);
+    renderer =
+        new TrackOverlayRenderer(
+            COLORS.length, MIN_SIZE, MAX_PREDICTION_MS, new BorderedText(textSizePx));
   }
 
+  /**
+   * Sets the size and orientation of the frames tracked. Tracks from frames of another size are
+   * scaled to the new size; their templates are sampled again from the next frame.
+   *
+   * @param configuration Identifies the configuration; detections made for any other one are
+   *     rejected by {@link #trackResults}.
+   */
   public synchronized void setFrameConfiguration(
-      final int width, final int height, final int sensorOrientation) {
+      final int width, final int height, final int sensorOrientation, final int configuration) {
+    if (frameWidth > 0 && frameHeight > 0 && (width != frameWidth || height != frameHeight)) {
+      final float scaleX = width / (float) frameWidth;
+      final float scaleY = height / (float) frameHeight;
+      for (final TrackedRecognition track : trackedObjects) {
+        track.filter.scale(scaleX, scaleY);
+        track.filter.getBox(0, MIN_SIZE, track.location);
+        track.matcher.invalidate();
+      }
+    }
     frameWidth = width;
     frameHeight = height;
     this.sensorOrientation = sensorOrientation;
+    this.configuration = configuration;
+    publish();
   }
 
-  public synchronized void drawDebug(final Canvas canvas) {
-    final Paint textPaint = new Paint();
-    textPaint.setColor(Color.WHITE);
-    textPaint.setTextSize(60.0f);
+  /**
+   * Draws the detections of the last detected frame. Like {@link #draw}, this draws the last
+   * published state and does not wait for the tracks to be updated.
+   */
+  public void drawDebug(final Canvas canvas) {
+    renderer.drawDebug(canvas);
+  }
 
-    final Paint boxPaint = new Paint();
-    boxPaint.setColor(Color.RED);
-    boxPaint.setAlpha(200);
-    boxPaint.setStyle(Style.STROKE);
+  public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
+    trackResults(results, timestamp, SystemClock.uptimeMillis(), configuration);
+  }
 
-    for (final Pair<Float, RectF> detection : screenRects) {
-      final RectF rect = detection.second;
-      canvas.drawRect(rect, boxPaint);
-      canvas.drawText("" + detection.first, rect.left, rect.top, textPaint);
-      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), "" + detection.first);
+  /**
+   * Updates the tracks with the detections of a frame, unless the frame configuration has changed
+   * since the frame was captured. The check and the update are made under the same lock as {@link
+   * #setFrameConfiguration}, so the tracks never take in coordinates of another frame size.
+   *
+   * @param timeMs When the frame was captured, in {@link SystemClock#uptimeMillis()} time.
+   * @param configuration Frame configuration the detections were made in.
+   * @return Whether the detections were tracked.
+   */
+  public synchronized boolean trackResults(
+      final List<Recognition> results,
+      final long timestamp,
+      final long timeMs,
+      final int configuration) {
+    if (configuration != this.configuration) {
+      logger.i("Dropping %d results from %d of another frame size", results.size(), timestamp);
+      return false;
     }
+    logger.i("Processing %d results from %d", results.size(), timestamp);
+    processResults(results, timeMs);
+    publish();
+    return true;
   }
 
-  public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
-    logger.i("Processing %d results from %d", results.size(), timestamp);
-    processResults(results);
+  /**
+   * Follows the tracks through a frame the detector does not run on. Tracks updated by a
+   * detection since the last call take a new template from this frame instead.
+   *
+   * @param luminance Luminance plane of the frame, the same size as the frame configuration.
+   * @param timeMs When the frame was captured, in {@link SystemClock#uptimeMillis()} time.
+   * @return Number of shown tracks that could not be followed; running the detector soon will
+   *     recover them.
+   */
+  public synchronized int trackFrame(
+      final ByteBuffer luminance, final int rowStride, final long timeMs) {
+    int lost = 0;
+    for (final TrackedRecognition track : trackedObjects) {
+      advance(track, timeMs);
+      if (!track.matcher.hasTemplate()) {
+        track.matcher.capture(luminance, rowStride, frameWidth, frameHeight, track.location);
+        continue;
+      }
+      final float cost =
+          track.matcher.match(
+              luminance, rowStride, frameWidth, frameHeight, track.location, matchRect);
+      if (cost <= MAX_MATCH_COST) {
+        track.filter.update(matchRect);
+        track.filter.getBox(0, MIN_SIZE, track.location);
+      } else if (track.hits >= MIN_HITS) {
+        ++lost;
+      }
+    }
+    publish();
+    return lost;
   }
 
-  private Matrix getFrameToCanvasMatrix() {
-    return frameToCanvasMatrix;
+  /** Predicts a track forward to a frame, unless its state already covers a later one. */
+  private static void advance(final TrackedRecognition track, final long timeMs) {
+    if (timeMs > track.stateTimeMs) {
+      track.filter.predict((timeMs - track.stateTimeMs) / 1000.0f);
+      track.filter.getBox(0, MIN_SIZE, track.location);
+      track.stateTimeMs = timeMs;
+    }
   }
 
-  public synchronized void draw(final Canvas canvas) {
-    final boolean rotated = sensorOrientation % 180 == 90;
-    final float multiplier =
-        Math.min(
-            canvas.getHeight() / (float) (rotated ? frameWidth : frameHeight),
-            canvas.getWidth() / (float) (rotated ? frameHeight : frameWidth));
-    frameToCanvasMatrix =
-        ImageUtils.getTransformationMatrix(
-            frameWidth,
-            frameHeight,
-            (int) (multiplier * (rotated ? frameHeight : frameWidth)),
-            (int) (multiplier * (rotated ? frameWidth : frameHeight)),
-            sensorOrientation,
-            false);
-    for (final TrackedRecognition recognition : trackedObjects) {
-      final RectF trackedPos = new RectF(recognition.location);
+  /**
+   * Returns the most confident of the tracks being shown, with the track id as its id, or null if
+   * no track is shown.
+   */
+  public synchronized Recognition getBestTrack() {
+    TrackedRecognition best = null;
+    for (final TrackedRecognition track : trackedObjects) {
+      if (track.hits >= MIN_HITS
+          && (best == null || track.detectionConfidence > best.detectionConfidence)) {
+        best = track;
+      }
+    }
+    return best != null
+        ? new Recognition(
+            String.valueOf(best.id),
+            best.title,
+            best.classIndex,
+            best.detectionConfidence,
+            new RectF(best.location))
+        : null;
+  }
 
-      getFrameToCanvasMatrix().mapRect(trackedPos);
-      boxPaint.setColor(recognition.color);
+  /** Returns the highest confidence of the shown tracks of class {@code title}, or 0 if none. */
+  public synchronized float getBestConfidence(final String title) {
+    float best = 0.0f;
+    for (final TrackedRecognition track : trackedObjects) {
+      if (track.hits >= MIN_HITS && title.equals(track.title)) {
+        best = Math.max(best, track.detectionConfidence);
+      }
+    }
+    return best;
+  }
 
-      float cornerSize = Math.min(trackedPos.width(), trackedPos.height()) / 8.0f;
-      canvas.drawRoundRect(trackedPos, cornerSize, cornerSize, boxPaint);
+  /**
+   * Draws the shown tracks where they are predicted to be now, from the state last published by
+   * an update. Drawing runs on its own thread and does not hold up the updates.
+   */
+  public void draw(final Canvas canvas) {
+    renderer.draw(canvas);
+  }
 
-      final String labelString =
-          !TextUtils.isEmpty(recognition.title)
-              ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence))
-              : String.format("%.2f", (100 * recognition.detectionConfidence));
-      //            borderedText.drawText(canvas, trackedPos.left + cornerSize, trackedPos.top,
-      // labelString);
-      borderedText.drawText(
-          canvas, trackedPos.left + cornerSize, trackedPos.top, labelString + "%", boxPaint);
+  /** Hands the state of the shown tracks to the renderer. */
+  private void publish() {
+    final TrackOverlayRenderer.Snapshot snapshot = renderer.beginUpdate();
+    if (snapshot == null) {
+      return;
     }
-  }
+    snapshot.frameWidth = frameWidth;
+    snapshot.frameHeight = frameHeight;
+    snapshot.sensorOrientation = sensorOrientation;
 
-  private void processResults(final List<Recognition> results) {
-    final List<Pair<Float, Recognition>> rectsToTrack = new LinkedList<>();
+    int trackCount = 0;
+    for (final TrackedRecognition track : trackedObjects) {
+      if (track.hits < MIN_HITS) {
+        continue;
+      }
+      track.filter.getState(snapshot.trackStates, trackCount * TrackOverlayRenderer.STATE_SIZE);
+      snapshot.trackTimesMs[trackCount] = track.stateTimeMs;
+      snapshot.trackColors[trackCount] = track.color;
+      snapshot.trackTitles[trackCount] = track.title;
+      snapshot.trackConfidences[trackCount] = track.detectionConfidence;
+      ++trackCount;
+    }
+    snapshot.trackCount = trackCount;
+
+    int detectionCount = 0;
+    if (lastResults != null) {
+      snapshot.ensureDetectionCapacity(lastResults.size());
+      for (final Recognition result : lastResults) {
+        final RectF location = result.getLocation();
+        if (location != null) {
+          final float[] boxes = snapshot.detectionBoxes;
+          boxes[4 * detectionCount] = location.left;
+          boxes[4 * detectionCount + 1] = location.top;
+          boxes[4 * detectionCount + 2] = location.right;
+          boxes[4 * detectionCount + 3] = location.bottom;
+          snapshot.detectionConfidences[detectionCount++] = result.getConfidence();
+        }
+      }
+    }
+    snapshot.detectionCount = detectionCount;
+    renderer.publish(snapshot);
+  }
 
-    screenRects.clear();
-    final Matrix rgbFrameToScreen = new Matrix(getFrameToCanvasMatrix());
+  private void processResults(final List<Recognition> results, final long timeMs) {
+    detections.clear();
+    lastResults = results;
 
     for (final Recognition result : results) {
-      if (result.getLocation() == null) {
+      final RectF detectionFrameRect = result.getLocation();
+      if (detectionFrameRect == null) {
         continue;
       }
-      final RectF detectionFrameRect = new RectF(result.getLocation());
 
-      final RectF detectionScreenRect = new RectF();
-      rgbFrameToScreen.mapRect(detectionScreenRect, detectionFrameRect);
+      if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
+        logger.w("Degenerate rectangle! " + detectionFrameRect);
+        continue;
+      }
 
-      logger.v(
-          "Result! Frame: " + result.getLocation() + " mapped to screen:" + detectionScreenRect);
+      detections.add(result);
+    }
 
-      screenRects.add(new Pair<>(result.getConfidence(), detectionScreenRect));
+    // Move every track to where it should be at the time of this frame. Tracks followed through
+    // later frames by trackFrame() are already past it and are matched where they are.
+    for (final TrackedRecognition track : trackedObjects) {
+      advance(track, timeMs);
+    }
 
-      if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
-        logger.w("Degenerate rectangle! " + detectionFrameRect);
+    final boolean[] trackMatched = new boolean[trackedObjects.size()];
+    final boolean[] detectionMatched = new boolean[detections.size()];
+    associate(trackMatched, detectionMatched, timeMs);
+
+    final Iterator<TrackedRecognition> tracks = trackedObjects.iterator();
+    for (int i = 0; tracks.hasNext(); ++i) {
+      final TrackedRecognition track = tracks.next();
+      if (trackMatched[i]) {
         continue;
       }
+      // A track that was never shown is not given the benefit of the doubt.
+      if (track.hits < MIN_HITS || timeMs - track.lastSeenMs > MAX_TRACK_AGE_MS) {
+        logger.v("Dropping track %d (%s)", track.id, track.title);
+        tracks.remove();
+      }
+    }
+
+    for (int d = 0; d < detectionMatched.length; ++d) {
+      if (!detectionMatched[d] && trackedObjects.size() < COLORS.length) {
+        trackedObjects.add(newTrack(detections.get(d), timeMs));
+      }
+    }
+  }
 
-      rectsToTrack.add(new Pair<>(result.getConfidence(), result));
+  /**
+   * Matches detections to tracks greedily, most overlapping pair first, and updates the matched
+   * tracks. With at most a few dozen pairs this finds the same matching as an optimal assignment
+   * in all but contrived cases.
+   */
+  private void associate(
+      final boolean[] trackMatched, final boolean[] detectionMatched, final long timeMs) {
+    final int numTracks = trackMatched.length;
+    final int numDetections = detectionMatched.length;
+    final float[] overlaps = new float[numTracks * numDetections];
+    for (int t = 0; t < numTracks; ++t) {
+      final RectF trackBox = trackedObjects.get(t).location;
+      for (int d = 0; d < numDetections; ++d) {
+        overlaps[t * numDetections + d] = iou(trackBox, detections.get(d).getLocation());
+      }
     }
 
-    if (rectsToTrack.isEmpty()) {
-      logger.v("Nothing to track, aborting.");
-      return;
+    while (true) {
+      int bestTrack = -1;
+      int bestDetection = -1;
+      float bestOverlap = MIN_IOU;
+      for (int t = 0; t < numTracks; ++t) {
+        if (trackMatched[t]) {
+          continue;
+        }
+        for (int d = 0; d < numDetections; ++d) {
+          final float overlap = overlaps[t * numDetections + d];
+          if (!detectionMatched[d] && overlap >= bestOverlap) {
+            bestOverlap = overlap;
+            bestTrack = t;
+            bestDetection = d;
+          }
+        }
+      }
+      if (bestTrack < 0) {
+        return;
+      }
+      trackMatched[bestTrack] = true;
+      detectionMatched[bestDetection] = true;
+      updateTrack(trackedObjects.get(bestTrack), detections.get(bestDetection), timeMs);
+    }
+  }
+
+  private static float iou(final RectF a, final RectF b) {
+    final float intersectionWidth = Math.min(a.right, b.right) - Math.max(a.left, b.left);
+    final float intersectionHeight = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+    if (intersectionWidth <= 0 || intersectionHeight <= 0) {
+      return 0.0f;
     }
+    final float intersection = intersectionWidth * intersectionHeight;
+    return intersection / (a.width() * a.height() + b.width() * b.height() - intersection);
+  }
 
-    trackedObjects.clear();
-    for (final Pair<Float, Recognition> potential : rectsToTrack) {
-      final TrackedRecognition trackedRecognition = new TrackedRecognition();
-      trackedRecognition.detectionConfidence = potential.first;
-      trackedRecognition.location = new RectF(potential.second.getLocation());
-      trackedRecognition.title = potential.second.getTitle();
-      trackedRecognition.color = COLORS[trackedObjects.size()];
-      trackedObjects.add(trackedRecognition);
+  private TrackedRecognition newTrack(final Recognition detection, final long timeMs) {
+    final TrackedRecognition track = new TrackedRecognition();
+    // A copy of the detection's box, so the track can keep it and move it along.
+    final RectF location = detection.getLocation();
+    track.id = nextTrackId++;
+    track.filter = new KalmanBoxFilter(location);
+    track.matcher = new TemplateMatcher();
+    track.location = location;
+    track.stateTimeMs = timeMs;
+    track.lastSeenMs = timeMs;
+    track.hits = 1;
+    track.detectionConfidence = detection.getConfidence();
+    track.title = detection.getTitle();
+    track.classIndex = detection.getClassIndex();
+    // Colors follow the track, so an object keeps its color for as long as it is tracked.
+    track.color = COLORS[track.id % COLORS.length];
+    return track;
+  }
 
-      if (trackedObjects.size() >= COLORS.length) {
-        break;
+  private static void updateTrack(
+      final TrackedRecognition track, final Recognition detection, final long timeMs) {
+    track.filter.update(detection.getLocation());
+    track.filter.getBox(0, MIN_SIZE, track.location);
+    // The template is retaken from the next frame, at the corrected box.
+    track.matcher.invalidate();
+    track.lastSeenMs = Math.max(track.lastSeenMs, timeMs);
+    ++track.hits;
+    track.detectionConfidence +=
+        CONFIDENCE_SMOOTHING * (detection.getConfidence() - track.detectionConfidence);
+
+    // The detector often wavers between similar classes; only a consistent change is taken on.
+    final String title = detection.getTitle();
+    if (title == null || title.equals(track.title)) {
+      track.pendingTitleCount = 0;
+    } else if (title.equals(track.pendingTitle)) {
+      if (++track.pendingTitleCount >= TITLE_SWITCH_FRAMES) {
+        track.title = title;
+        track.classIndex = track.pendingClassIndex;
+        track.pendingTitleCount = 0;
       }
+    } else {
+      track.pendingTitle = title;
+      track.pendingClassIndex = detection.getClassIndex();
+      track.pendingTitleCount = 1;
     }
   }
 
   private static class TrackedRecognition {
+    int id;
+    KalmanBoxFilter filter;
+    TemplateMatcher matcher;
+    // Filtered box at stateTimeMs.
     RectF location;
+    long stateTimeMs;
+    long lastSeenMs;
+    int hits;
     float detectionConfidence;
     int color;
     String title;
+    int classIndex;
+    // A different class the detector has been reporting, and for how many detections in a row.
+    String pendingTitle;
+    int pendingClassIndex;
+    int pendingTitleCount;
   }
 }
@@ -0,0 +1,161 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+import java.nio.ByteBuffer;
+
+/**
+ * Follows the content of a box from frame to frame on the luminance plane alone.
+ *
+ * <p>The box is sampled on a coarse grid to form a template. In a later frame, the template is
+ * compared against the grid shifted around the expected position, first in whole grid steps and
+ * then in half and quarter steps around the best so far, and the shift with the smallest mean
+ * absolute difference wins. Both sides have their mean removed, so exposure changes do not move
+ * the match. A match costs about 25k byte reads, independent of the size of the box.
+ */
+class TemplateMatcher {
+  // Samples per axis of the template.
+  private static final int SIZE = 16;
+  private static final int SAMPLES = SIZE * SIZE;
+  // Search range around the expected position, in grid steps.
+  private static final int SEARCH_RADIUS = 4;
+  // The search is refined around the best whole step down to this fraction of a step.
+  private static final int MAX_REFINEMENT = 4;
+
+  private final int[] template = new int[SAMPLES];
+  private final int[] candidate = new int[SAMPLES];
+  private int templateMean;
+  private boolean hasTemplate;
+
+  private float bestDx;
+  private float bestDy;
+  private float bestCost;
+
+  boolean hasTemplate() {
+    return hasTemplate;
+  }
+
+  void invalidate() {
+    hasTemplate = false;
+  }
+
+  /** Samples the content of a box as the template to look for. */
+  void capture(
+      final ByteBuffer luminance,
+      final int rowStride,
+      final int width,
+      final int height,
+      final RectF box) {
+    templateMean = sample(luminance, rowStride, width, height, box, 0, 0, template);
+    hasTemplate = true;
+  }
+
+  /**
+   * Looks for the template around a box.
+   *
+   * @param out Receives the box moved to where the template matches best.
+   * @return Mean absolute difference of the best match, in luminance levels.
+   */
+  float match(
+      final ByteBuffer luminance,
+      final int rowStride,
+      final int width,
+      final int height,
+      final RectF box,
+      final RectF out) {
+    final float stepX = box.width() / SIZE;
+    final float stepY = box.height() / SIZE;
+
+    bestCost = Float.MAX_VALUE;
+    for (int y = -SEARCH_RADIUS; y <= SEARCH_RADIUS; ++y) {
+      for (int x = -SEARCH_RADIUS; x <= SEARCH_RADIUS; ++x) {
+        tryOffset(luminance, rowStride, width, height, box, x * stepX, y * stepY);
+      }
+    }
+    for (int refinement = 2; refinement <= MAX_REFINEMENT; refinement *= 2) {
+      final float centerDx = bestDx;
+      final float centerDy = bestDy;
+      for (int y = -1; y <= 1; ++y) {
+        for (int x = -1; x <= 1; ++x) {
+          if (x != 0 || y != 0) {
+            tryOffset(
+                luminance,
+                rowStride,
+                width,
+                height,
+                box,
+                centerDx + x * stepX / refinement,
+                centerDy + y * stepY / refinement);
+          }
+        }
+      }
+    }
+
+    out.set(box);
+    out.offset(bestDx, bestDy);
+    return bestCost;
+  }
+
+  private void tryOffset(
+      final ByteBuffer luminance,
+      final int rowStride,
+      final int width,
+      final int height,
+      final RectF box,
+      final float dx,
+      final float dy) {
+    final int mean = sample(luminance, rowStride, width, height, box, dx, dy, candidate);
+    final int meanShift = mean - templateMean;
+    int total = 0;
+    for (int i = 0; i < SAMPLES; ++i) {
+      total += Math.abs(candidate[i] - template[i] - meanShift);
+    }
+    final float cost = (float) total / SAMPLES;
+    if (cost < bestCost) {
+      bestCost = cost;
+      bestDx = dx;
+      bestDy = dy;
+    }
+  }
+
+  /** Samples the grid over a shifted box, clamped to the frame, and returns the mean sample. */
+  private static int sample(
+      final ByteBuffer luminance,
+      final int rowStride,
+      final int width,
+      final int height,
+      final RectF box,
+      final float dx,
+      final float dy,
+      final int[] out) {
+    final float stepX = box.width() / SIZE;
+    final float stepY = box.height() / SIZE;
+    final float left = box.left + dx + stepX / 2;
+    final float top = box.top + dy + stepY / 2;
+    int sum = 0;
+    for (int j = 0, i = 0; j < SIZE; ++j) {
+      final int y = Math.max(0, Math.min(height - 1, (int) (top + j * stepY)));
+      final int rowOffset = y * rowStride;
+      for (int k = 0; k < SIZE; ++k, ++i) {
+        final int x = Math.max(0, Math.min(width - 1, (int) (left + k * stepX)));
+        out[i] = luminance.get(rowOffset + x) & 0xFF;
+        sum += out[i];
+      }
+    }
+    return sum / SAMPLES;
+  }
+}
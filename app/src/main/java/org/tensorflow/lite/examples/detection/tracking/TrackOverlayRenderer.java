@@ -0,0 +1,305 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Paint.Cap;
+import android.graphics.Paint.Join;
+import android.graphics.Paint.Style;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.tensorflow.lite.examples.detection.env.BorderedText;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+
+/**
+ * Draws the tracks of a {@link MultiBoxTracker} from snapshots of its state, so drawing never
+ * waits on the tracker and the tracker never waits on drawing.
+ *
+ * <p>The tracker writes each snapshot into whichever of two buffers is not published and then
+ * publishes it; the drawing thread draws the published one. A reader registers on a buffer before
+ * using it and checks that it is still the published one, and the writer skips a buffer a reader
+ * is registered on, so neither side takes a lock. A skipped snapshot is superseded by the next
+ * one, and in between the published tracks keep moving along their velocity.
+ *
+ * <p>Everything drawn per frame is preallocated: the frame to canvas matrix is only rebuilt when
+ * the frame configuration or the canvas size changes, and labels are formatted into a char buffer.
+ */
+class TrackOverlayRenderer {
+  // Centre x, centre y, width, height, and their velocities, per track.
+  static final int STATE_SIZE = 8;
+  private static final int LABEL_LENGTH = 64;
+
+  /** The state the overlay is drawn from. Written by the tracker, read while drawing. */
+  static class Snapshot {
+    private final AtomicInteger readers = new AtomicInteger();
+
+    int frameWidth;
+    int frameHeight;
+    int sensorOrientation;
+
+    int trackCount;
+    final float[] trackStates;
+    final long[] trackTimesMs;
+    final int[] trackColors;
+    final String[] trackTitles;
+    final float[] trackConfidences;
+
+    // Detections of the last detected frame, in frame coordinates, for the debug overlay.
+    int detectionCount;
+    float[] detectionBoxes = new float[0];
+    float[] detectionConfidences = new float[0];
+
+    Snapshot(final int maxTracks) {
+      trackStates = new float[maxTracks * STATE_SIZE];
+      trackTimesMs = new long[maxTracks];
+      trackColors = new int[maxTracks];
+      trackTitles = new String[maxTracks];
+      trackConfidences = new float[maxTracks];
+    }
+
+    /** Makes room for {@code count} detections. */
+    void ensureDetectionCapacity(final int count) {
+      if (detectionConfidences.length < count) {
+        detectionBoxes = new float[count * 4];
+        detectionConfidences = new float[count];
+      }
+    }
+  }
+
+  private final Snapshot[] buffers;
+  private volatile Snapshot published;
+
+  private final float minSize;
+  private final long maxPredictionMs;
+  private final BorderedText borderedText;
+  private final Paint boxPaint = new Paint();
+  private final Paint debugBoxPaint = new Paint();
+  private final Paint debugTextPaint = new Paint();
+  private final RectF rect = new RectF();
+  private final char[] label = new char[LABEL_LENGTH];
+
+  // Frame to canvas transformation, and what it was made for.
+  private Matrix frameToCanvasMatrix;
+  private int matrixFrameWidth;
+  private int matrixFrameHeight;
+  private int matrixOrientation;
+  private int matrixCanvasWidth;
+  private int matrixCanvasHeight;
+
+  /**
+   * @param maxTracks Most tracks in a snapshot.
+   * @param minSize Smallest width and height a box is drawn with, in frame pixels.
+   * @param maxPredictionMs Boxes are not extrapolated further than this past their state.
+   */
+  TrackOverlayRenderer(
+      final int maxTracks,
+      final float minSize,
+      final long maxPredictionMs,
+      final BorderedText borderedText) {
+    buffers = new Snapshot[] {new Snapshot(maxTracks), new Snapshot(maxTracks)};
+    published = buffers[0];
+    this.minSize = minSize;
+    this.maxPredictionMs = maxPredictionMs;
+    this.borderedText = borderedText;
+
+    boxPaint.setColor(Color.RED);
+    boxPaint.setStyle(Style.STROKE);
+    boxPaint.setStrokeWidth(10.0f);
+    boxPaint.setStrokeCap(Cap.ROUND);
+    boxPaint.setStrokeJoin(Join.ROUND);
+    boxPaint.setStrokeMiter(100);
+
+    debugBoxPaint.setColor(Color.RED);
+    debugBoxPaint.setAlpha(200);
+    debugBoxPaint.setStyle(Style.STROKE);
+
+    debugTextPaint.setColor(Color.WHITE);
+    debugTextPaint.setTextSize(60.0f);
+  }
+
+  /**
+   * Returns the buffer to write the next snapshot into, or null if it is still being drawn; the
+   * snapshot is then skipped. Only called by the one thread at a time that updates the tracks.
+   */
+  Snapshot beginUpdate() {
+    final Snapshot back = published == buffers[0] ? buffers[1] : buffers[0];
+    return back.readers.get() == 0 ? back : null;
+  }
+
+  /** Makes a snapshot written after {@link #beginUpdate} the one drawn. */
+  void publish(final Snapshot snapshot) {
+    published = snapshot;
+  }
+
+  private Snapshot acquire() {
+    while (true) {
+      final Snapshot snapshot = published;
+      snapshot.readers.incrementAndGet();
+      if (snapshot == published) {
+        return snapshot;
+      }
+      // Published over in the meantime, so it may be written to now.
+      snapshot.readers.decrementAndGet();
+    }
+  }
+
+  private static void release(final Snapshot snapshot) {
+    snapshot.readers.decrementAndGet();
+  }
+
+  /** Draws the tracks where they are predicted to be now. */
+  void draw(final Canvas canvas) {
+    final Snapshot snapshot = acquire();
+    try {
+      final Matrix frameToCanvas = getFrameToCanvasMatrix(snapshot, canvas);
+      if (frameToCanvas == null) {
+        return;
+      }
+      final long now = SystemClock.uptimeMillis();
+      for (int i = 0; i < snapshot.trackCount; ++i) {
+        final float dt =
+            Math.max(0, Math.min(now - snapshot.trackTimesMs[i], maxPredictionMs)) / 1000.0f;
+        getBox(snapshot.trackStates, i * STATE_SIZE, dt, rect);
+        frameToCanvas.mapRect(rect);
+        boxPaint.setColor(snapshot.trackColors[i]);
+
+        final float cornerSize = Math.min(rect.width(), rect.height()) / 8.0f;
+        canvas.drawRoundRect(rect, cornerSize, cornerSize, boxPaint);
+
+        final int length =
+            formatLabel(snapshot.trackTitles[i], 100 * snapshot.trackConfidences[i]);
+        borderedText.drawText(canvas, rect.left + cornerSize, rect.top, label, length, boxPaint);
+      }
+    } finally {
+      release(snapshot);
+    }
+  }
+
+  /** Draws the detections of the last detected frame with their confidences. */
+  void drawDebug(final Canvas canvas) {
+    final Snapshot snapshot = acquire();
+    try {
+      final Matrix frameToCanvas = getFrameToCanvasMatrix(snapshot, canvas);
+      if (frameToCanvas == null) {
+        return;
+      }
+      for (int i = 0; i < snapshot.detectionCount; ++i) {
+        final float[] boxes = snapshot.detectionBoxes;
+        rect.set(boxes[4 * i], boxes[4 * i + 1], boxes[4 * i + 2], boxes[4 * i + 3]);
+        frameToCanvas.mapRect(rect);
+        canvas.drawRect(rect, debugBoxPaint);
+        final int length = formatNumber(snapshot.detectionConfidences[i], 0);
+        canvas.drawText(label, 0, length, rect.left, rect.top, debugTextPaint);
+        borderedText.drawText(canvas, rect.centerX(), rect.centerY(), label, length);
+      }
+    } finally {
+      release(snapshot);
+    }
+  }
+
+  private void getBox(final float[] states, final int offset, final float dt, final RectF out) {
+    final float halfWidth = Math.max(minSize, states[offset + 2] + states[offset + 6] * dt) / 2;
+    final float halfHeight = Math.max(minSize, states[offset + 3] + states[offset + 7] * dt) / 2;
+    final float centerX = states[offset] + states[offset + 4] * dt;
+    final float centerY = states[offset + 1] + states[offset + 5] * dt;
+    out.set(centerX - halfWidth, centerY - halfHeight, centerX + halfWidth, centerY + halfHeight);
+  }
+
+  /**
+   * Returns the transformation from the snapshot's frames to the canvas, keeping the aspect ratio,
+   * or null if the frame size is not known yet.
+   */
+  private Matrix getFrameToCanvasMatrix(final Snapshot snapshot, final Canvas canvas) {
+    final int frameWidth = snapshot.frameWidth;
+    final int frameHeight = snapshot.frameHeight;
+    if (frameWidth <= 0 || frameHeight <= 0) {
+      return null;
+    }
+    if (frameToCanvasMatrix == null
+        || frameWidth != matrixFrameWidth
+        || frameHeight != matrixFrameHeight
+        || snapshot.sensorOrientation != matrixOrientation
+        || canvas.getWidth() != matrixCanvasWidth
+        || canvas.getHeight() != matrixCanvasHeight) {
+      final boolean rotated = snapshot.sensorOrientation % 180 == 90;
+      final float multiplier =
+          Math.min(
+              canvas.getHeight() / (float) (rotated ? frameWidth : frameHeight),
+              canvas.getWidth() / (float) (rotated ? frameHeight : frameWidth));
+      frameToCanvasMatrix =
+          ImageUtils.getTransformationMatrix(
+              frameWidth,
+              frameHeight,
+              (int) (multiplier * (rotated ? frameHeight : frameWidth)),
+              (int) (multiplier * (rotated ? frameWidth : frameHeight)),
+              snapshot.sensorOrientation,
+              false);
+      matrixFrameWidth = frameWidth;
+      matrixFrameHeight = frameHeight;
+      matrixOrientation = snapshot.sensorOrientation;
+      matrixCanvasWidth = canvas.getWidth();
+      matrixCanvasHeight = canvas.getHeight();
+    }
+    return frameToCanvasMatrix;
+  }
+
+  /** Writes "title 12.34%" to the label buffer, and returns its length. */
+  private int formatLabel(final String title, final float percent) {
+    int length = 0;
+    if (title != null && !title.isEmpty()) {
+      // Leaves room for the number, which takes at most 8 characters here.
+      length = Math.min(title.length(), LABEL_LENGTH - 10);
+      title.getChars(0, length, label, 0);
+      label[length++] = ' ';
+    }
+    length = formatNumber(percent, length);
+    label[length++] = '%';
+    return length;
+  }
+
+  /** Writes {@code value} with two decimals to the label buffer from {@code start}. */
+  private int formatNumber(final float value, final int start) {
+    int length = start;
+    int hundredths = Math.round(Math.abs(value) * 100);
+    if (value < 0 && hundredths > 0) {
+      label[length++] = '-';
+    }
+    final int whole = hundredths / 100;
+    hundredths %= 100;
+    length = formatInt(whole, length);
+    label[length++] = '.';
+    label[length++] = (char) ('0' + hundredths / 10);
+    label[length++] = (char) ('0' + hundredths % 10);
+    return length;
+  }
+
+  private int formatInt(final int value, final int start) {
+    int digits = 1;
+    for (int rest = value / 10; rest > 0; rest /= 10) {
+      ++digits;
+    }
+    int rest = value;
+    for (int i = start + digits - 1; i >= start; --i) {
+      label[i] = (char) ('0' + rest % 10);
+      rest /= 10;
+    }
+    return start + digits;
+  }
+}
@@ -0,0 +1,286 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import org.junit.Test;
+
+/**
+ * Compares {@link YuvInputConverter} with the path it replaces: the whole frame converted by the
+ * scalar {@link ImageUtils#convertYUV420SPToARGB8888(byte[], int, int, int[])}, then drawn into the
+ * model input through the matrix of {@link ImageUtils#getTransformationMatrix}. The reference
+ * transform is built and inverted here in double precision, and samples the ARGB frame at pixel
+ * centers, like {@code Canvas.drawBitmap} with and without filtering.
+ *
+ * <p>The frame is a set of gradients kept clear of clipping, steep enough that a wrong rotation,
+ * crop or scale moves every value well past the tolerance, and gentle enough that rounding a
+ * sample position the other way does not.
+ */
+public class YuvInputConverterTest {
+  private static final int FRAME_WIDTH = 640;
+  private static final int FRAME_HEIGHT = 480;
+  private static final int INPUT_SIZE = 300;
+
+  // Largest difference per channel from the reference. Bilinear sampling interpolates YUV rather
+  // than RGB and rounds each step to 8 bits, so it is allowed a little more.
+  private static final int NEAREST_TOLERANCE = 1;
+  private static final int BILINEAR_TOLERANCE = 2;
+
+  private final byte[] frame = createFrame();
+  private final int[] argbFrame = toArgb(frame);
+
+  @Test
+  public void nearestMatchesReference() {
+    for (final int rotation : new int[] {0, 90, 180, 270}) {
+      check(rotation, false, YuvInputConverter.Sampling.NEAREST, true);
+      check(rotation, true, YuvInputConverter.Sampling.NEAREST, true);
+    }
+  }
+
+  @Test
+  public void bilinearMatchesReference() {
+    for (final int rotation : new int[] {0, 90, 180, 270}) {
+      check(rotation, false, YuvInputConverter.Sampling.BILINEAR, true);
+      check(rotation, true, YuvInputConverter.Sampling.BILINEAR, true);
+    }
+  }
+
+  @Test
+  public void floatInputMatchesReference() {
+    check(90, true, YuvInputConverter.Sampling.NEAREST, false);
+    check(270, false, YuvInputConverter.Sampling.BILINEAR, false);
+  }
+
+  @Test
+  public void planarMatchesSemiPlanar() {
+    final YuvInputConverter converter =
+        new YuvInputConverter(
+            FRAME_WIDTH,
+            FRAME_HEIGHT,
+            INPUT_SIZE,
+            INPUT_SIZE,
+            90,
+            true,
+            true,
+            YuvInputConverter.Sampling.BILINEAR);
+    final ByteBuffer semiPlanar = allocate(converter);
+    converter.convertSemiPlanar(frame, semiPlanar);
+
+    // The same frame as separate planes, with the chroma planes a pixel stride of 2 apart.
+    final int frameSize = FRAME_WIDTH * FRAME_HEIGHT;
+    final byte[] vu = new byte[frame.length - frameSize];
+    System.arraycopy(frame, frameSize, vu, 0, vu.length);
+    final byte[] u = new byte[vu.length];
+    System.arraycopy(vu, 1, u, 0, vu.length - 1);
+    final ByteBuffer planar = allocate(converter);
+    converter.convert(frame, u, vu, FRAME_WIDTH, FRAME_WIDTH, 2, planar);
+
+    semiPlanar.rewind();
+    planar.rewind();
+    assertTrue("planar and semi-planar input differ", semiPlanar.equals(planar));
+  }
+
+  private void check(
+      final int rotation,
+      final boolean maintainAspect,
+      final YuvInputConverter.Sampling sampling,
+      final boolean quantized) {
+    final YuvInputConverter converter =
+        new YuvInputConverter(
+            FRAME_WIDTH,
+            FRAME_HEIGHT,
+            INPUT_SIZE,
+            INPUT_SIZE,
+            rotation,
+            maintainAspect,
+            quantized,
+            sampling);
+    final ByteBuffer output = allocate(converter);
+    converter.convertSemiPlanar(frame, output);
+
+    final double[] cropToFrame =
+        invert(
+            getTransformationMatrix(
+                FRAME_WIDTH, FRAME_HEIGHT, INPUT_SIZE, INPUT_SIZE, rotation, maintainAspect));
+    final boolean bilinear = sampling == YuvInputConverter.Sampling.BILINEAR;
+    final int tolerance = bilinear ? BILINEAR_TOLERANCE : NEAREST_TOLERANCE;
+    final int[] expected = new int[3];
+    int worst = 0;
+    for (int y = 0; y < INPUT_SIZE; ++y) {
+      for (int x = 0; x < INPUT_SIZE; ++x) {
+        final double u = x + 0.5;
+        final double v = y + 0.5;
+        final double srcX = cropToFrame[0] * u + cropToFrame[1] * v + cropToFrame[2];
+        final double srcY = cropToFrame[3] * u + cropToFrame[4] * v + cropToFrame[5];
+        if (bilinear) {
+          sampleBilinear(srcX, srcY, expected);
+        } else {
+          sampleNearest(srcX, srcY, expected);
+        }
+        for (int c = 0; c < 3; ++c) {
+          final int index = (y * INPUT_SIZE + x) * 3 + c;
+          final int actual =
+              quantized
+                  ? output.get(index) & 0xFF
+                  : Math.round(output.getFloat(4 * index) * 128.0f + 128.0f);
+          worst = Math.max(worst, Math.abs(actual - expected[c]));
+        }
+      }
+    }
+    assertTrue(
+        String.format(
+            Locale.US,
+            "rotation %d, %s, %s, %s: off by up to %d",
+            rotation,
+            maintainAspect ? "cropped" : "stretched",
+            sampling,
+            quantized ? "quantized" : "float",
+            worst),
+        worst <= tolerance);
+  }
+
+  private void sampleNearest(final double srcX, final double srcY, final int[] rgb) {
+    final int x = clamp((int) Math.floor(srcX), FRAME_WIDTH - 1);
+    final int y = clamp((int) Math.floor(srcY), FRAME_HEIGHT - 1);
+    final int argb = argbFrame[y * FRAME_WIDTH + x];
+    for (int c = 0; c < 3; ++c) {
+      rgb[c] = channel(argb, c);
+    }
+  }
+
+  private void sampleBilinear(final double srcX, final double srcY, final int[] rgb) {
+    // Pixel centers sit at half coordinates; the edge pixels extend to the border.
+    final double px = Math.min(Math.max(srcX - 0.5, 0.0), FRAME_WIDTH - 1);
+    final double py = Math.min(Math.max(srcY - 0.5, 0.0), FRAME_HEIGHT - 1);
+    final int x0 = (int) px;
+    final int y0 = (int) py;
+    final int x1 = Math.min(x0 + 1, FRAME_WIDTH - 1);
+    final int y1 = Math.min(y0 + 1, FRAME_HEIGHT - 1);
+    final double fx = px - x0;
+    final double fy = py - y0;
+    for (int c = 0; c < 3; ++c) {
+      final double top =
+          channel(argbFrame[y0 * FRAME_WIDTH + x0], c) * (1 - fx)
+              + channel(argbFrame[y0 * FRAME_WIDTH + x1], c) * fx;
+      final double bottom =
+          channel(argbFrame[y1 * FRAME_WIDTH + x0], c) * (1 - fx)
+              + channel(argbFrame[y1 * FRAME_WIDTH + x1], c) * fx;
+      rgb[c] = (int) Math.round(top * (1 - fy) + bottom * fy);
+    }
+  }
+
+  private static int channel(final int argb, final int c) {
+    return (argb >> (16 - 8 * c)) & 0xFF;
+  }
+
+  private static int clamp(final int value, final int max) {
+    return value < 0 ? 0 : (value > max ? max : value);
+  }
+
+  /**
+   * Same steps as {@link ImageUtils#getTransformationMatrix}, as a row-major 2x3 affine matrix
+   * {a, b, c, d, e, f} mapping (x, y) to (a x + b y + c, d x + e y + f).
+   */
+  private static double[] getTransformationMatrix(
+      final int srcWidth,
+      final int srcHeight,
+      final int dstWidth,
+      final int dstHeight,
+      final int rotation,
+      final boolean maintainAspectRatio) {
+    double[] matrix = {1, 0, 0, 0, 1, 0};
+    if (rotation != 0) {
+      matrix = concat(new double[] {1, 0, -srcWidth / 2.0, 0, 1, -srcHeight / 2.0}, matrix);
+      final double radians = Math.toRadians(rotation);
+      final double cos = Math.rint(Math.cos(radians));
+      final double sin = Math.rint(Math.sin(radians));
+      matrix = concat(new double[] {cos, -sin, 0, sin, cos, 0}, matrix);
+    }
+    final boolean transpose = (Math.abs(rotation) + 90) % 180 == 0;
+    final int inWidth = transpose ? srcHeight : srcWidth;
+    final int inHeight = transpose ? srcWidth : srcHeight;
+    if (inWidth != dstWidth || inHeight != dstHeight) {
+      double scaleX = dstWidth / (double) inWidth;
+      double scaleY = dstHeight / (double) inHeight;
+      if (maintainAspectRatio) {
+        scaleX = scaleY = Math.max(scaleX, scaleY);
+      }
+      matrix = concat(new double[] {scaleX, 0, 0, 0, scaleY, 0}, matrix);
+    }
+    if (rotation != 0) {
+      matrix = concat(new double[] {1, 0, dstWidth / 2.0, 0, 1, dstHeight / 2.0}, matrix);
+    }
+    return matrix;
+  }
+
+  /** Returns {@code after} applied after {@code before}. */
+  private static double[] concat(final double[] after, final double[] before) {
+    return new double[] {
+      after[0] * before[0] + after[1] * before[3],
+      after[0] * before[1] + after[1] * before[4],
+      after[0] * before[2] + after[1] * before[5] + after[2],
+      after[3] * before[0] + after[4] * before[3],
+      after[3] * before[1] + after[4] * before[4],
+      after[3] * before[2] + after[4] * before[5] + after[5]
+    };
+  }
+
+  private static double[] invert(final double[] m) {
+    final double det = m[0] * m[4] - m[1] * m[3];
+    return new double[] {
+      m[4] / det,
+      -m[1] / det,
+      (m[1] * m[5] - m[4] * m[2]) / det,
+      -m[3] / det,
+      m[0] / det,
+      (m[3] * m[2] - m[0] * m[5]) / det
+    };
+  }
+
+  /** An NV21 frame of crossing luminance and chroma gradients, clear of clipping. */
+  private static byte[] createFrame() {
+    final byte[] data = new byte[ImageUtils.getYUVByteSize(FRAME_WIDTH, FRAME_HEIGHT)];
+    for (int y = 0; y < FRAME_HEIGHT; ++y) {
+      for (int x = 0; x < FRAME_WIDTH; ++x) {
+        data[y * FRAME_WIDTH + x] =
+            (byte) (40 + 120 * x / FRAME_WIDTH + 60 * y / FRAME_HEIGHT);
+      }
+    }
+    final int frameSize = FRAME_WIDTH * FRAME_HEIGHT;
+    for (int y = 0; y < FRAME_HEIGHT / 2; ++y) {
+      for (int x = 0; x < FRAME_WIDTH / 2; ++x) {
+        final int offset = frameSize + y * FRAME_WIDTH + 2 * x;
+        data[offset] = (byte) (110 + 36 * y / (FRAME_HEIGHT / 2));
+        data[offset + 1] = (byte) (110 + 36 * x / (FRAME_WIDTH / 2));
+      }
+    }
+    return data;
+  }
+
+  private static int[] toArgb(final byte[] frame) {
+    final int[] argb = new int[FRAME_WIDTH * FRAME_HEIGHT];
+    ImageUtils.convertYUV420SPToARGB8888(frame, FRAME_WIDTH, FRAME_HEIGHT, argb);
+    return argb;
+  }
+
+  private static ByteBuffer allocate(final YuvInputConverter converter) {
+    return ByteBuffer.allocateDirect(converter.getOutputByteSize()).order(ByteOrder.nativeOrder());
+  }
+}
@@ -0,0 +1,109 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+
+/**
+ * Runs a {@link StubClassifier} through {@link OfflineDetectionRunner} over raw NV21 files, which
+ * need no image decoder. The stub's fixed detections show where the runner maps them back to.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OfflineDetectionRunnerTest {
+  private static final int INPUT_SIZE = 32;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final StubClassifier classifier =
+      new StubClassifier(Arrays.asList("a", "b"), INPUT_SIZE, true);
+
+  @Test
+  public void recognizesEveryImage() throws IOException {
+    writeFrame("1_64x48.yuv", 64, 48);
+    writeFrame("2_64x48.yuv", 64, 48);
+    writeFrame("3_128x128.nv21", 128, 128);
+    writeFile("notes.txt", new byte[16]);
+
+    final OfflineDetectionRunner.Report report =
+        new OfflineDetectionRunner(classifier, INPUT_SIZE, true, 2).run(folder.getRoot());
+
+    assertEquals(3, report.getImageCount());
+    assertEquals(0, report.getSkippedCount());
+    final String[] rows = writeCsv(report);
+    // A header, then two detections per image.
+    assertEquals(7, rows.length);
+    // The stub's first detection covers the top left cell of a 4x4 grid over the input.
+    assertTrue(rows[1], rows[1].startsWith("1_64x48.yuv,"));
+    assertTrue(rows[1], rows[1].endsWith(",a,0,0.9500,0.0,0.0,16.0,12.0"));
+    assertTrue(rows[2], rows[2].endsWith(",b,1,0.9000,16.0,0.0,32.0,12.0"));
+    assertTrue(rows[5], rows[5].startsWith("3_128x128.nv21,"));
+    assertTrue(rows[5], rows[5].endsWith(",a,0,0.9500,0.0,0.0,32.0,32.0"));
+  }
+
+  @Test
+  public void skipsUnreadableFiles() throws IOException {
+    writeFrame("1_64x48.yuv", 64, 48);
+    // Shorter than a 64x48 frame.
+    writeFile("2_64x48.yuv", new byte[100]);
+    writeFrame("3_64x48.yuv", 64, 48);
+
+    final OfflineDetectionRunner.Report report =
+        new OfflineDetectionRunner(classifier, INPUT_SIZE, true, 2).run(folder.getRoot());
+
+    assertEquals(2, report.getImageCount());
+    assertEquals(1, report.getSkippedCount());
+    final String[] rows = writeCsv(report);
+    assertEquals(5, rows.length);
+    assertTrue(rows[3], rows[3].startsWith("3_64x48.yuv,"));
+
+    final StringWriter json = new StringWriter();
+    report.writeJson(json);
+    assertTrue(json.toString(), json.toString().contains("\"file\": \"2_64x48.yuv\""));
+  }
+
+  private void writeFrame(final String name, final int width, final int height)
+      throws IOException {
+    final byte[] frame = new byte[ImageUtils.getYUVByteSize(width, height)];
+    Arrays.fill(frame, (byte) 128);
+    writeFile(name, frame);
+  }
+
+  private void writeFile(final String name, final byte[] data) throws IOException {
+    try (FileOutputStream output = new FileOutputStream(new File(folder.getRoot(), name))) {
+      output.write(data);
+    }
+  }
+
+  private static String[] writeCsv(final OfflineDetectionRunner.Report report)
+      throws IOException {
+    final StringWriter csv = new StringWriter();
+    report.writeCsv(csv);
+    return csv.toString().split("\n");
+  }
+}